@@ -0,0 +1,215 @@
+package Controller;
+
+import Util.Deadline;
+import Util.DeadlineExceededException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the response to each Idempotency-Key so a retried write is answered from
+ * memory instead of running again.
+ *
+ * The first request for a key runs its handler; a duplicate arriving while it runs waits
+ * for it, up to its own Deadline, and gets the same response. Keys live for ttl and at
+ * most maxEntries are kept, the oldest being dropped first. Only final answers are kept: 429 and 5xx responses are
+ * forgotten so the client can retry them. Reusing a key with a different request body is
+ * answered with 422.
+ */
+public class IdempotencyStore {
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Insertion order, every entry has the same ttl so the head is always the oldest. Entries
+    // already dropped from entries stay queued until they reach the head, and count towards
+    // maxEntries so the queue stays bounded; queued is its size, which the queue counts in O(n)
+    private final Queue<Entry> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+
+    /**
+     * @param ttl        How long a key is remembered.
+     * @param unit       Unit of ttl.
+     * @param maxEntries Keys kept before the oldest are dropped.
+     */
+    public IdempotencyStore(long ttl, TimeUnit unit, int maxEntries) {
+        this.ttlNanos = unit.toNanos(ttl);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Runs handler once per key.
+     *
+     * @param key         The Idempotency-Key, already scoped to the route.
+     * @param requestBody Body of this request, compared with the first one for the key.
+     * @param handler     Writes the response and returns a copy of it.
+     * @return The response to send for a replay or a conflict, or null if handler ran for this request.
+     */
+    public StoredResponse execute(String key, byte[] requestBody, Callable<StoredResponse> handler) throws Exception {
+        byte[] fingerprint = fingerprint(requestBody);
+        while (true) {
+            long now = System.nanoTime();
+            Entry mine = new Entry(key, fingerprint, now);
+            Entry existing = entries.putIfAbsent(key, mine);
+
+            if (existing == null) {
+                order.add(mine);
+                queued.incrementAndGet();
+                evict(now);
+                runFirst(mine, handler);
+                return null;
+            }
+            if (now - existing.createdNanos > ttlNanos) {
+                entries.remove(key, existing);
+                continue;
+            }
+            if (!Arrays.equals(existing.fingerprint, fingerprint)) {
+                conflicts.incrementAndGet();
+                return StoredResponse.CONFLICT;
+            }
+
+            StoredResponse response = await(existing);
+            if (response != null) {
+                replays.incrementAndGet();
+                return response;
+            }
+            // The first attempt failed or was not kept, this one runs it again
+        }
+    }
+
+    /**
+     * Waits for the first request's response, no longer than the caller's Deadline.
+     */
+    private static StoredResponse await(Entry existing) throws InterruptedException {
+        long remaining = Deadline.remainingNanos();
+        if (remaining == Long.MAX_VALUE) return existing.response.join();
+        if (remaining <= 0) throw new DeadlineExceededException();
+        try {
+            return existing.response.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException();
+        } catch (ExecutionException e) {
+            // Never completed exceptionally, a failed first attempt completes with null
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void runFirst(Entry mine, Callable<StoredResponse> handler) throws Exception {
+        StoredResponse response;
+        try {
+            response = handler.call();
+        } catch (Exception | Error e) {
+            entries.remove(mine.key, mine);
+            mine.response.complete(null);
+            throw e;
+        }
+
+        if (response.status == 429 || response.status >= 500) {
+            entries.remove(mine.key, mine);
+            mine.response.complete(null);
+        } else {
+            stored.incrementAndGet();
+            mine.response.complete(response);
+        }
+    }
+
+    /**
+     * Drops expired keys, then the oldest keys while more than maxEntries are queued.
+     */
+    private void evict(long now) {
+        Entry oldest;
+        while ((oldest = order.peek()) != null
+                && (now - oldest.createdNanos > ttlNanos || queued.get() > maxEntries)) {
+            if (order.remove(oldest)) {
+                queued.decrementAndGet();
+                entries.remove(oldest.key, oldest);
+            }
+        }
+    }
+
+    private static byte[] fingerprint(byte[] requestBody) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(requestBody);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return Responses kept for replay since startup.
+     */
+    public long storedCount() {
+        return stored.get();
+    }
+
+    /**
+     * @return Requests answered with a kept response.
+     */
+    public long replayCount() {
+        return replays.get();
+    }
+
+    /**
+     * @return Keys reused with a different request body.
+     */
+    public long conflictCount() {
+        return conflicts.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Keys waiting in insertion order for eviction, including ones already forgotten.
+     */
+    public int queuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * A response as sent: status, content type and body bytes.
+     */
+    public static final class StoredResponse {
+        static final StoredResponse CONFLICT = new StoredResponse(422, "text/plain",
+                "Idempotency-Key was already used with a different request".getBytes(StandardCharsets.UTF_8));
+
+        final int status;
+        final String contentType;
+        final byte[] body;
+
+        public StoredResponse(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final byte[] fingerprint;
+        final long createdNanos;
+        final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+
+        Entry(String key, byte[] fingerprint, long createdNanos) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
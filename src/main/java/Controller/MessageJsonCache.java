@@ -0,0 +1,117 @@
+package Controller;
+
+import Model.Message;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds each message's JSON already encoded as UTF-8 bytes, so hot reads skip Jackson.
+ *
+ * A single message response is the cached array as is; a list response is one pre-sized
+ * array with the cached fragments copied in between brackets and commas. Entries are
+ * dropped when the controller updates or deletes the message, and an entry is only used
+ * if it was built from an equal Message, so a change made elsewhere is never served stale.
+ */
+public class MessageJsonCache {
+    private final ObjectMapper mapper;
+    private final int maxEntries;
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param mapper     Mapper used to encode messages on a miss.
+     * @param maxEntries Messages kept before older entries are evicted.
+     */
+    public MessageJsonCache(ObjectMapper mapper, int maxEntries) {
+        this.mapper = mapper;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return The message as UTF-8 JSON bytes. The array is shared and must not be modified.
+     */
+    public byte[] toJson(Message message) throws JsonProcessingException {
+        Entry entry = entries.get(message.getMessage_id());
+        if (entry != null && (entry.message == message || entry.message.equals(message))) {
+            hits.incrementAndGet();
+            return entry.json;
+        }
+
+        misses.incrementAndGet();
+        byte[] json = mapper.writeValueAsBytes(message);
+        if (entries.size() >= maxEntries) {
+            evictOne();
+        }
+        entries.put(message.getMessage_id(), new Entry(message, json));
+        return json;
+    }
+
+    /**
+     * @return The messages as a UTF-8 JSON array.
+     */
+    public byte[] toJson(List<Message> messages) throws JsonProcessingException {
+        byte[][] parts = new byte[messages.size()][];
+        // Brackets plus one comma between each element
+        int length = 2 + Math.max(0, messages.size() - 1);
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = toJson(messages.get(i));
+            length += parts[i].length;
+        }
+
+        byte[] out = new byte[length];
+        int pos = 0;
+        out[pos++] = '[';
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) out[pos++] = ',';
+            System.arraycopy(parts[i], 0, out, pos, parts[i].length);
+            pos += parts[i].length;
+        }
+        out[pos] = ']';
+        return out;
+    }
+
+    /**
+     * Drops the cached bytes for a message after it changed or was deleted.
+     */
+    public void invalidate(int messageId) {
+        entries.remove(messageId);
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evictOne() {
+        Iterator<Integer> it = entries.keySet().iterator();
+        if (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static final class Entry {
+        final Message message;
+        final byte[] json;
+
+        Entry(Message message, byte[] json) {
+            this.message = message;
+            this.json = json;
+        }
+    }
+}
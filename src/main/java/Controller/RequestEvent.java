@@ -0,0 +1,38 @@
+package Controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one HTTP request, around the whole handler chain of its route.
+ * Correlates with GC, lock and DaoQuery events on the same thread in one recording.
+ */
+@Name("socialmedia.HttpRequest")
+@Label("HTTP Request")
+@Category({ "Social Media", "HTTP" })
+@Description("One request handled by SocialMediaController")
+@StackTrace(false)
+final class RequestEvent extends Event {
+    @Label("Method")
+    String method;
+
+    @Label("Route")
+    String route;
+
+    @Label("Status")
+    int status;
+
+    @Label("Request Bytes")
+    @DataAmount
+    long requestBytes;
+
+    @Label("Response Bytes")
+    @DataAmount
+    @Description("Bytes written or set as the result by the handler, -1 if not known")
+    long responseBytes;
+}
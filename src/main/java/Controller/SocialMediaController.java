@@ -2,14 +2,44 @@ package Controller;
 
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import org.eclipse.jetty.server.Response;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import DAO.MessageFields;
+import DAO.TimeRange;
 import Model.Account;
 import Model.Message;
 import Service.AccountService;
+import Service.BulkService;
 import Service.MessageService;
+import Service.Ranked;
+import Util.ConcurrencyLimiter;
+import Util.ConcurrencyLimiter.Priority;
+import Util.Deadline;
+import Util.DeadlineExceededException;
+import Util.RateLimiter;
+import Util.Span;
+import Util.Tracing;
+import Util.UnitOfWork;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -23,6 +53,52 @@ public class SocialMediaController {
     // Services to handle business logic
     AccountService accountService = new AccountService();
     MessageService messageService = new MessageService();
+    BulkService bulkService = new BulkService();
+
+    // Most clients tracked per limiter before idle ones are evicted
+    private static final int MAX_RATE_LIMIT_KEYS = 100_000;
+
+    // Page size of time-range reads when no limit is given, and the largest allowed
+    private static final int DEFAULT_PAGE_SIZE = 1_000;
+    private static final int MAX_PAGE_SIZE = 10_000;
+
+    // Window and entries of trending reads when none are given
+    private static final String DEFAULT_TRENDING_WINDOW = "1h";
+    private static final int DEFAULT_TRENDING_LIMIT = 10;
+
+    // Write rate limits as "permitsPerSecond:burst", overridden with e.g. -DrateLimit.postMessage=20:40
+    // Messages are limited per posted_by, register and login per client IP
+    RateLimiter postMessageLimiter = routeLimiter("postMessage", "20:40");
+    RateLimiter patchMessageLimiter = routeLimiter("patchMessage", "20:40");
+    RateLimiter registerLimiter = routeLimiter("register", "5:20");
+    RateLimiter loginLimiter = routeLimiter("login", "10:20");
+
+    // Encoded JSON per message for the read endpoints, off with -DjsonByteCache=false
+    MessageJsonCache jsonCache = Boolean.parseBoolean(System.getProperty("jsonByteCache", "true"))
+            ? new MessageJsonCache(new ObjectMapper(), Integer.getInteger("jsonByteCacheSize", 100_000))
+            : null;
+
+    // Responses kept per Idempotency-Key for retried writes, off with -Didempotency=false
+    IdempotencyStore idempotencyStore = Boolean.parseBoolean(System.getProperty("idempotency", "true"))
+            ? new IdempotencyStore(Long.getLong("idempotency.ttlSeconds", 86_400), TimeUnit.SECONDS,
+                    Integer.getInteger("idempotency.maxKeys", 100_000))
+            : null;
+
+    // Requests in flight across all routes, adapted to request latency; off with -DconcurrencyLimit=false
+    ConcurrencyLimiter concurrencyLimiter = Boolean.parseBoolean(System.getProperty("concurrencyLimit", "true"))
+            ? new ConcurrencyLimiter(Integer.getInteger("concurrencyLimit.initial", 50),
+                    Integer.getInteger("concurrencyLimit.min", 8), Integer.getInteger("concurrencyLimit.max", 200),
+                    Long.getLong("concurrencyLimit.latencyMillis", 250), TimeUnit.MILLISECONDS)
+            : null;
+
+    // Time a request may take before its database work is abandoned with 504, per route as
+    // e.g. -Ddeadline.getAllMessages=5000 or for every route as -Ddeadline.default; a client can
+    // ask for less with an X-Request-Timeout header in milliseconds
+    private static final long DEFAULT_DEADLINE_MILLIS = Long.getLong("deadline.default", 2_000);
+    AtomicLong deadlinesExceeded = new AtomicLong();
+
+    // Bearer token required by the /admin routes, set with -Dadmin.token; without one they only answer loopback clients
+    private final String adminToken = System.getProperty("admin.token");
 
     /**
      * In order for the test cases to work, you will need to write the endpoints in
@@ -34,31 +110,59 @@ public class SocialMediaController {
      */
     public Javalin startAPI() {
         Javalin app = Javalin.create();
+        app.events(event -> event.serverStopped(messageService::close));
+        app.exception(DeadlineExceededException.class, (e, ctx) -> {
+            deadlinesExceeded.incrementAndGet();
+            ctx.status(504);
+            ctx.result(e.getMessage());
+        });
         //app.get("example-endpoint", this::exampleHandler);
         
+        // Every route is traced and limited; under overload, cheap reads are shed last and
+        // full scans and bulk copies first
+
         // Register a new account
-        app.post("/register", this::handleRegister);
+        app.post("/register", guarded(Priority.NORMAL, "register", ctx -> idempotent(ctx, "register", this::handleRegister)));
 
         // Login to existing account
-        app.post("/login", this::handleLogin);
+        app.post("/login", guarded(Priority.HIGH, "login", this::handleLogin));
 
         // Post a new message
-        app.post("/messages", this::handlePostMessage);
+        app.post("/messages", guarded(Priority.NORMAL, "postMessage", ctx -> idempotent(ctx, "postMessage", this::handlePostMessage)));
 
         // Get all messages
-        app.get("/messages", this::handleGetAllMessages);
+        app.get("/messages", guarded(Priority.LOW, "getAllMessages", this::handleGetAllMessages));
 
         // Get a message by its ID
-        app.get("/messages/{message_id}", this::handleGetMessageById);
+        app.get("/messages/{message_id}", guarded(Priority.HIGH, "getMessageById", this::handleGetMessageById));
 
         // Delete a message by its ID
-        app.delete("/messages/{message_id}", this::handleDeleteMessageById);
+        app.delete("/messages/{message_id}", guarded(Priority.NORMAL, "deleteMessage", this::handleDeleteMessageById));
 
         // Update the text of a message
-        app.patch("/messages/{message_id}", this::handleUpdateMessage);
+        app.patch("/messages/{message_id}", guarded(Priority.NORMAL, "patchMessage", this::handleUpdateMessage));
+
+        // Like a message
+        app.post("/messages/{message_id}/likes", guarded(Priority.NORMAL, "likeMessage", this::handleLikeMessage));
 
         // Get all messages from a specific user
-        app.get("/accounts/{account_id}/messages", this::handleGetMessagesByAccount);
+        app.get("/accounts/{account_id}/messages", guarded(Priority.HIGH, "getMessagesByAccount", this::handleGetMessagesByAccount));
+
+        // Most read and liked messages, and accounts that posted most, over ?window=5m|1h|24h
+        app.get("/trending/messages", guarded(Priority.NORMAL, "trendingMessages", this::handleGetTrendingMessages));
+        app.get("/trending/accounts", guarded(Priority.NORMAL, "trendingAccounts", this::handleGetTrendingAccounts));
+
+        // Admin routes answer only an admin: the -Dadmin.token bearer, or a loopback client without one
+
+        // Internal counters and cache sizes, never limited so overload stays visible
+        app.get("/admin/metrics", adminOnly(this::handleGetMetrics));
+
+        // Bulk NDJSON copy of all accounts and messages
+        app.get("/admin/export", adminOnly(traced(limitedBulk(this::handleExport))));
+        app.post("/admin/import", adminOnly(traced(limitedBulk(this::handleImport))));
+
+        // Most recent sampled spans, as OTLP/JSON
+        app.get("/admin/traces", adminOnly(this::handleGetTraces));
         
 
         return app;
@@ -84,12 +188,232 @@ public class SocialMediaController {
      * 
     */
 
+    private static RateLimiter routeLimiter(String route, String defaultSetting) {
+        return RateLimiter.parse(System.getProperty("rateLimit." + route, defaultSetting), MAX_RATE_LIMIT_KEYS);
+    }
+
+    /**
+     * Takes a permit from the limiter for key.
+     * If none is left, responds 429 with a Retry-After in seconds and returns false.
+     */
+    private boolean allowed(Context ctx, RateLimiter limiter, String key) {
+        long waitNanos = limiter.tryAcquire(key);
+        if (waitNanos == 0) {
+            return true;
+        }
+        ctx.status(429);
+        ctx.header("Retry-After", String.valueOf(Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L)));
+        return false;
+    }
+
+    /**
+     * Runs handler only for an admin. With -Dadmin.token set, that is a request with
+     * "Authorization: Bearer <token>", anything else gets 401. Without it, only clients on the
+     * loopback interface are admins and others get 403; behind a proxy on the same host, set
+     * a token, since every request then comes from loopback.
+     */
+    private Handler adminOnly(Handler handler) {
+        return ctx -> {
+            if (adminToken != null) {
+                String authorization = ctx.header("Authorization");
+                if (authorization == null || !MessageDigest.isEqual(
+                        authorization.getBytes(StandardCharsets.UTF_8),
+                        ("Bearer " + adminToken).getBytes(StandardCharsets.UTF_8))) {
+                    ctx.status(401);
+                    return;
+                }
+            } else if (!InetAddress.getByName(ctx.req().getRemoteAddr()).isLoopbackAddress()) {
+                ctx.status(403);
+                return;
+            }
+            handler.handle(ctx);
+        };
+    }
+
+    /**
+     * Wraps an API route: traced, admitted by the concurrency limiter, run under the route's
+     * deadline and in one unit of work.
+     */
+    private Handler guarded(Priority priority, String route, Handler handler) {
+        return traced(limited(priority, route, withDeadline(route, inUnitOfWork(handler))));
+    }
+
+    /**
+     * Runs handler with one connection and transaction shared by every DAO call it makes,
+     * committed when it returns, before the response is sent. A handler that throws, e.g.
+     * past its deadline, is rolled back; a failed commit is a 500.
+     */
+    private static Handler inUnitOfWork(Handler handler) {
+        return ctx -> {
+            try (UnitOfWork unit = UnitOfWork.begin()) {
+                handler.handle(ctx);
+                unit.commit();
+            }
+        };
+    }
+
+    /**
+     * Runs handler inside the root span of the request's trace and a JFR RequestEvent.
+     * Sampled requests get their traceparent back in a response header so a client can find them.
+     */
+    private static Handler traced(Handler handler) {
+        return ctx -> {
+            RequestEvent event = new RequestEvent();
+            event.begin();
+            try (Span span = Tracing.startRequest(ctx.method() + " " + ctx.endpointHandlerPath(), ctx.header("traceparent"))) {
+                if (span.isSampled()) ctx.header("traceparent", span.traceparent());
+                try {
+                    handler.handle(ctx);
+                } catch (Exception e) {
+                    span.tag("exception.type", e.getClass().getName());
+                    throw e;
+                } finally {
+                    span.tag("http.status_code", ctx.statusCode());
+                    if (event.shouldCommit()) {
+                        event.method = ctx.method().name();
+                        event.route = ctx.endpointHandlerPath();
+                        event.status = ctx.statusCode();
+                        event.requestBytes = ctx.req().getContentLengthLong();
+                        event.responseBytes = responseBytes(ctx);
+                        event.commit();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @return Bytes the handler streamed to the client plus those of the result still to be sent, -1 if unknown.
+     */
+    private static long responseBytes(Context ctx) throws IOException {
+        if (!(ctx.res() instanceof Response)) return -1;
+        long bytes = ((Response) ctx.res()).getHttpOutput().getWritten();
+        InputStream result = ctx.resultInputStream();
+        if (result instanceof ByteArrayInputStream) {
+            bytes += result.available();
+        } else if (result != null) {
+            return -1;
+        }
+        return bytes;
+    }
+
+    /**
+     * Runs handler if the concurrency limiter admits a request of this priority, otherwise
+     * responds 503 at once. The handler's time feeds back into the limit, measured against
+     * the route's usual time.
+     */
+    private Handler limited(Priority priority, String route, Handler handler) {
+        if (concurrencyLimiter == null) return handler;
+        return ctx -> {
+            if (!admitted(ctx, priority)) return;
+            long start = System.nanoTime();
+            try {
+                handler.handle(ctx);
+            } finally {
+                concurrencyLimiter.release(route, System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * Like limited at LOW priority, for handlers that run long by design and so say nothing about load.
+     */
+    private Handler limitedBulk(Handler handler) {
+        if (concurrencyLimiter == null) return handler;
+        return ctx -> {
+            if (!admitted(ctx, Priority.LOW)) return;
+            try {
+                handler.handle(ctx);
+            } finally {
+                concurrencyLimiter.release();
+            }
+        };
+    }
+
+    /**
+     * Runs handler under a Deadline: the route's default, or the X-Request-Timeout header if shorter.
+     * A header that is not a positive number of milliseconds gets 400.
+     */
+    private static Handler withDeadline(String route, Handler handler) {
+        long routeMillis = Long.getLong("deadline." + route, DEFAULT_DEADLINE_MILLIS);
+        return ctx -> {
+            long millis = routeMillis;
+            String header = ctx.header("X-Request-Timeout");
+            if (header != null) {
+                try {
+                    long requested = Long.parseLong(header.trim());
+                    if (requested <= 0) throw new NumberFormatException(header);
+                    millis = Math.min(millis, requested);
+                } catch (NumberFormatException e) {
+                    ctx.status(400);
+                    return;
+                }
+            }
+            Deadline.start(millis);
+            try {
+                handler.handle(ctx);
+            } finally {
+                Deadline.clear();
+            }
+        };
+    }
+
+    private boolean admitted(Context ctx, Priority priority) {
+        if (concurrencyLimiter.tryAcquire(priority)) {
+            return true;
+        }
+        ctx.status(503);
+        ctx.header("Retry-After", "1");
+        return false;
+    }
+
+    /**
+     * Runs handler at most once per Idempotency-Key header value on this route.
+     * A retry with the same key and body gets the first response again, marked with an
+     * Idempotent-Replayed header. Requests without the header run as usual.
+     */
+    private void idempotent(Context ctx, String route, Handler handler) throws Exception {
+        String key = ctx.header("Idempotency-Key");
+        if (key == null || idempotencyStore == null) {
+            handler.handle(ctx);
+            return;
+        }
+
+        IdempotencyStore.StoredResponse replay = idempotencyStore.execute(route + ":" + key, ctx.bodyAsBytes(), () -> {
+            handler.handle(ctx);
+            // Only a committed write may be replayed; a failed commit throws and is not stored
+            UnitOfWork unit = UnitOfWork.current();
+            if (unit != null) unit.commit();
+            return capture(ctx);
+        });
+        if (replay != null) {
+            ctx.status(replay.status);
+            if (replay != IdempotencyStore.StoredResponse.CONFLICT) ctx.header("Idempotent-Replayed", "true");
+            if (replay.contentType != null) ctx.contentType(replay.contentType);
+            ctx.result(replay.body);
+        }
+    }
+
+    /**
+     * Copies the response written so far, leaving it in place to be sent.
+     */
+    private static IdempotencyStore.StoredResponse capture(Context ctx) throws IOException {
+        byte[] body = new byte[0];
+        InputStream result = ctx.resultInputStream();
+        if (result != null) {
+            body = result.readAllBytes();
+            ctx.result(body);
+        }
+        return new IdempotencyStore.StoredResponse(ctx.statusCode(), ctx.res().getContentType(), body);
+    }
+
     /**
      * Handles user registration.
      * Accepts a JSON object without account_id and attempts to create a new account.
      * If the username is taken or input is invalid, returns 400.
      */
     private void handleRegister(Context ctx) throws JsonProcessingException {
+        if (!allowed(ctx, registerLimiter, ctx.ip())) return;
         ObjectMapper mapper = new ObjectMapper();
         // Convert JSON to Account object
         Account acc = mapper.readValue(ctx.body(), Account.class); 
@@ -112,6 +436,7 @@ public class SocialMediaController {
      * Returns 401 if login fails.
      */
     private void handleLogin(Context ctx) throws JsonProcessingException {
+        if (!allowed(ctx, loginLimiter, ctx.ip())) return;
         ObjectMapper mapper = new ObjectMapper();
         // Read JSON input
         Account acc = mapper.readValue(ctx.body(), Account.class); 
@@ -131,10 +456,10 @@ public class SocialMediaController {
      * Accepts a JSON message object and validates content before inserting.
      * Returns 400 if validation fails.
      */
-    private void handlePostMessage(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        // Convert input to Message
-        Message msg = mapper.readValue(ctx.body(), Message.class); 
+    private void handlePostMessage(Context ctx) throws IOException {
+        // Convert input to Message, JSON unless Content-Type names a binary format
+        Message msg = requestFormat(ctx).mapper.readValue(ctx.bodyAsBytes(), Message.class); 
+        if (!allowed(ctx, postMessageLimiter, "account:" + msg.getPosted_by())) return;
         
         // Attempt to save
         Message created = messageService.createMessage(msg); 
@@ -142,30 +467,54 @@ public class SocialMediaController {
         if (created == null) {
             ctx.status(400); 
         } else {// Return new message
-            ctx.json(mapper.writeValueAsString(created)); 
+            send(ctx, created); 
         }
     }
 
     /**
      * Handles retrieval of all messages.
-     * Returns a list of all messages from the database.
+     * Returns a list of all messages from the database, or one page of a time range
+     * when since, until, limit or cursor is given. ?fields= narrows each message.
      */
-    private void handleGetAllMessages(Context ctx) {
-        ctx.json(messageService.getAllMessages());
+    private void handleGetAllMessages(Context ctx) throws IOException {
+        TimeRange range;
+        MessageFields fields;
+        try {
+            range = timeRange(ctx);
+            fields = MessageFields.parse(ctx.queryParam("fields"));
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            ctx.result(String.valueOf(e.getMessage()));
+            return;
+        }
+
+        if (range == null) {
+            sendMessages(ctx, messageService.getAllMessages(fields.columnsOnly()), fields);
+        } else {
+            sendPage(ctx, range, messageService.getMessagesByTime(range), fields);
+        }
     }
 
     /**
      * Handles retrieval of a specific message by its ID.
-     * Returns an empty body if the message does not exist.
+     * Returns an empty body if the message does not exist. ?fields= narrows the message.
      */
-    private void handleGetMessageById(Context ctx) {
+    private void handleGetMessageById(Context ctx) throws IOException {
+        MessageFields fields;
+        try {
+            fields = MessageFields.parse(ctx.queryParam("fields"));
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            ctx.result(String.valueOf(e.getMessage()));
+            return;
+        }
         // Get path parameter
         int id = Integer.parseInt(ctx.pathParam("message_id")); 
         // Retrieve message
         Message msg = messageService.getMessageById(id); 
 
         if (msg != null) {
-            ctx.json(msg);
+            sendMessage(ctx, msg, fields);
         }
     }
 
@@ -173,12 +522,13 @@ public class SocialMediaController {
      * Handles deletion of a message by its ID.
      * Returns the deleted message object or an empty body if none existed.
      */
-    private void handleDeleteMessageById(Context ctx) {
+    private void handleDeleteMessageById(Context ctx) throws IOException {
         int id = Integer.parseInt(ctx.pathParam("message_id"));
         Message deleted = messageService.deleteMessageById(id);
 
         if (deleted != null) {
-            ctx.json(deleted);
+            if (jsonCache != null) jsonCache.invalidate(id);
+            send(ctx, deleted);
         }
     }
 
@@ -186,29 +536,374 @@ public class SocialMediaController {
      * Handles updating of a message's text.
      * Only updates if the message exists and the new text is valid.
      */
-    private void handleUpdateMessage(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void handleUpdateMessage(Context ctx) throws IOException {
         // Get message ID from path
         int id = Integer.parseInt(ctx.pathParam("message_id")); 
 
+        // Limit by the message's owner when it is cached, by client IP otherwise
+        Message cached = messageService.getCachedMessageById(id);
+        String limitKey = cached != null ? "account:" + cached.getPosted_by() : "ip:" + ctx.ip();
+        if (!allowed(ctx, patchMessageLimiter, limitKey)) return;
+
         // Get new message_text
-        Message update = mapper.readValue(ctx.body(), Message.class); 
+        Message update = requestFormat(ctx).mapper.readValue(ctx.bodyAsBytes(), Message.class); 
         Message updated = messageService.updateMessageText(id, update.getMessage_text());
+        if (jsonCache != null) jsonCache.invalidate(id);
 
         if (updated == null) {
             ctx.status(400); 
         } else { // Return updated message
-            ctx.json(mapper.writeValueAsString(updated));
+            send(ctx, updated);
+        }
+    }
+
+    /**
+     * Handles a like of a message.
+     * Returns the message_id and its like count, or 400 if the message does not exist.
+     */
+    private void handleLikeMessage(Context ctx) throws IOException {
+        int id = Integer.parseInt(ctx.pathParam("message_id"));
+        Long likes = messageService.likeMessage(id);
+
+        if (likes == null) {
+            ctx.status(400);
+        } else {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("message_id", id);
+            body.put("likes", likes);
+            send(ctx, body);
         }
     }
 
     /**
      * Handles retrieval of all messages by a specific account ID.
-     * Always returns a list, even if empty.
+     * Always returns a list, even if empty. ?fields= narrows each message.
      */
-    private void handleGetMessagesByAccount(Context ctx) {
+    private void handleGetMessagesByAccount(Context ctx) throws IOException {
         // Get account ID from path
         int accountId = Integer.parseInt(ctx.pathParam("account_id")); 
-        ctx.json(messageService.getMessagesByAccountId(accountId));
+        TimeRange range;
+        MessageFields fields;
+        try {
+            range = timeRange(ctx);
+            fields = MessageFields.parse(ctx.queryParam("fields"));
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            ctx.result(String.valueOf(e.getMessage()));
+            return;
+        }
+
+        if (range == null) {
+            sendMessages(ctx, messageService.getMessagesByAccountId(accountId, fields.columnsOnly()), fields);
+        } else {
+            sendPage(ctx, range, messageService.getMessagesByAccountAndTime(accountId, range), fields);
+        }
+    }
+
+    /**
+     * Handles retrieval of the messages read and liked most in a window, with their counts.
+     * Returns 400 for an unknown window or a limit out of range, 404 when trending is off.
+     */
+    private void handleGetTrendingMessages(Context ctx) throws IOException {
+        if (trendingOff(ctx)) return;
+        List<Ranked<Message>> ranked;
+        try {
+            ranked = messageService.getTrendingMessages(trendingWindow(ctx), trendingLimit(ctx));
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            ctx.result(String.valueOf(e.getMessage()));
+            return;
+        }
+
+        List<Map<String, Object>> body = new ArrayList<>(ranked.size());
+        for (Ranked<Message> entry : ranked) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("message_id", entry.item.getMessage_id());
+            item.put("posted_by", entry.item.getPosted_by());
+            item.put("message_text", entry.item.getMessage_text());
+            item.put("time_posted_epoch", entry.item.getTime_posted_epoch());
+            item.put("count", entry.count);
+            body.add(item);
+        }
+        send(ctx, body);
+    }
+
+    /**
+     * Handles retrieval of the accounts that posted most in a window, with their post counts.
+     * Returns 400 for an unknown window or a limit out of range, 404 when trending is off.
+     */
+    private void handleGetTrendingAccounts(Context ctx) throws IOException {
+        if (trendingOff(ctx)) return;
+        List<Ranked<Integer>> ranked;
+        try {
+            ranked = messageService.getTrendingAccounts(trendingWindow(ctx), trendingLimit(ctx));
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            ctx.result(String.valueOf(e.getMessage()));
+            return;
+        }
+
+        List<Map<String, Object>> body = new ArrayList<>(ranked.size());
+        for (Ranked<Integer> entry : ranked) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("account_id", entry.item);
+            item.put("count", entry.count);
+            body.add(item);
+        }
+        send(ctx, body);
+    }
+
+    private static String trendingWindow(Context ctx) {
+        String window = ctx.queryParam("window");
+        return window == null ? DEFAULT_TRENDING_WINDOW : window;
+    }
+
+    /**
+     * Responds 404 when trending is turned off with -Dtrending=false.
+     */
+    private boolean trendingOff(Context ctx) {
+        if (messageService.isTrendingEnabled()) return false;
+        ctx.status(404);
+        ctx.result("Trending is turned off");
+        return true;
+    }
+
+    /**
+     * @throws IllegalArgumentException if ?limit= is malformed or above what the sketches keep.
+     */
+    private int trendingLimit(Context ctx) {
+        String limit = ctx.queryParam("limit");
+        int max = messageService.getTrendingLimit();
+        int entries = limit == null ? Math.min(DEFAULT_TRENDING_LIMIT, max) : Integer.parseInt(limit);
+        if (entries <= 0 || entries > max) {
+            throw new IllegalArgumentException("limit must be between 1 and " + max);
+        }
+        return entries;
+    }
+
+    /**
+     * Reads a time range from the query string: since (inclusive) and until (exclusive) in the
+     * units of time_posted_epoch, limit, and the cursor returned in X-Next-Cursor by the previous page.
+     *
+     * @return The requested page, or null if none of the parameters is present.
+     * @throws IllegalArgumentException if a parameter is malformed.
+     */
+    private static TimeRange timeRange(Context ctx) {
+        String since = ctx.queryParam("since");
+        String until = ctx.queryParam("until");
+        String limit = ctx.queryParam("limit");
+        String cursor = ctx.queryParam("cursor");
+        if (since == null && until == null && limit == null && cursor == null) {
+            return null;
+        }
+
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limit);
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        TimeRange range = TimeRange.of(
+                since == null ? Long.MIN_VALUE : Long.parseLong(since),
+                until == null ? Long.MAX_VALUE : Long.parseLong(until),
+                pageSize);
+        if (cursor != null) {
+            // "<time_posted_epoch>:<message_id>" of the last message already returned
+            int colon = cursor.indexOf(':');
+            if (colon < 0) throw new IllegalArgumentException("malformed cursor");
+            range = new TimeRange(range.since, range.until,
+                    Long.parseLong(cursor.substring(0, colon)), Integer.parseInt(cursor.substring(colon + 1)), pageSize);
+        }
+        return range;
+    }
+
+    /**
+     * Writes one page of a time range, with the cursor of the next page in X-Next-Cursor when it is full.
+     */
+    private void sendPage(Context ctx, TimeRange range, List<Message> page, MessageFields fields) throws IOException {
+        if (page.size() == range.limit) {
+            Message last = page.get(page.size() - 1);
+            ctx.header("X-Next-Cursor", last.getTime_posted_epoch() + ":" + last.getMessage_id());
+        }
+        sendMessages(ctx, page, fields);
+    }
+
+    /**
+     * Writes one message with only the requested fields.
+     */
+    private void sendMessage(Context ctx, Message msg, MessageFields fields) throws IOException {
+        if (fields.isAll()) {
+            sendMessage(ctx, msg);
+            return;
+        }
+        WireFormat format = responseFormat(ctx);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        long likes = fields.hasLikes() ? messageService.getLikes(msg.getMessage_id()) : 0;
+        try (JsonGenerator generator = format.mapper.getFactory().createGenerator(out)) {
+            fields.write(generator, msg, likes);
+        }
+        ctx.contentType(format.contentType);
+        ctx.result(out.toByteArray());
+    }
+
+    /**
+     * Writes a list of messages with only the requested fields, in the negotiated format.
+     */
+    private void sendMessages(Context ctx, List<Message> messages, MessageFields fields) throws IOException {
+        if (fields.isAll()) {
+            sendMessages(ctx, messages);
+            return;
+        }
+        WireFormat format = responseFormat(ctx);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2 + messages.size() * 48);
+        Map<Integer, Long> likes = fields.hasLikes() ? messageService.getLikes(messages) : Collections.emptyMap();
+        try (JsonGenerator generator = format.mapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            for (Message msg : messages) {
+                fields.write(generator, msg, likes.getOrDefault(msg.getMessage_id(), 0L));
+            }
+            generator.writeEndArray();
+        }
+        ctx.contentType(format.contentType);
+        ctx.result(out.toByteArray());
+    }
+
+    /**
+     * @return The format the client asked for in Accept. Marks the response as varying with it.
+     */
+    private static WireFormat responseFormat(Context ctx) {
+        ctx.header("Vary", "Accept");
+        return WireFormat.forAccept(ctx.header("Accept"));
+    }
+
+    /**
+     * @return The format of the request body, from its Content-Type.
+     */
+    private static WireFormat requestFormat(Context ctx) {
+        return WireFormat.forContentType(ctx.header("Content-Type"));
+    }
+
+    /**
+     * Writes value in the format the client asked for, without the byte cache.
+     */
+    private static void send(Context ctx, Object value) throws IOException {
+        WireFormat format = responseFormat(ctx);
+        if (format == WireFormat.JSON) {
+            ctx.json(format.mapper.writeValueAsString(value));
+            return;
+        }
+        ctx.contentType(format.contentType);
+        ctx.result(format.mapper.writeValueAsBytes(value));
+    }
+
+    /**
+     * Writes one message in the negotiated format, from the byte cache when it is on and the format is JSON.
+     */
+    private void sendMessage(Context ctx, Message msg) throws IOException {
+        if (jsonCache == null || responseFormat(ctx) != WireFormat.JSON) {
+            send(ctx, msg);
+            return;
+        }
+        ctx.contentType("application/json");
+        ctx.result(jsonCache.toJson(msg));
+    }
+
+    /**
+     * Writes a list of messages in the negotiated format, spliced from the byte cache when it is on and the format is JSON.
+     */
+    private void sendMessages(Context ctx, List<Message> messages) throws IOException {
+        if (jsonCache == null || responseFormat(ctx) != WireFormat.JSON) {
+            send(ctx, messages);
+            return;
+        }
+        ctx.contentType("application/json");
+        ctx.result(jsonCache.toJson(messages));
+    }
+
+    /**
+     * Handles retrieval of internal metrics.
+     * Returns a JSON object of counters and cache sizes, grouped by component.
+     */
+    private void handleGetMetrics(Context ctx) {
+        Map<String, Object> metrics = new LinkedHashMap<>(messageService.metrics());
+
+        Map<String, Object> rateLimits = new LinkedHashMap<>();
+        rateLimits.put("postMessage", limiterStats(postMessageLimiter));
+        rateLimits.put("patchMessage", limiterStats(patchMessageLimiter));
+        rateLimits.put("register", limiterStats(registerLimiter));
+        rateLimits.put("login", limiterStats(loginLimiter));
+        metrics.put("rateLimits", rateLimits);
+
+        if (concurrencyLimiter != null) {
+            metrics.put("concurrencyLimit", concurrencyLimiter.stats());
+        }
+        metrics.put("deadlinesExceeded", deadlinesExceeded.get());
+        metrics.put("tracing", Tracing.exporter().stats());
+
+        if (idempotencyStore != null) {
+            Map<String, Object> idempotency = new LinkedHashMap<>();
+            idempotency.put("keys", idempotencyStore.size());
+            idempotency.put("stored", idempotencyStore.storedCount());
+            idempotency.put("replays", idempotencyStore.replayCount());
+            idempotency.put("conflicts", idempotencyStore.conflictCount());
+            idempotency.put("queued", idempotencyStore.queuedCount());
+            metrics.put("idempotency", idempotency);
+        }
+
+        if (jsonCache != null) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("entries", jsonCache.size());
+            json.put("hits", jsonCache.hitCount());
+            json.put("misses", jsonCache.missCount());
+            metrics.put("jsonByteCache", json);
+        }
+
+        ctx.json(metrics);
+    }
+
+    /**
+     * Handles a trace dump.
+     * Returns the most recent sampled spans as one OTLP/JSON ExportTraceServiceRequest.
+     */
+    private void handleGetTraces(Context ctx) throws IOException {
+        ctx.contentType("application/json");
+        Tracing.exporter().writeRecent(ctx.outputStream());
+    }
+
+    private static Map<String, Object> limiterStats(RateLimiter limiter) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rejected", limiter.rejectedCount());
+        stats.put("trackedKeys", limiter.trackedKeys());
+        return stats;
+    }
+
+    /**
+     * Handles a bulk export.
+     * Streams every account and then every message as one JSON object per line.
+     * Passwords are left out unless asked for with ?include_passwords=true.
+     */
+    private void handleExport(Context ctx) throws IOException {
+        ctx.contentType("application/x-ndjson");
+        bulkService.exportAll(ctx.outputStream(), "true".equals(ctx.queryParam("include_passwords")));
+    }
+
+    /**
+     * Handles a bulk import.
+     * Reads NDJSON rows in the export format from the request body as it arrives.
+     * Returns counts and rows per second, or 409 if the database is sharded or another message store is in use.
+     */
+    private void handleImport(Context ctx) throws IOException {
+        try {
+            Map<String, Object> stats = bulkService.importAll(ctx.req().getInputStream());
+            // Rows went in around MessageService, so its index has to be rebuilt
+            messageService.reloadIndex();
+            ctx.json(stats);
+        } catch (IllegalStateException e) {
+            ctx.status(409);
+            ctx.result(e.getMessage());
+        } catch (JsonProcessingException e) {
+            // Malformed NDJSON or an unknown row type; rows committed before it stay imported
+            messageService.reloadIndex();
+            ctx.status(400);
+            ctx.result(e.getOriginalMessage());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package Controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Body encodings of the message endpoints, picked per request by content negotiation.
+ *
+ * JSON is the default. Smile and CBOR are Jackson's binary formats: same data model, so
+ * a Message or a list of them maps exactly as in JSON, but with no text number parsing
+ * and, for Smile, back-references for repeated property names, which makes large arrays
+ * smaller and cheaper to decode.
+ */
+public enum WireFormat {
+    JSON("application/json", new ObjectMapper()),
+    SMILE("application/x-jackson-smile", new ObjectMapper(new SmileFactory())),
+    CBOR("application/cbor", new ObjectMapper(new CBORFactory()));
+
+    public final String contentType;
+    // Mappers are thread safe once configured, one per format is shared
+    public final ObjectMapper mapper;
+
+    WireFormat(String contentType, ObjectMapper mapper) {
+        this.contentType = contentType;
+        this.mapper = mapper;
+    }
+
+    /**
+     * @param accept The Accept header, may be null.
+     * @return The first format listed that is supported, JSON if none is.
+     */
+    public static WireFormat forAccept(String accept) {
+        if (accept == null) return JSON;
+        for (String range : accept.split(",")) {
+            WireFormat format = forMediaType(range);
+            if (format != null) return format;
+            if (range.trim().startsWith("*/*")) return JSON;
+        }
+        return JSON;
+    }
+
+    /**
+     * @param contentType The Content-Type header of a request body, may be null.
+     * @return The format it names, JSON if it names none of them.
+     */
+    public static WireFormat forContentType(String contentType) {
+        WireFormat format = contentType == null ? null : forMediaType(contentType);
+        return format == null ? JSON : format;
+    }
+
+    private static WireFormat forMediaType(String mediaType) {
+        // Drop parameters such as ;q=0.9 or ;charset=utf-8
+        int semicolon = mediaType.indexOf(';');
+        String type = (semicolon < 0 ? mediaType : mediaType.substring(0, semicolon)).trim();
+        for (WireFormat format : values()) {
+            if (format.contentType.equalsIgnoreCase(type)) return format;
+        }
+        return null;
+    }
+}
@@ -1,12 +1,6 @@
 package DAO;
 
 import Model.Account;
-import Model.Message;
-import Util.ConnectionUtil;
-
-import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * REQs from readme
@@ -21,6 +15,15 @@ import java.util.List;
  * login.
  */
 public class AccountDAO {
+    // Reads an Account from a row of SELECT * FROM Account
+    static final RowMapper<Account> ACCOUNT = RowMapper.of((rs, c) -> new Account(
+            rs.getInt(c[0]),
+            rs.getString(c[1]),
+            rs.getString(c[2])
+    ), "account_id", "username", "password");
+
+    // Account is only in the main database
+    private final JdbcTemplate jdbc = new JdbcTemplate(0);
 
     /**
      * Inserts a new account into the database.
@@ -31,30 +34,16 @@ public class AccountDAO {
      *         if insertion failed.
      */
     public Account insertAccount(Account account) {
-        Connection connection = ConnectionUtil.getConnection();
-
-        try {
-            // SQL to insert a new account with unique username
-            String sql = "INSERT INTO Account (username, password) VALUES (?, ?)";
-            PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            ps.setString(1, account.getUsername());
-            ps.setString(2, account.getPassword());
-
-            int rowsAffected = ps.executeUpdate();
-
-            // If insert was successful, retrieve generated account_id
-            if (rowsAffected > 0) {
-                ResultSet rs = ps.getGeneratedKeys();
-                if (rs.next()) {
-                    int accountId = rs.getInt(1);
-                    return new Account(accountId, account.getUsername(), account.getPassword());
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        return null; // insert failed
+        // SQL to insert a new account with unique username
+        String sql = "INSERT INTO Account (username, password) VALUES (?, ?)";
+        return jdbc.execute("AccountDAO.insertAccount", sql, false, connection -> {
+            int accountId = JdbcTemplate.insert(connection, sql, statement -> {
+                statement.setString(1, account.getUsername());
+                statement.setString(2, account.getPassword());
+            });
+            // If insert was successful, return it with the generated account_id
+            return accountId == 0 ? null : new Account(accountId, account.getUsername(), account.getPassword());
+        }, null); // null if insert failed
     }
 
     /**
@@ -66,29 +55,12 @@ public class AccountDAO {
      * @return The matching Account object if found; otherwise, null.
      */
     public Account getAccountByUsernameAndPassword(String username, String password) {
-        Connection connection = ConnectionUtil.getConnection();
-
-        try {
-            // SQL to find account with exact username and password
-            String sql = "SELECT * FROM Account WHERE username = ? AND password = ?";
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ps.setString(1, username);
-            ps.setString(2, password);
-
-            ResultSet rs = ps.executeQuery();
-
-            if (rs.next()) {
-                int accountId = rs.getInt("account_id");
-                String foundUsername = rs.getString("username");
-                String foundPassword = rs.getString("password");
-
-                return new Account(accountId, foundUsername, foundPassword);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        return null; // login failed
+        // SQL to find account with exact username and password
+        String sql = "SELECT * FROM Account WHERE username = ? AND password = ?";
+        return jdbc.queryOne("AccountDAO.getAccountByUsernameAndPassword", sql, statement -> {
+            statement.setString(1, username);
+            statement.setString(2, password);
+        }, ACCOUNT); // null if login failed
     }
 
     //EXTRA 
@@ -100,21 +72,19 @@ public class AccountDAO {
      * @return true if username exists; false otherwise.
      */
     public boolean usernameExists(String username) {
-        Connection connection = ConnectionUtil.getConnection();
-
-        try {
-            String sql = "SELECT * FROM Account WHERE username = ?";
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ps.setString(1, username);
-
-            ResultSet rs = ps.executeQuery();
-
-            // true if at least one match
-            return rs.next(); 
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        String sql = "SELECT account_id FROM Account WHERE username = ?";
+        return jdbc.exists("AccountDAO.usernameExists", sql, statement -> statement.setString(1, username));
+    }
 
-        return false;
+    /**
+     * Checks if an account with the given account_id exists.
+     * Used by message stores that cannot rely on the posted_by foreign key.
+     *
+     * @param accountId The account_id to check.
+     * @return true if the account exists; false otherwise.
+     */
+    public boolean accountExists(int accountId) {
+        String sql = "SELECT account_id FROM Account WHERE account_id = ?";
+        return jdbc.exists("AccountDAO.accountExists", sql, statement -> statement.setInt(1, accountId));
     }
 }
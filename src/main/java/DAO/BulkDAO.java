@@ -0,0 +1,231 @@
+package DAO;
+
+import Util.ConnectionUtil;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.sql.*;
+
+/**
+ * Bulk copy of the Account and Message tables as NDJSON, one row per line:
+ *   {"type":"account","account_id":1,"username":"...","password":"..."}  (password only when asked for)
+ *   {"type":"message","message_id":1,"posted_by":1,"message_text":"...","time_posted_epoch":1669947792}
+ *
+ * Export streams rows straight from lazily executed JDBC cursors to the output, and import
+ * streams lines into batched MERGE statements committed every BATCH_SIZE rows, so memory
+ * stays flat however many rows there are.
+ */
+public class BulkDAO {
+    private static final int BATCH_SIZE = 1000;
+    private static final int FETCH_SIZE = 1000;
+
+    /**
+     * Writes every account, then every message of every shard, as NDJSON.
+     *
+     * @param out              Generator to write the lines to.
+     * @param shardCount       Number of message shards to read.
+     * @param includePasswords Whether account lines carry the password.
+     * @return {accounts written, messages written}
+     */
+    public long[] exportAll(JsonGenerator out, int shardCount, boolean includePasswords) throws IOException {
+        long[] counts = new long[2];
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = streamingStatement(connection);
+             ResultSet accounts = statement.executeQuery("SELECT account_id, username, password FROM account ORDER BY account_id")) {
+            while (accounts.next()) {
+                out.writeStartObject();
+                out.writeStringField("type", "account");
+                out.writeNumberField("account_id", accounts.getInt(1));
+                out.writeStringField("username", accounts.getString(2));
+                if (includePasswords) out.writeStringField("password", accounts.getString(3));
+                out.writeEndObject();
+                out.writeRaw('\n');
+                counts[0]++;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Export failed", e);
+        }
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            try (Connection connection = ConnectionUtil.getConnection(shard);
+                 Statement statement = streamingStatement(connection);
+                 ResultSet messages = statement.executeQuery(
+                         "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE deleted_at IS NULL ORDER BY message_id")) {
+                while (messages.next()) {
+                    out.writeStartObject();
+                    out.writeStringField("type", "message");
+                    out.writeNumberField("message_id", messages.getInt(1));
+                    out.writeNumberField("posted_by", messages.getInt(2));
+                    out.writeStringField("message_text", messages.getString(3));
+                    out.writeNumberField("time_posted_epoch", messages.getLong(4));
+                    out.writeEndObject();
+                    out.writeRaw('\n');
+                    counts[1]++;
+                }
+            } catch (SQLException e) {
+                throw new IOException("Export failed", e);
+            }
+        }
+
+        out.flush();
+        return counts;
+    }
+
+    /**
+     * Reads NDJSON rows and upserts them by primary key into the main database.
+     * Rows the API would not accept are skipped and counted: accounts without a username or
+     * password (e.g. from an export without passwords), and messages whose text is blank or
+     * over 255 characters or whose posted_by is not an account, imported earlier in the
+     * same stream or already stored. Identity columns continue after the highest imported ID.
+     *
+     * @param in Parser positioned before the first row.
+     * @return {accounts imported, messages imported, rows skipped}
+     * @throws com.fasterxml.jackson.core.JsonProcessingException When the input is not NDJSON
+     *         rows of a known type. Batches committed before the bad row stay imported.
+     */
+    public long[] importAll(JsonParser in) throws IOException {
+        long[] counts = new long[3];
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = connection.createStatement();
+             PreparedStatement accounts = connection.prepareStatement(
+                     "MERGE INTO account (account_id, username, password) KEY (account_id) VALUES (?, ?, ?)");
+             // The SELECT only yields a row when posted_by exists, so unknown authors are skipped, not stored
+             PreparedStatement messages = connection.prepareStatement(
+                     "MERGE INTO message (message_id, posted_by, message_text, time_posted_epoch, deleted_at) KEY (message_id) "
+                     + "SELECT ?, account_id, ?, ?, NULL FROM account WHERE account_id = ?")) {
+            connection.setAutoCommit(false);
+            int pending = 0;
+            boolean committed = false;
+
+            try {
+                while (in.nextToken() == JsonToken.START_OBJECT) {
+                    Row row = readRow(in);
+                    if ("account".equals(row.type)) {
+                        if (row.username == null || row.username.isBlank() || row.password == null) {
+                            counts[2]++;
+                            continue;
+                        }
+                        accounts.setInt(1, row.accountId);
+                        accounts.setString(2, row.username);
+                        accounts.setString(3, row.password);
+                        accounts.addBatch();
+                    } else if ("message".equals(row.type)) {
+                        // Same checks as MessageService.createMessage
+                        if (row.messageText == null || row.messageText.isBlank() || row.messageText.length() > 255) {
+                            counts[2]++;
+                            continue;
+                        }
+                        messages.setInt(1, row.messageId);
+                        messages.setString(2, row.messageText);
+                        messages.setLong(3, row.timePostedEpoch);
+                        messages.setInt(4, row.postedBy);
+                        messages.addBatch();
+                    } else {
+                        throw new JsonParseException(in, "Unknown row type: " + row.type);
+                    }
+
+                    if (++pending == BATCH_SIZE) {
+                        flush(accounts, messages, counts);
+                        connection.commit();
+                        committed = true;
+                        pending = 0;
+                    }
+                }
+                flush(accounts, messages, counts);
+                restartIdentities(statement);
+                connection.commit();
+            } catch (IOException | SQLException e) {
+                connection.rollback();
+                if (committed) {
+                    // Earlier batches stay imported, so new rows still have to get IDs after theirs
+                    try {
+                        restartIdentities(statement);
+                        connection.commit();
+                    } catch (SQLException restartFailure) {
+                        e.addSuppressed(restartFailure);
+                    }
+                }
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Import failed", e);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Runs the pending batches, accounts first so messages can refer to them, and counts the
+     * rows stored and skipped.
+     */
+    private void flush(PreparedStatement accounts, PreparedStatement messages, long[] counts) throws SQLException {
+        counts[0] += accounts.executeBatch().length;
+        for (int stored : messages.executeBatch()) {
+            counts[stored > 0 ? 1 : 2]++;
+        }
+    }
+
+    /**
+     * @return A statement whose queries' rows are fetched as they are read instead of all at once.
+     */
+    private Statement streamingStatement(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        statement.execute("SET LAZY_QUERY_EXECUTION 1");
+        statement.setFetchSize(FETCH_SIZE);
+        return statement;
+    }
+
+    private void restartIdentities(Statement statement) throws SQLException {
+        restartIdentity(statement, "account", "account_id");
+        restartIdentity(statement, "message", "message_id");
+    }
+
+    private void restartIdentity(Statement statement, String table, String column) throws SQLException {
+        long next;
+        try (ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(" + column + "), 0) + 1 FROM " + table)) {
+            if (!rs.next()) return;
+            next = rs.getLong(1);
+        }
+        statement.execute("ALTER TABLE " + table + " ALTER COLUMN " + column + " RESTART WITH " + next);
+    }
+
+    private Row readRow(JsonParser in) throws IOException {
+        Row row = new Row();
+        while (in.nextToken() == JsonToken.FIELD_NAME) {
+            String field = in.getCurrentName();
+            in.nextToken();
+            switch (field) {
+                case "type": row.type = in.getText(); break;
+                case "account_id": row.accountId = in.getIntValue(); break;
+                case "username": row.username = in.getText(); break;
+                case "password": row.password = in.getText(); break;
+                case "message_id": row.messageId = in.getIntValue(); break;
+                case "posted_by": row.postedBy = in.getIntValue(); break;
+                case "message_text": row.messageText = in.getText(); break;
+                case "time_posted_epoch": row.timePostedEpoch = in.getLongValue(); break;
+                default: in.skipChildren();
+            }
+        }
+        return row;
+    }
+
+    /**
+     * One parsed line, either an account or a message.
+     */
+    private static final class Row {
+        String type;
+        int accountId;
+        String username;
+        String password;
+        int messageId;
+        int postedBy;
+        String messageText;
+        long timePostedEpoch;
+    }
+}
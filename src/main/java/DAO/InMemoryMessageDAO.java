@@ -0,0 +1,140 @@
+package DAO;
+
+import Model.Message;
+import Util.AtomicPagedArray;
+import Util.SortedIdIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+/**
+ * Heap-only MessageRepository for tests, benchmarks and throwaway environments.
+ * Messages are keyed directly by message_id in a lock-free paged array, and each
+ * posted_by keeps a sorted int[] of its message IDs that is swapped in with CAS.
+ * Nothing is written back to H2, so data is lost when the process stops.
+ */
+public class InMemoryMessageDAO implements MessageRepository {
+    // message_id -> Message
+    private final AtomicPagedArray<Message> messagesById = new AtomicPagedArray<>();
+    // posted_by -> sorted message_ids
+    private final SortedIdIndex messageIdsByAccount = new SortedIdIndex();
+    // Last handed out message_id
+    private final AtomicInteger sequence = new AtomicInteger();
+    // Stands in for the foreign key on posted_by
+    private final IntPredicate accountExists;
+    // Store to copy from on first use, null once seeded
+    private volatile MessageRepository seedSource;
+
+    /**
+     * @param accountExists Check used to reject messages from unknown accounts, like the H2 foreign key does.
+     */
+    public InMemoryMessageDAO(IntPredicate accountExists) {
+        this.accountExists = accountExists;
+    }
+
+    /**
+     * Creates an in-memory store that loads every message from another store on first use,
+     * so startup does not wait on the copy. The ID sequence continues after the highest loaded message_id.
+     */
+    public static InMemoryMessageDAO seededFrom(MessageRepository source, IntPredicate accountExists) {
+        InMemoryMessageDAO dao = new InMemoryMessageDAO(accountExists);
+        dao.seedSource = source;
+        return dao;
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        ensureSeeded();
+        List<Message> messages = new ArrayList<>();
+        messagesById.forEach(sequence.get(), (id, m) -> messages.add(m));
+        return messages;
+    }
+
+    @Override
+    public Message getMessageId(int id) {
+        ensureSeeded();
+        return messagesById.get(id);
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        ensureSeeded();
+        int postedBy = message.getPosted_by();
+        if (postedBy < 0) return null;
+        // Accounts that already have messages are known to exist
+        if (!messageIdsByAccount.contains(postedBy) && !accountExists.test(postedBy)) {
+            return null;
+        }
+
+        Message created = new Message(
+                sequence.incrementAndGet(),
+                postedBy,
+                message.getMessage_text(),
+                message.getTime_posted_epoch()
+        );
+        messagesById.set(created.getMessage_id(), created);
+        messageIdsByAccount.add(postedBy, created.getMessage_id());
+        return created;
+    }
+
+    @Override
+    public Message updateMessage(int id, String newText) {
+        ensureSeeded();
+        while (true) {
+            Message current = messagesById.get(id);
+            if (current == null) return null;
+
+            // Replace instead of mutating, readers may still hold the old object
+            Message updated = new Message(id, current.getPosted_by(), newText, current.getTime_posted_epoch());
+            if (messagesById.compareAndSet(id, current, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    @Override
+    public Message deleteMessageById(int id) {
+        ensureSeeded();
+        Message removed = messagesById.remove(id);
+        if (removed != null) {
+            messageIdsByAccount.remove(removed.getPosted_by(), id);
+        }
+        return removed;
+    }
+
+    @Override
+    public List<Message> getMessagesByAccountId(int accountId) {
+        ensureSeeded();
+        int[] ids = messageIdsByAccount.get(accountId);
+        List<Message> messages = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Message m = messagesById.get(id);
+            // A concurrent delete may have cleared the message before the index
+            if (m != null) messages.add(m);
+        }
+        return messages;
+    }
+
+    private void ensureSeeded() {
+        if (seedSource == null) return;
+        synchronized (this) {
+            MessageRepository source = seedSource;
+            if (source == null) return;
+            for (Message m : source.getAllMessages()) {
+                store(m);
+            }
+            seedSource = null;
+        }
+    }
+
+    /**
+     * Puts an existing message (with its ID) into the store. Used while seeding.
+     */
+    private void store(Message message) {
+        messagesById.set(message.getMessage_id(), message);
+        messageIdsByAccount.add(message.getPosted_by(), message.getMessage_id());
+        sequence.accumulateAndGet(message.getMessage_id(), Math::max);
+    }
+}
@@ -0,0 +1,203 @@
+package DAO;
+
+import Util.ConnectionUtil;
+import Util.Deadline;
+import Util.Tracing;
+import Util.UnitOfWork;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the DAOs' statements on one database (shard), with what every DAO method repeats
+ * done once here: a connection per call that is closed afterwards, statements and result
+ * sets closed, the QueryEvent, tracing, the request deadline, and the DAO error handling
+ * (print the stack trace and return a fallback value).
+ *
+ * The instance methods each take a connection for one call, or the request's UnitOfWork
+ * connection when the thread has one; that one is committed and closed by the unit. The
+ * static ones run one statement on a connection the caller already has, e.g. several
+ * statements in one transaction inside execute.
+ */
+final class JdbcTemplate {
+    /**
+     * Sets a statement's parameters.
+     */
+    interface Binder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    /**
+     * Statements run on one connection.
+     */
+    interface Work<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    // For statements without parameters
+    static final Binder NO_PARAMETERS = statement -> { };
+
+    // Database the statements run on, 0 being the main one
+    private final int shard;
+
+    JdbcTemplate(int shard) {
+        this.shard = shard;
+    }
+
+    /**
+     * @return Every row mapped, or an empty list if the query failed.
+     */
+    <T> List<T> query(String method, String sql, Binder binder, RowMapper<T> mapper) {
+        return execute(method, sql, false, connection -> query(connection, sql, binder, mapper), new ArrayList<>());
+    }
+
+    /**
+     * @return The first row mapped, or null if there is none or the query failed.
+     */
+    <T> T queryOne(String method, String sql, Binder binder, RowMapper<T> mapper) {
+        return execute(method, sql, false, connection -> queryOne(connection, sql, binder, mapper), null);
+    }
+
+    /**
+     * @return Whether the query returns a row; false if it failed.
+     */
+    boolean exists(String method, String sql, Binder binder) {
+        return execute(method, sql, false, connection -> {
+            try (PreparedStatement statement = prepare(connection, sql, binder);
+                 ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        }, false);
+    }
+
+    /**
+     * @return Rows changed, or 0 if the statement failed.
+     */
+    int update(String method, String sql, Binder binder) {
+        return execute(method, sql, false, connection -> update(connection, sql, binder), 0);
+    }
+
+    /**
+     * Runs work on a connection of its own or the unit of work's, recorded as one DAO call.
+     *
+     * @param sql         Main statement of the work, for the QueryEvent.
+     * @param transaction Whether work's statements succeed or fail together: with auto-commit
+     *                    off and a commit when it returns, or in a unit of work, undone back to
+     *                    where work started if it throws.
+     * @return What work returned, or failed if it threw an SQLException.
+     */
+    <T> T execute(String method, String sql, boolean transaction, Work<T> work, T failed) {
+        QueryEvent event = QueryEvent.begin(method, shard);
+        event.sql = sql;
+        try {
+            Connection shared = UnitOfWork.connection(shard);
+            if (shared != null) {
+                return event.end(transaction ? inSavepoint(shared, work) : work.run(shared));
+            }
+            try (Connection connection = ConnectionUtil.getConnection(shard)) {
+                // getConnection has already printed why
+                if (connection == null) throw new SQLException("No connection to shard " + shard);
+                return event.end(transaction ? inTransaction(connection, work) : work.run(connection));
+            }
+        } catch (SQLException e) {
+            Deadline.rethrowIfExpired(e);
+            e.printStackTrace();
+        }
+        return event.end(failed);
+    }
+
+    private static <T> T inTransaction(Connection connection, Work<T> work) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            T result = work.run(connection);
+            connection.commit();
+            return result;
+        } finally {
+            // Nothing left to undo after the commit, otherwise a failed write is undone
+            connection.rollback();
+        }
+    }
+
+    // The unit commits, so a failure only undoes work's own statements
+    private static <T> T inSavepoint(Connection connection, Work<T> work) throws SQLException {
+        Savepoint savepoint = connection.setSavepoint();
+        try {
+            T result = work.run(connection);
+            connection.releaseSavepoint(savepoint);
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback(savepoint);
+            throw e;
+        }
+    }
+
+    /**
+     * @return Every row mapped. Rows read past the deadline are dropped rather than served late.
+     */
+    static <T> List<T> query(Connection connection, String sql, Binder binder, RowMapper<T> mapper) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        try (PreparedStatement statement = prepare(connection, sql, binder);
+             ResultSet rs = statement.executeQuery()) {
+            int[] positions = mapper.positions(sql, rs);
+            while (rs.next()) {
+                rows.add(mapper.map(rs, positions));
+            }
+        }
+        Deadline.check();
+        return rows;
+    }
+
+    /**
+     * @return The first row mapped, or null if there is none.
+     */
+    static <T> T queryOne(Connection connection, String sql, Binder binder, RowMapper<T> mapper) throws SQLException {
+        try (PreparedStatement statement = prepare(connection, sql, binder);
+             ResultSet rs = statement.executeQuery()) {
+            if (!rs.next()) return null;
+            return mapper.map(rs, mapper.positions(sql, rs));
+        }
+    }
+
+    /**
+     * @return Rows changed.
+     */
+    static int update(Connection connection, String sql, Binder binder) throws SQLException {
+        try (PreparedStatement statement = prepare(connection, sql, binder)) {
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Runs an INSERT into a table with a generated key.
+     * @return The generated key, or 0 if no row was inserted.
+     */
+    static int insert(Connection connection, String sql, Binder binder) throws SQLException {
+        PreparedStatement prepared = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        try (PreparedStatement statement = Tracing.statement(prepared, sql)) {
+            Deadline.apply(statement);
+            binder.bind(statement);
+            if (statement.executeUpdate() == 0) return 0;
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                return keys.next() ? keys.getInt(1) : 0;
+            }
+        }
+    }
+
+    private static PreparedStatement prepare(Connection connection, String sql, Binder binder) throws SQLException {
+        PreparedStatement statement = Tracing.statement(connection.prepareStatement(sql), sql);
+        try {
+            Deadline.apply(statement);
+            binder.bind(statement);
+            return statement;
+        } catch (SQLException | RuntimeException e) {
+            statement.close();
+            throw e;
+        }
+    }
+}
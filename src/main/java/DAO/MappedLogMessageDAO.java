@@ -0,0 +1,623 @@
+package DAO;
+
+import Model.Message;
+import Util.AtomicPagedArray;
+import Util.SortedIdIndex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only message store on memory-mapped segment files, for write-heavy deployments.
+ *
+ * Every insert, update and delete appends one fixed-size record to the active segment.
+ * An in-memory index maps message_id to the newest record and posted_by to its message IDs,
+ * so reads are a lookup plus a copy out of the mapped buffer. Deletes append a tombstone.
+ *
+ * On startup every segment is replayed in file order to rebuild the indexes. A record is
+ * only valid once its type byte is set and its CRC matches, so a write torn by a crash is
+ * dropped and overwritten. Sealed segments with enough dead records are compacted in the
+ * background: runs of neighbouring segments are copied, live records only, into one file
+ * per run that replaces them and is never larger than a segment. Segments without dead
+ * records are left alone unless they are small enough to merge into a neighbouring run.
+ *
+ * Records reach the OS page cache on every write; they are forced to disk when a segment
+ * fills up, on compaction and on close(). A process crash loses nothing, a power loss can
+ * lose the unforced tail of the active segment.
+ */
+public class MappedLogMessageDAO implements MessageRepository, Closeable {
+    // Segment header: magic, first segment number this file covers, highest message_id ever handed out
+    private static final int SEGMENT_MAGIC = 0x534D4C47;
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_COVERS_FROM = 4;
+    private static final int HEADER_MAX_ID = 8;
+
+    // Record layout, as offsets inside one record
+    static final int RECORD_SIZE = 1024;
+    private static final int TYPE = 0;          // byte, written last
+    private static final int CRC = 1;           // int, CRC32 of ID..end of text
+    private static final int ID = 5;            // int
+    private static final int POSTED_BY = 9;     // int
+    private static final int EPOCH = 13;        // long
+    private static final int TEXT_LENGTH = 21;  // short
+    private static final int TEXT = 23;
+    static final int MAX_TEXT_BYTES = RECORD_SIZE - TEXT;
+
+    private static final byte EMPTY = 0;
+    private static final byte PUT = 1;
+    private static final byte TOMBSTONE = 2;
+
+    public static final int DEFAULT_RECORDS_PER_SEGMENT = 4096;
+    // A segment file is mapped as one buffer, so it has to stay under 2 GB
+    static final int MAX_RECORDS_PER_SEGMENT = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+    // Sealed segments allowed to pile up before a background compaction starts
+    private static final int COMPACT_AFTER_SEGMENTS = 4;
+    // Share of dead records that makes a segment worth rewriting
+    private static final int COMPACT_DEAD_PERCENT = 25;
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final IntPredicate accountExists;
+
+    // message_id -> location of its newest PUT record, see location()
+    private final AtomicPagedArray<Long> locations = new AtomicPagedArray<>();
+    // posted_by -> message_ids
+    private final SortedIdIndex idsByAccount = new SortedIdIndex();
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    // Open segments by handle, read without locking
+    private final Map<Integer, Segment> segmentsByHandle = new ConcurrentHashMap<>();
+    private final AtomicInteger nextHandle = new AtomicInteger();
+
+    // Guarded by writeLock
+    private final Object writeLock = new Object();
+    private final TreeMap<Integer, Segment> segmentsByNumber = new TreeMap<>();
+    private Segment active;
+
+    private final Object compactionLock = new Object();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "message-log-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Opens (or creates) a log in the given directory and replays it.
+     *
+     * @param directory         Where the segment files live.
+     * @param recordsPerSegment Records per segment file before rolling to a new one, at most MAX_RECORDS_PER_SEGMENT.
+     * @param accountExists     Check used in place of the posted_by foreign key.
+     */
+    public MappedLogMessageDAO(Path directory, int recordsPerSegment, IntPredicate accountExists) throws IOException {
+        if (recordsPerSegment < 1 || recordsPerSegment > MAX_RECORDS_PER_SEGMENT) {
+            throw new IllegalArgumentException("recordsPerSegment must be between 1 and " + MAX_RECORDS_PER_SEGMENT);
+        }
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        this.accountExists = accountExists;
+        recover();
+    }
+
+    /**
+     * Opens the log in the directory named by the "messageLogDir" system property.
+     */
+    public static MappedLogMessageDAO fromSystemProperties(IntPredicate accountExists) {
+        try {
+            return new MappedLogMessageDAO(
+                    Path.of(System.getProperty("messageLogDir", "./h2/message-log")),
+                    Integer.getInteger("messageLogSegmentRecords", DEFAULT_RECORDS_PER_SEGMENT),
+                    accountExists);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        List<Message> messages = new ArrayList<>();
+        locations.forEach(sequence.get(), (id, loc) -> {
+            Message m = read(id);
+            if (m != null) messages.add(m);
+        });
+        return messages;
+    }
+
+    @Override
+    public Message getMessageId(int id) {
+        return read(id);
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        int postedBy = message.getPosted_by();
+        if (postedBy < 0) return null;
+        if (!idsByAccount.contains(postedBy) && !accountExists.test(postedBy)) {
+            return null;
+        }
+        byte[] text = encode(message.getMessage_text());
+        if (text == null) return null;
+
+        Message created = new Message(sequence.incrementAndGet(), postedBy,
+                message.getMessage_text(), message.getTime_posted_epoch());
+        try {
+            // Published under the append lock, so compaction never sees the record before the index does
+            synchronized (writeLock) {
+                long loc = append(PUT, created.getMessage_id(), postedBy, created.getTime_posted_epoch(), text);
+                locations.set(created.getMessage_id(), loc);
+            }
+            idsByAccount.add(postedBy, created.getMessage_id());
+            return created;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public Message updateMessage(int id, String newText) {
+        byte[] text = encode(newText);
+        if (text == null) return null;
+
+        try {
+            // Serialized with deletes so an update can never land after a tombstone
+            synchronized (writeLock) {
+                Message current = read(id);
+                if (current == null) return null;
+                long loc = append(PUT, id, current.getPosted_by(), current.getTime_posted_epoch(), text);
+                locations.set(id, loc);
+                return new Message(id, current.getPosted_by(), newText, current.getTime_posted_epoch());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public Message deleteMessageById(int id) {
+        try {
+            synchronized (writeLock) {
+                Message current = read(id);
+                if (current == null) return null;
+                append(TOMBSTONE, id, current.getPosted_by(), current.getTime_posted_epoch(), new byte[0]);
+                locations.remove(id);
+                idsByAccount.remove(current.getPosted_by(), id);
+                return current;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public List<Message> getMessagesByAccountId(int accountId) {
+        int[] ids = idsByAccount.get(accountId);
+        List<Message> messages = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Message m = read(id);
+            if (m != null) messages.add(m);
+        }
+        return messages;
+    }
+
+    /**
+     * Rewrites sealed segments that hold dead records (old versions and tombstones), and
+     * small ones next to them, into files holding only live records, then deletes the
+     * originals. Each run of neighbouring segments becomes one file of at most
+     * recordsPerSegment records. Writers keep appending to the active segment meanwhile.
+     *
+     * @return The number of dead records dropped.
+     */
+    public int compact() throws IOException {
+        synchronized (compactionLock) {
+            List<Segment> sealed;
+            synchronized (writeLock) {
+                sealed = new ArrayList<>(segmentsByNumber.headMap(active.number).values());
+            }
+
+            List<Segment> run = new ArrayList<>();
+            List<long[]> runRecords = new ArrayList<>();
+            List<Long> runLocations = new ArrayList<>();
+            int runDead = 0;
+            int dropped = 0;
+            // A tombstone may only go once no older segment left as it is still holds a dead version
+            boolean keepTombstones = false;
+            for (Segment seg : sealed) {
+                List<long[]> kept = new ArrayList<>();
+                List<Long> keptLocations = new ArrayList<>();
+                int deadPuts = 0;
+                int dead = 0;
+                for (int slot = 0; slot < seg.used; slot++) {
+                    int off = offset(slot);
+                    byte type = seg.buffer.get(off + TYPE);
+                    int id = seg.buffer.getInt(off + ID);
+                    if (type == TOMBSTONE) {
+                        if (keepTombstones) {
+                            kept.add(new long[] { seg.handle, slot, id });
+                            keptLocations.add(null);
+                        } else {
+                            dead++;
+                        }
+                        continue;
+                    }
+                    // A record is live if the index still points at it. Writers publish a record's location
+                    // under writeLock together with the append, so every record in a sealed segment is published
+                    Long loc = locations.get(id);
+                    if (loc != null && loc == location(seg.handle, slot)) {
+                        kept.add(new long[] { seg.handle, slot, id });
+                        keptLocations.add(loc);
+                    } else {
+                        deadPuts++;
+                        dead++;
+                    }
+                }
+
+                boolean worthRewriting = dead > 0 && dead * 100L >= seg.used * (long) COMPACT_DEAD_PERCENT;
+                boolean small = kept.size() * 2 <= recordsPerSegment;
+                if (!worthRewriting && !small) {
+                    dropped += writeRun(run, runRecords, runLocations, runDead);
+                    run.clear();
+                    runRecords.clear();
+                    runLocations.clear();
+                    runDead = 0;
+                    if (deadPuts > 0) keepTombstones = true;
+                    continue;
+                }
+                if (runRecords.size() + kept.size() > recordsPerSegment) {
+                    dropped += writeRun(run, runRecords, runLocations, runDead);
+                    run.clear();
+                    runRecords.clear();
+                    runLocations.clear();
+                    runDead = 0;
+                }
+                run.add(seg);
+                runRecords.addAll(kept);
+                runLocations.addAll(keptLocations);
+                runDead += dead;
+            }
+            return dropped + writeRun(run, runRecords, runLocations, runDead);
+        }
+    }
+
+    /**
+     * Replaces a run of neighbouring sealed segments with one file holding records, unless
+     * that would not shrink anything. recordLocations are the index entries the records
+     * were live under, null for a tombstone. Runs are written oldest first, so a crash never
+     * leaves a tombstone dropped while an older version it deleted is still on disk.
+     *
+     * @return dead, or 0 if the run was left as it is.
+     */
+    private int writeRun(List<Segment> run, List<long[]> records, List<Long> recordLocations, int dead) throws IOException {
+        if (run.isEmpty() || (dead == 0 && run.size() == 1)) return 0;
+
+        Segment last = run.get(run.size() - 1);
+        Path temp = directory.resolve(fileName(last.number) + ".compacting");
+        writeCompacted(temp, run.get(0).coversFrom, records);
+        // The rename is the commit point: from now on recovery ignores the covered segments
+        Files.move(temp, segmentPath(last.number), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Segment compacted = openSegment(segmentPath(last.number), last.number);
+        compacted.used = compacted.capacity;
+
+        synchronized (writeLock) {
+            segmentsByNumber.put(compacted.number, compacted);
+            for (Segment seg : run) {
+                if (seg.number != last.number) segmentsByNumber.remove(seg.number);
+            }
+        }
+        segmentsByHandle.put(compacted.handle, compacted);
+
+        // Repoint the index, unless the message was updated or deleted meanwhile
+        for (int i = 0; i < records.size(); i++) {
+            Long loc = recordLocations.get(i);
+            if (loc != null) locations.compareAndSet((int) records.get(i)[2], loc, location(compacted.handle, i));
+        }
+
+        for (Segment seg : run) {
+            segmentsByHandle.remove(seg.handle);
+            seg.channel.close();
+            if (seg.number != last.number) Files.deleteIfExists(seg.path);
+        }
+        return dead;
+    }
+
+    /**
+     * Forces the active segment to disk and releases the files.
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        synchronized (compactionLock) {
+            synchronized (writeLock) {
+                active.buffer.force();
+                for (Segment seg : segmentsByNumber.values()) {
+                    seg.channel.close();
+                }
+            }
+        }
+    }
+
+    private Message read(int id) {
+        while (true) {
+            Long loc = locations.get(id);
+            if (loc == null) return null;
+
+            Segment seg = segmentsByHandle.get(handleOf(loc));
+            if (seg != null) {
+                return decode(seg.buffer, offset(slotOf(loc)));
+            }
+            // Compaction moved the record, the index has a newer location by now
+            if (loc.equals(locations.get(id))) return null;
+        }
+    }
+
+    private long append(byte type, int id, int postedBy, long epoch, byte[] text) throws IOException {
+        synchronized (writeLock) {
+            if (active.used == active.capacity) {
+                roll();
+            }
+            int slot = active.used;
+            int off = offset(slot);
+            ByteBuffer buf = active.buffer;
+
+            buf.putInt(off + ID, id);
+            buf.putInt(off + POSTED_BY, postedBy);
+            buf.putLong(off + EPOCH, epoch);
+            buf.putShort(off + TEXT_LENGTH, (short) text.length);
+            ByteBuffer textArea = buf.duplicate();
+            textArea.position(off + TEXT);
+            textArea.put(text);
+            buf.putInt(off + CRC, checksum(buf, off));
+            // Type byte goes last and marks the record as complete
+            buf.put(off + TYPE, type);
+
+            active.used++;
+            return location(active.handle, slot);
+        }
+    }
+
+    // Called with writeLock held
+    private void roll() throws IOException {
+        active.buffer.force();
+        int number = active.number + 1;
+        active = createSegment(number, number, recordsPerSegment);
+        segmentsByNumber.put(number, active);
+        segmentsByHandle.put(active.handle, active);
+
+        if (segmentsByNumber.size() > COMPACT_AFTER_SEGMENTS) {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException | RuntimeException e) {
+                    // Left for the next roll to try again
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path p : stream) {
+                String name = p.getFileName().toString();
+                if (name.endsWith(".compacting")) {
+                    // Compaction crashed before its rename, the originals are still intact
+                    Files.delete(p);
+                } else if (name.startsWith("segment-") && name.endsWith(".log")) {
+                    files.put(Integer.parseInt(name.substring(8, name.length() - 4)), p);
+                }
+            }
+        }
+
+        for (Map.Entry<Integer, Path> e : files.entrySet()) {
+            Segment seg = openSegment(e.getValue(), e.getKey());
+            // A compacted segment replaces every older segment it covers
+            for (Integer covered : new ArrayList<>(segmentsByNumber.subMap(seg.coversFrom, seg.number).keySet())) {
+                Segment old = segmentsByNumber.remove(covered);
+                old.channel.close();
+                Files.deleteIfExists(old.path);
+            }
+            segmentsByNumber.put(seg.number, seg);
+        }
+
+        for (Segment seg : segmentsByNumber.values()) {
+            segmentsByHandle.put(seg.handle, seg);
+            sequence.accumulateAndGet(seg.buffer.getInt(HEADER_MAX_ID), Math::max);
+            replay(seg);
+        }
+
+        if (segmentsByNumber.isEmpty()) {
+            active = createSegment(1, 1, recordsPerSegment);
+            segmentsByNumber.put(1, active);
+            segmentsByHandle.put(active.handle, active);
+        } else {
+            active = segmentsByNumber.lastEntry().getValue();
+        }
+    }
+
+    private void replay(Segment seg) {
+        ByteBuffer buf = seg.buffer;
+        for (int slot = 0; slot < seg.capacity; slot++) {
+            int off = offset(slot);
+            byte type = buf.get(off + TYPE);
+            if (type == EMPTY) break;
+
+            if (buf.getInt(off + CRC) != checksum(buf, off) || (type != PUT && type != TOMBSTONE)) {
+                // Torn write from a crash: wipe it and everything after so appends resume here
+                for (int i = off; i < buf.capacity(); i++) {
+                    buf.put(i, (byte) 0);
+                }
+                break;
+            }
+
+            int id = buf.getInt(off + ID);
+            int postedBy = buf.getInt(off + POSTED_BY);
+            sequence.accumulateAndGet(id, Math::max);
+            if (type == PUT) {
+                locations.set(id, location(seg.handle, slot));
+                idsByAccount.add(postedBy, id);
+            } else {
+                locations.remove(id);
+                idsByAccount.remove(postedBy, id);
+            }
+            seg.used = slot + 1;
+        }
+    }
+
+    private void writeCompacted(Path temp, int coversFrom, List<long[]> live) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) live.size() * RECORD_SIZE);
+            writeHeader(out, coversFrom);
+
+            byte[] record = new byte[RECORD_SIZE];
+            for (int i = 0; i < live.size(); i++) {
+                long[] entry = live.get(i);
+                ByteBuffer src = segmentsByHandle.get((int) entry[0]).buffer.duplicate();
+                src.position(offset((int) entry[1]));
+                src.get(record);
+                out.position(offset(i));
+                out.put(record);
+            }
+            out.force();
+        }
+    }
+
+    private Segment createSegment(int number, int coversFrom, int capacity) throws IOException {
+        Path path = segmentPath(number);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) capacity * RECORD_SIZE);
+            writeHeader(buf, coversFrom);
+            buf.force();
+        }
+        return openSegment(path, number);
+    }
+
+    private void writeHeader(ByteBuffer buf, int coversFrom) {
+        buf.putInt(HEADER_MAGIC, SEGMENT_MAGIC);
+        buf.putInt(HEADER_COVERS_FROM, coversFrom);
+        // Keeps IDs from being reused after compaction drops the newest tombstones
+        buf.putInt(HEADER_MAX_ID, sequence.get());
+    }
+
+    private Segment openSegment(Path path, int number) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buf.getInt(HEADER_MAGIC) != SEGMENT_MAGIC) {
+            channel.close();
+            throw new IOException("Not a message log segment: " + path);
+        }
+        int capacity = (int) ((channel.size() - HEADER_SIZE) / RECORD_SIZE);
+        Segment seg = new Segment(nextHandle.incrementAndGet(), number, buf.getInt(HEADER_COVERS_FROM),
+                path, channel, buf, capacity);
+        return seg;
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(fileName(number));
+    }
+
+    private static String fileName(int number) {
+        return String.format("segment-%09d.log", number);
+    }
+
+    private static Message decode(ByteBuffer buf, int off) {
+        int length = buf.getShort(off + TEXT_LENGTH);
+        byte[] text = new byte[length];
+        ByteBuffer textArea = buf.duplicate();
+        textArea.position(off + TEXT);
+        textArea.get(text);
+        return new Message(
+                buf.getInt(off + ID),
+                buf.getInt(off + POSTED_BY),
+                new String(text, StandardCharsets.UTF_8),
+                buf.getLong(off + EPOCH)
+        );
+    }
+
+    private static byte[] encode(String text) {
+        if (text == null) return null;
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return bytes.length > MAX_TEXT_BYTES ? null : bytes;
+    }
+
+    private static int checksum(ByteBuffer buf, int off) {
+        ByteBuffer body = buf.duplicate();
+        body.position(off + ID);
+        body.limit(off + TEXT + buf.getShort(off + TEXT_LENGTH));
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private static int offset(int slot) {
+        // Segments are capped at MAX_RECORDS_PER_SEGMENT, so this only throws on a corrupt slot
+        return Math.toIntExact(HEADER_SIZE + (long) slot * RECORD_SIZE);
+    }
+
+    private static long location(int handle, int slot) {
+        return ((long) handle << 32) | (slot & 0xFFFFFFFFL);
+    }
+
+    private static int handleOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int slotOf(long location) {
+        return (int) location;
+    }
+
+    /**
+     * One mapped segment file. The handle is unique per process and is what index
+     * locations point at, so a compacted file never aliases the one it replaced.
+     */
+    private static final class Segment {
+        final int handle;
+        final int number;
+        final int coversFrom;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        // Records written so far, set by replay and guarded by writeLock for the active segment
+        int used;
+
+        Segment(int handle, int number, int coversFrom, Path path, FileChannel channel,
+                MappedByteBuffer buffer, int capacity) {
+            this.handle = handle;
+            this.number = number;
+            this.coversFrom = coversFrom;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+    }
+}
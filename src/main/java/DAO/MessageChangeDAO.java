@@ -0,0 +1,150 @@
+package DAO;
+
+import Util.ConnectionUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Access Object for the message_change table, the log other API instances poll to
+ * learn which messages changed.
+ *
+ * MessageDAO writes a row here in the same transaction as every insert, update and
+ * delete, so a committed write is always followed by its change row. Rows only carry the
+ * key of the message; readers re-read the message itself. Each shard has its own table,
+ * next to the messages it describes.
+ */
+public class MessageChangeDAO {
+    /**
+     * One row of message_change.
+     */
+    public static class Change {
+        public final long seq;
+        public final int messageId;
+        public final int postedBy;
+        public final long timePostedEpoch;
+        // Epoch millis of the write, for measuring how far behind a reader is
+        public final long changedAt;
+
+        public Change(long seq, int messageId, int postedBy, long timePostedEpoch, long changedAt) {
+            this.seq = seq;
+            this.messageId = messageId;
+            this.postedBy = postedBy;
+            this.timePostedEpoch = timePostedEpoch;
+            this.changedAt = changedAt;
+        }
+    }
+
+    // Database this DAO reads, 0 being the main one
+    private final int shard;
+
+    public MessageChangeDAO(int shard) {
+        this.shard = shard;
+    }
+
+    /**
+     * @return whether message writes are logged to message_change. Set with -Dinvalidation,
+     *         on by default when the database is shared through an H2 server.
+     */
+    public static boolean enabled() {
+        String property = System.getProperty("invalidation");
+        return property == null ? ConnectionUtil.isServerMode() : Boolean.parseBoolean(property);
+    }
+
+    /**
+     * Logs a change of message id, in the transaction of the write before it.
+     * @param connection Connection the write ran on, with auto-commit off.
+     */
+    static void record(Connection connection, int id) throws SQLException {
+        String sql = "INSERT INTO message_change (message_id, posted_by, time_posted_epoch, changed_at) "
+                + "SELECT message_id, posted_by, time_posted_epoch, ? FROM Message WHERE message_id = ?";
+        JdbcTemplate.update(connection, sql, statement -> {
+            statement.setLong(1, System.currentTimeMillis());
+            statement.setInt(2, id);
+        });
+    }
+
+    /**
+     * Retrieves changes logged after seq.
+     * @param seq   Last sequence number already seen.
+     * @param limit Most rows returned.
+     * @return Changes in seq order.
+     */
+    public List<Change> changesSince(long seq, int limit) {
+        List<Change> changes = new ArrayList<>();
+        try (Connection connection = ConnectionUtil.getConnection(shard)) {
+            String sql = "SELECT seq, message_id, posted_by, time_posted_epoch, changed_at FROM message_change "
+                    + "WHERE seq > ? ORDER BY seq LIMIT ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setLong(1, seq);
+            preparedStatement.setInt(2, limit);
+            ResultSet rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                changes.add(readChange(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return changes;
+    }
+
+    /**
+     * Retrieves one change by its sequence number.
+     * @return The change, or null if it does not exist (yet).
+     */
+    public Change getChange(long seq) {
+        try (Connection connection = ConnectionUtil.getConnection(shard)) {
+            PreparedStatement preparedStatement = connection.prepareStatement(
+                    "SELECT seq, message_id, posted_by, time_posted_epoch, changed_at FROM message_change WHERE seq = ?");
+            preparedStatement.setLong(1, seq);
+            ResultSet rs = preparedStatement.executeQuery();
+            if (rs.next()) return readChange(rs);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private Change readChange(ResultSet rs) throws SQLException {
+        return new Change(
+                rs.getLong("seq"),
+                rs.getInt("message_id"),
+                rs.getInt("posted_by"),
+                rs.getLong("time_posted_epoch"),
+                rs.getLong("changed_at")
+        );
+    }
+
+    /**
+     * @return The highest sequence number logged so far, 0 if none, or -1 if it could not be read.
+     */
+    public long latestSeq() {
+        try (Connection connection = ConnectionUtil.getConnection(shard)) {
+            ResultSet rs = connection.createStatement().executeQuery("SELECT COALESCE(MAX(seq), 0) FROM message_change");
+            if (rs.next()) return rs.getLong(1);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    /**
+     * Removes changes logged before changedBefore, which every reader has seen by then.
+     * @return Number of rows removed.
+     */
+    public int trim(long changedBefore) {
+        try (Connection connection = ConnectionUtil.getConnection(shard)) {
+            PreparedStatement preparedStatement = connection.prepareStatement(
+                    "DELETE FROM message_change WHERE changed_at < ?");
+            preparedStatement.setLong(1, changedBefore);
+            return preparedStatement.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return 0;
+    }
+}
@@ -1,10 +1,9 @@
 package DAO;
 
 import Model.Message;
-import Util.ConnectionUtil;
 
-import java.sql.*;
-import java.util.ArrayList;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.List;
 
 /**
@@ -21,47 +20,41 @@ import java.util.List;
 /**
  * Data Access Object (DAO) for managing Message-related database operations.
  * This class connects to the database via ConnectionUtil and performs CRUD operations.
- * NOTE: The ConnectionUtil uses a singleton connection. Do NOT close the connection manually.
+ * Statements run through a JdbcTemplate, which closes the connection, statement and
+ * result set of every call, and rows are read by column position through MESSAGE.
  * Used FlightTracker for reference
  */
-public class MessageDAO {
+public class MessageDAO implements MessageRepository {
+    // Reads every Message column the statement selects, the others are left at 0 or null
+    static final RowMapper<Message> MESSAGE = RowMapper.of((rs, c) -> new Message(
+            c[0] == 0 ? 0 : rs.getInt(c[0]),
+            c[1] == 0 ? 0 : rs.getInt(c[1]),
+            c[2] == 0 ? null : rs.getString(c[2]),
+            c[3] == 0 ? 0 : rs.getLong(c[3])
+    ), "message_id", "posted_by", "message_text", "time_posted_epoch");
+
+    // Runs statements on the database this DAO reads and writes, shard 0 being the main one
+    private final JdbcTemplate jdbc;
+
+    // Default constructor, uses the main database
+    public MessageDAO() {
+        this(0);
+    }
+
+    // Constructor for one shard of a sharded setup
+    public MessageDAO(int shard) {
+        this.jdbc = new JdbcTemplate(shard);
+    }
 
     /**
      * Retrieves all messages stored in the database.
      * @return List of all Message objects.
      */
     public List<Message> getAllMessages() {
-        // Get shared connection
-        Connection connection = ConnectionUtil.getConnection();
-        List<Message> messages = new ArrayList<>();
-
-        try {
-            // SQL query to select all rows from the Message table
-            String sql = "SELECT * FROM Message";
-
-            // Prepare the SQL
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            
-            // Execute query and get result set
-            ResultSet rs = preparedStatement.executeQuery(); 
-
-            // Iterate through each row of the result set
-            while (rs.next()) {
-                // Create a Message object from the current row's data
-                Message mes = new Message(
-                        rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"),
-                        rs.getLong("time_posted_epoch")
-                );
-                // Add message to list
-                messages.add(mes); // Add message to list
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-    // Return list 
-        return messages; 
+        // SQL query to select all live rows from the Message table, in primary key order
+        // (no secondary index, H2 would otherwise pick the deleted_at one for IS NULL)
+        String sql = "SELECT * FROM Message USE INDEX () WHERE deleted_at IS NULL ORDER BY message_id";
+        return jdbc.query("MessageDAO.getAllMessages", sql, JdbcTemplate.NO_PARAMETERS, MESSAGE);
     }
 
     /**
@@ -70,35 +63,9 @@ public class MessageDAO {
      * @return Message object if found, else null.
      */
     public Message getMessageId(int id) {
-        // Get shared connection
-        Connection connection = ConnectionUtil.getConnection();
-
-        try {
-            // SQL to retrieve a specific message by ID
-            String sql = "SELECT * FROM Message WHERE message_id = ?";
-
-            // Prepare SQL
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            // Replace ? with actual ID
-            preparedStatement.setInt(1, id); 
-
-            // Execute and get result
-            ResultSet rs = preparedStatement.executeQuery(); 
-
-            // If a result is found, create and return a Message object
-            if (rs.next()) {
-                return new Message(
-                        rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"),
-                        rs.getLong("time_posted_epoch")
-                );
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        // If no result found
-        return null; 
+        // SQL to retrieve a specific message by ID
+        String sql = "SELECT * FROM Message WHERE message_id = ? AND deleted_at IS NULL";
+        return jdbc.queryOne("MessageDAO.getMessageId", sql, statement -> statement.setInt(1, id), MESSAGE);
     }
 
     /**
@@ -107,104 +74,184 @@ public class MessageDAO {
      * @return The inserted Message object with generated message_id, or null if insertion fails.
      */
     public Message insertMessage(Message message) {
-        // Get shared connection
-        Connection connection = ConnectionUtil.getConnection();
-
-        try {
-            // SQL to insert a new message (note: message_id is auto-generated)
-            String sql = "INSERT INTO Message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
-
-            // Prepare and return keys
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-
-            // Fill in the placeholders
-            preparedStatement.setInt(1, message.getPosted_by());
-            preparedStatement.setString(2, message.getMessage_text());
-            preparedStatement.setLong(3, message.getTime_posted_epoch());
-
-            // Execute insert
-            int rowsAffected = preparedStatement.executeUpdate(); 
-
-            if (rowsAffected > 0) {
-                // Get generated message_id
-                ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
-                if (pkeyResultSet.next()) {
-                    int generated_id = pkeyResultSet.getInt(1);
-                    return new Message(
-                            generated_id,
-                            message.getPosted_by(),
-                            message.getMessage_text(),
-                            message.getTime_posted_epoch()
-                    );
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        return null;
+        // SQL to insert a new message (note: message_id is auto-generated)
+        String sql = "INSERT INTO Message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+        boolean logWrite = logsWrites();
+        return jdbc.execute("MessageDAO.insertMessage", sql, logWrite, connection -> {
+            int generatedId = JdbcTemplate.insert(connection, sql, statement -> {
+                statement.setInt(1, message.getPosted_by());
+                statement.setString(2, message.getMessage_text());
+                statement.setLong(3, message.getTime_posted_epoch());
+            });
+            if (generatedId == 0) return null;
+            if (logWrite) logWrite(connection, MessageOutboxDAO.CREATED, generatedId);
+            return new Message(
+                    generatedId,
+                    message.getPosted_by(),
+                    message.getMessage_text(),
+                    message.getTime_posted_epoch()
+            );
+        }, null);
     }
 
     /**
      * Updates an existing message's text by message_id.
+     * The new row is returned by the update itself, so no second query is needed.
      * @param id The ID of the message to update.
      * @param newText The new message text to replace the old one.
      * @return The updated Message object if successful, otherwise null.
      */
     public Message updateMessage(int id, String newText) {
-        Connection connection = ConnectionUtil.getConnection(); // Get shared connection
-
-        try {
-            // SQL to update the message_text field
-            String sql = "UPDATE Message SET message_text = ? WHERE message_id = ?";
-            
-            // Prepare SQL
-            PreparedStatement preparedStatement = connection.prepareStatement(sql); 
-            // New message text
-            preparedStatement.setString(1, newText); 
-            // Message ID
-            preparedStatement.setInt(2, id); 
-            // Execute update
-            int rowsUpdated = preparedStatement.executeUpdate(); 
-
-            if (rowsUpdated > 0) {
-                 // Return updated message
-                return getMessageId(id);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        // Update failed
-        return null;
+        // SQL to update the message_text field and read back the row as it now is
+        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM FINAL TABLE ("
+                + "UPDATE Message SET message_text = ? WHERE message_id = ? AND deleted_at IS NULL)";
+        boolean logWrite = logsWrites();
+        return jdbc.execute("MessageDAO.updateMessage", sql, logWrite, connection -> {
+            Message updated = JdbcTemplate.queryOne(connection, sql, statement -> {
+                statement.setString(1, newText);
+                statement.setInt(2, id);
+            }, MESSAGE);
+            if (updated != null && logWrite) logWrite(connection, MessageOutboxDAO.UPDATED, id);
+            return updated;
+        }, null);
     }
 
     /**
      * Deletes a message by its ID.
+     * The row is only marked with deleted_at here, in one statement that also returns it;
+     * purgeDeleted removes marked rows later.
      * @param id The ID of the message to delete.
      * @return The deleted Message object if it existed, otherwise will be null.
      */
     public Message deleteMessageById(int id) {
-        // Get shared connection
-        Connection connection = ConnectionUtil.getConnection(); 
+        // SQL to mark the message deleted and read back the row as it was
+        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM OLD TABLE ("
+                + "UPDATE Message SET deleted_at = ? WHERE message_id = ? AND deleted_at IS NULL)";
+        boolean logWrite = logsWrites();
+        return jdbc.execute("MessageDAO.deleteMessageById", sql, logWrite, connection -> {
+            Message deleted = JdbcTemplate.queryOne(connection, sql, statement -> {
+                statement.setLong(1, System.currentTimeMillis());
+                statement.setInt(2, id);
+            }, MESSAGE);
+            if (deleted != null && logWrite) logWrite(connection, MessageOutboxDAO.DELETED, id);
+            return deleted;
+        }, null);
+    }
+
+    /**
+     * @return whether writes are logged to message_change or message_outbox, in which case
+     *         they run in a transaction that commits the log rows with the write.
+     */
+    private static boolean logsWrites() {
+        return MessageChangeDAO.enabled() || MessageOutboxDAO.enabled();
+    }
+
+    /**
+     * Logs a write of message id for other instances and downstream consumers, in the
+     * transaction of the write.
+     */
+    private static void logWrite(Connection connection, String event, int id) throws SQLException {
+        if (MessageChangeDAO.enabled()) MessageChangeDAO.record(connection, id);
+        if (MessageOutboxDAO.enabled()) MessageOutboxDAO.append(connection, event, id);
+    }
+
+    /**
+     * Retrieves all messages, selecting only the requested columns.
+     * @param fields Fields to fill in, the others are left at 0 or null.
+     * @return List of all Message objects, in message_id order.
+     */
+    @Override
+    public List<Message> getAllMessages(MessageFields fields) {
+        if (fields.isAll()) return getAllMessages();
+        String sql = "SELECT " + fields.columns() + " FROM Message USE INDEX () "
+                + "WHERE deleted_at IS NULL ORDER BY message_id";
+        return jdbc.query("MessageDAO.getAllMessages", sql, JdbcTemplate.NO_PARAMETERS, MESSAGE);
+    }
+
+    /**
+     * Retrieves all messages posted by a specific user, selecting only the requested columns.
+     * @param accountId The ID of the user (account_id).
+     * @param fields Fields to fill in, the others are left at 0 or null.
+     * @return List of messages posted by the user.
+     */
+    @Override
+    public List<Message> getMessagesByAccountId(int accountId, MessageFields fields) {
+        if (fields.isAll()) return getMessagesByAccountId(accountId);
+        String sql = "SELECT " + fields.columns() + " FROM Message WHERE posted_by = ? AND deleted_at IS NULL";
+        return jdbc.query("MessageDAO.getMessagesByAccountId", sql, statement -> statement.setInt(1, accountId), MESSAGE);
+    }
 
-        // First retrieve the message to return it later
-        Message toDelete = getMessageId(id);
+    /**
+     * Retrieves one page of messages posted within a time range.
+     * Scans the (time_posted_epoch, message_id) index from the cursor.
+     * @param range Time bounds, cursor and page size.
+     * @return Messages in TimeRange.ORDER.
+     */
+    @Override
+    public List<Message> getMessagesByTime(TimeRange range) {
+        String sql = "SELECT * FROM Message USE INDEX (message_time_idx) WHERE deleted_at IS NULL "
+                + "AND time_posted_epoch >= ? AND time_posted_epoch < ? "
+                + "AND (time_posted_epoch > ? OR message_id > ?) "
+                + "ORDER BY time_posted_epoch, message_id LIMIT ?";
+        return jdbc.query("MessageDAO.getMessagesByTime", sql, statement -> {
+            statement.setLong(1, range.lowerBound());
+            statement.setLong(2, range.until);
+            statement.setLong(3, range.afterEpoch);
+            statement.setInt(4, range.afterId);
+            statement.setInt(5, range.limit);
+        }, MESSAGE);
+    }
 
-        // Make sure the message exists
-        if (toDelete == null) return null; 
+    /**
+     * Retrieves one page of a specific user's messages posted within a time range.
+     * Scans the (posted_by, time_posted_epoch, message_id) index from the cursor.
+     * @param accountId The ID of the user (account_id).
+     * @param range Time bounds, cursor and page size.
+     * @return Messages in TimeRange.ORDER.
+     */
+    @Override
+    public List<Message> getMessagesByAccountAndTime(int accountId, TimeRange range) {
+        String sql = "SELECT * FROM Message USE INDEX (message_posted_by_time_idx) "
+                + "WHERE deleted_at IS NULL AND posted_by = ? "
+                + "AND time_posted_epoch >= ? AND time_posted_epoch < ? "
+                + "AND (time_posted_epoch > ? OR message_id > ?) "
+                + "ORDER BY time_posted_epoch, message_id LIMIT ?";
+        return jdbc.query("MessageDAO.getMessagesByAccountAndTime", sql, statement -> {
+            statement.setInt(1, accountId);
+            statement.setLong(2, range.lowerBound());
+            statement.setLong(3, range.until);
+            statement.setLong(4, range.afterEpoch);
+            statement.setInt(5, range.afterId);
+            statement.setInt(6, range.limit);
+        }, MESSAGE);
+    }
 
-        try {
-            // SQL to delete the message
-            String sql = "DELETE FROM Message WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            preparedStatement.setInt(1, id); 
-            preparedStatement.executeUpdate(); 
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Retrieves the most recently posted messages. Used to warm caches, so a scan is fine.
+     * @param limit Most messages returned.
+     * @return Messages newest first.
+     */
+    @Override
+    public List<Message> getNewestMessages(int limit) {
+        String sql = "SELECT * FROM Message USE INDEX () WHERE deleted_at IS NULL "
+                + "ORDER BY time_posted_epoch DESC, message_id DESC LIMIT ?";
+        return jdbc.query("MessageDAO.getNewestMessages", sql, statement -> statement.setInt(1, limit), MESSAGE);
+    }
 
-        // Return deleted message
-        return toDelete; 
+    /**
+     * Physically removes up to limit messages that were deleted before deletedBefore, oldest first.
+     * @param deletedBefore Epoch millis; rows deleted at or after it are kept.
+     * @param limit Most rows removed by this call.
+     * @return Number of rows removed.
+     */
+    @Override
+    public int purgeDeleted(long deletedBefore, int limit) {
+        String sql = "DELETE FROM Message WHERE message_id IN ("
+                + "SELECT message_id FROM Message WHERE deleted_at < ? ORDER BY deleted_at LIMIT ?)";
+        return jdbc.update("MessageDAO.purgeDeleted", sql, statement -> {
+            statement.setLong(1, deletedBefore);
+            statement.setInt(2, limit);
+        });
     }
 
     /**
@@ -212,32 +259,9 @@ public class MessageDAO {
      * @param accountId The ID of the user (account_id).
      * @return List of messages posted by the user.
      */
-    public List<Message> getMessagesByAccountId(int accountId) { //Same comments as before
-        Connection connection = ConnectionUtil.getConnection(); 
-        List<Message> messages = new ArrayList<>();
-
-        try {
-            // SQL to select all messages where posted_by = accountId
-            String sql = "SELECT * FROM Message WHERE posted_by = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            preparedStatement.setInt(1, accountId); 
-            ResultSet rs = preparedStatement.executeQuery(); 
-
-            // Loop through each message found
-            while (rs.next()) {
-                Message mes = new Message(
-                        rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"),
-                        rs.getLong("time_posted_epoch")
-                );
-                messages.add(mes); 
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        // Return list 
-        return messages; 
+    public List<Message> getMessagesByAccountId(int accountId) {
+        // SQL to select all messages where posted_by = accountId
+        String sql = "SELECT * FROM Message WHERE posted_by = ? AND deleted_at IS NULL";
+        return jdbc.query("MessageDAO.getMessagesByAccountId", sql, statement -> statement.setInt(1, accountId), MESSAGE);
     }
 }
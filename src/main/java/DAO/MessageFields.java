@@ -0,0 +1,109 @@
+package DAO;
+
+import Model.Message;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.StringJoiner;
+
+/**
+ * The subset of Message fields a client asked for with ?fields=, e.g. "message_id,time_posted_epoch".
+ *
+ * MessageDAO selects only these columns, leaving the others of each Message at their
+ * defaults (0 or null), and the controller writes only these properties. Fields are kept
+ * in the order Message declares them, whatever order they were asked in.
+ *
+ * "likes" can be asked for too. It is not a Message column: the controller looks the
+ * count up by message_id and writes it last. ALL does not include it.
+ */
+public final class MessageFields {
+    // Column and JSON property names, in Message order
+    private static final String[] NAMES = { "message_id", "posted_by", "message_text", "time_posted_epoch", "likes" };
+    private static final int COLUMN_COUNT = 4;
+    private static final int MESSAGE_ID = 1;
+    private static final int POSTED_BY = 1 << 1;
+    private static final int MESSAGE_TEXT = 1 << 2;
+    private static final int TIME_POSTED_EPOCH = 1 << 3;
+    private static final int LIKES = 1 << 4;
+    private static final int EVERY_FIELD = MESSAGE_ID | POSTED_BY | MESSAGE_TEXT | TIME_POSTED_EPOCH;
+
+    public static final MessageFields ALL = new MessageFields(EVERY_FIELD);
+
+    private final int mask;
+
+    private MessageFields(int mask) {
+        this.mask = mask;
+    }
+
+    /**
+     * @param fields Comma separated field names, or null for every field.
+     * @throws IllegalArgumentException if a name is not a Message field or none is given.
+     */
+    public static MessageFields parse(String fields) {
+        if (fields == null) return ALL;
+        int mask = 0;
+        for (String name : fields.split(",")) {
+            int bit = bitOf(name.trim());
+            if (bit == 0) throw new IllegalArgumentException("Unknown field: " + name.trim());
+            mask |= bit;
+        }
+        return mask == EVERY_FIELD ? ALL : new MessageFields(mask);
+    }
+
+    private static int bitOf(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) return 1 << i;
+        }
+        return 0;
+    }
+
+    public boolean isAll() {
+        return mask == EVERY_FIELD;
+    }
+
+    /**
+     * @return These fields plus message_id, for callers that need it to order or merge rows.
+     */
+    public MessageFields withMessageId() {
+        return (mask & MESSAGE_ID) != 0 ? this : new MessageFields(mask | MESSAGE_ID);
+    }
+
+    public boolean hasLikes() {
+        return (mask & LIKES) != 0;
+    }
+
+    /**
+     * @return These fields without likes, plus message_id when likes was asked for, to look it up by.
+     */
+    public MessageFields columnsOnly() {
+        if (!hasLikes()) return this;
+        int columns = (mask & ~LIKES) | MESSAGE_ID;
+        return columns == EVERY_FIELD ? ALL : new MessageFields(columns);
+    }
+
+    /**
+     * @return The SELECT column list, e.g. "message_id, time_posted_epoch".
+     */
+    public String columns() {
+        StringJoiner columns = new StringJoiner(", ");
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            if ((mask & (1 << i)) != 0) columns.add(NAMES[i]);
+        }
+        return columns.toString();
+    }
+
+    /**
+     * Writes message as a JSON object with only these fields.
+     * @param likes The message's like count, written if likes is one of the fields.
+     */
+    public void write(JsonGenerator out, Message message, long likes) throws IOException {
+        out.writeStartObject();
+        if ((mask & MESSAGE_ID) != 0) out.writeNumberField("message_id", message.getMessage_id());
+        if ((mask & POSTED_BY) != 0) out.writeNumberField("posted_by", message.getPosted_by());
+        if ((mask & MESSAGE_TEXT) != 0) out.writeStringField("message_text", message.getMessage_text());
+        if ((mask & TIME_POSTED_EPOCH) != 0) out.writeNumberField("time_posted_epoch", message.getTime_posted_epoch());
+        if ((mask & LIKES) != 0) out.writeNumberField("likes", likes);
+        out.writeEndObject();
+    }
+}
@@ -0,0 +1,184 @@
+package DAO;
+
+import Util.ConnectionUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Access Object for the message_outbox table, the events downstream consumers
+ * (search, analytics, notifications) get instead of scraping GET /messages.
+ *
+ * MessageDAO appends a row here in the same transaction as every insert, update and
+ * delete, with the message as it was written, so an event exists exactly when its write
+ * committed. The outbox_offset table keeps, per sink, the last sequence number published.
+ * Each shard has both tables, next to the messages they describe.
+ */
+public class MessageOutboxDAO {
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+
+    /**
+     * One row of message_outbox.
+     */
+    public static class Event {
+        // Shard whose outbox the event is in; shard and seq identify it
+        public final int shard;
+        public final long seq;
+        // CREATED, UPDATED or DELETED
+        public final String event;
+        public final int messageId;
+        public final int postedBy;
+        public final String messageText;
+        public final long timePostedEpoch;
+        // Epoch millis of the write
+        public final long createdAt;
+
+        public Event(int shard, long seq, String event, int messageId, int postedBy, String messageText,
+                     long timePostedEpoch, long createdAt) {
+            this.shard = shard;
+            this.seq = seq;
+            this.event = event;
+            this.messageId = messageId;
+            this.postedBy = postedBy;
+            this.messageText = messageText;
+            this.timePostedEpoch = timePostedEpoch;
+            this.createdAt = createdAt;
+        }
+    }
+
+    // Database this DAO reads, 0 being the main one
+    private final int shard;
+
+    public MessageOutboxDAO(int shard) {
+        this.shard = shard;
+    }
+
+    /**
+     * @return whether message writes are appended to message_outbox. Set with -Doutbox,
+     *         on by default when an outbox sink is configured with -Doutbox.sink.
+     */
+    public static boolean enabled() {
+        return Boolean.parseBoolean(System.getProperty("outbox", String.valueOf(System.getProperty("outbox.sink") != null)));
+    }
+
+    /**
+     * Appends an event for message id as it is now, in the transaction of the write before it.
+     * @param connection Connection the write ran on, with auto-commit off.
+     */
+    static void append(Connection connection, String event, int id) throws SQLException {
+        String sql = "INSERT INTO message_outbox (event, message_id, posted_by, message_text, time_posted_epoch, created_at) "
+                + "SELECT ?, message_id, posted_by, message_text, time_posted_epoch, ? FROM Message WHERE message_id = ?";
+        JdbcTemplate.update(connection, sql, statement -> {
+            statement.setString(1, event);
+            statement.setLong(2, System.currentTimeMillis());
+            statement.setInt(3, id);
+        });
+    }
+
+    /**
+     * Retrieves events appended after seq.
+     * @param seq   Last sequence number already published.
+     * @param limit Most rows returned.
+     * @return Events in seq order.
+     */
+    public List<Event> eventsSince(long seq, int limit) {
+        List<Event> events = new ArrayList<>();
+        try (Connection connection = ConnectionUtil.getConnection(shard)) {
+            String sql = "SELECT * FROM message_outbox WHERE seq > ? ORDER BY seq LIMIT ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setLong(1, seq);
+            preparedStatement.setInt(2, limit);
+            ResultSet rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                events.add(readEvent(rs));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return events;
+    }
+
+    /**
+     * Retrieves one event by its sequence number.
+     * @return The event, or null if it does not exist (yet).
+     */
+    public Event getEvent(long seq) {
+        try (Connection connection = ConnectionUtil.getConnection(shard)) {
+            PreparedStatement preparedStatement = connection.prepareStatement("SELECT * FROM message_outbox WHERE seq = ?");
+            preparedStatement.setLong(1, seq);
+            ResultSet rs = preparedStatement.executeQuery();
+            if (rs.next()) return readEvent(rs);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private Event readEvent(ResultSet rs) throws SQLException {
+        return new Event(
+                shard,
+                rs.getLong("seq"),
+                rs.getString("event"),
+                rs.getInt("message_id"),
+                rs.getInt("posted_by"),
+                rs.getString("message_text"),
+                rs.getLong("time_posted_epoch"),
+                rs.getLong("created_at")
+        );
+    }
+
+    /**
+     * @return The last sequence number published to sink, 0 if none, or -1 if it could not be read.
+     */
+    public long getOffset(String sink) {
+        try (Connection connection = ConnectionUtil.getConnection(shard)) {
+            PreparedStatement preparedStatement = connection.prepareStatement("SELECT seq FROM outbox_offset WHERE sink = ?");
+            preparedStatement.setString(1, sink);
+            ResultSet rs = preparedStatement.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    /**
+     * Records that sink has every event up to seq.
+     * @return true if the offset was saved.
+     */
+    public boolean saveOffset(String sink, long seq) {
+        try (Connection connection = ConnectionUtil.getConnection(shard)) {
+            PreparedStatement preparedStatement = connection.prepareStatement(
+                    "MERGE INTO outbox_offset (sink, seq) KEY (sink) VALUES (?, ?)");
+            preparedStatement.setString(1, sink);
+            preparedStatement.setLong(2, seq);
+            return preparedStatement.executeUpdate() > 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Removes events appended before createdBefore that are at or below seq.
+     * @return Number of rows removed.
+     */
+    public int trim(long seq, long createdBefore) {
+        try (Connection connection = ConnectionUtil.getConnection(shard)) {
+            PreparedStatement preparedStatement = connection.prepareStatement(
+                    "DELETE FROM message_outbox WHERE seq <= ? AND created_at < ?");
+            preparedStatement.setLong(1, seq);
+            preparedStatement.setLong(2, createdBefore);
+            return preparedStatement.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,152 @@
+package DAO;
+
+import Model.Message;
+import Util.ConnectionUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Storage contract for messages, extracted from MessageDAO so the service layer
+ * does not depend on one particular engine.
+ * MessageDAO is the H2/JDBC implementation, InMemoryMessageDAO keeps everything on the heap
+ * and MappedLogMessageDAO appends to memory-mapped log files.
+ */
+public interface MessageRepository {
+
+    /**
+     * Retrieves all stored messages.
+     * @return List of all Message objects.
+     */
+    List<Message> getAllMessages();
+
+    /**
+     * Retrieves a message by its ID.
+     * @param id The message_id of the message to retrieve.
+     * @return Message object if found, else null.
+     */
+    Message getMessageId(int id);
+
+    /**
+     * Inserts a new message.
+     * @param message The Message object containing posted_by, message_text, and timestamp.
+     * @return The inserted Message object with generated message_id, or null if insertion fails.
+     */
+    Message insertMessage(Message message);
+
+    /**
+     * Updates an existing message's text by message_id.
+     * @param id The ID of the message to update.
+     * @param newText The new message text.
+     * @return The updated Message object if successful, otherwise null.
+     */
+    Message updateMessage(int id, String newText);
+
+    /**
+     * Deletes a message by its ID.
+     * @param id The ID of the message to delete.
+     * @return The deleted Message object if it existed, otherwise null.
+     */
+    Message deleteMessageById(int id);
+
+    /**
+     * Retrieves all messages posted by a specific user.
+     * @param accountId The ID of the user (account_id).
+     * @return List of messages posted by the user.
+     */
+    List<Message> getMessagesByAccountId(int accountId);
+
+    /**
+     * Retrieves all stored messages, reading only some fields.
+     * This default reads every field, MessageDAO selects only the requested columns.
+     * @param fields Fields to fill in, the others are left at 0 or null.
+     * @return List of all Message objects.
+     */
+    default List<Message> getAllMessages(MessageFields fields) {
+        return getAllMessages();
+    }
+
+    /**
+     * Retrieves all messages posted by a specific user, reading only some fields.
+     * @param accountId The ID of the user (account_id).
+     * @param fields Fields to fill in, the others are left at 0 or null.
+     * @return List of messages posted by the user.
+     */
+    default List<Message> getMessagesByAccountId(int accountId, MessageFields fields) {
+        return getMessagesByAccountId(accountId);
+    }
+
+    /**
+     * Retrieves one page of messages posted within a time range.
+     * This default filters getAllMessages, the JDBC engines use an index range scan.
+     * @param range Time bounds, cursor and page size.
+     * @return Messages in TimeRange.ORDER.
+     */
+    default List<Message> getMessagesByTime(TimeRange range) {
+        return range.select(getAllMessages());
+    }
+
+    /**
+     * Retrieves one page of a specific user's messages posted within a time range.
+     * @param accountId The ID of the user (account_id).
+     * @param range Time bounds, cursor and page size.
+     * @return Messages in TimeRange.ORDER.
+     */
+    default List<Message> getMessagesByAccountAndTime(int accountId, TimeRange range) {
+        return range.select(getMessagesByAccountId(accountId));
+    }
+
+    /**
+     * Retrieves the most recently posted messages.
+     * @param limit Most messages returned.
+     * @return Messages newest first, by time_posted_epoch then message_id.
+     */
+    default List<Message> getNewestMessages(int limit) {
+        List<Message> messages = new ArrayList<>(getAllMessages());
+        messages.sort(TimeRange.ORDER.reversed());
+        return messages.size() > limit ? new ArrayList<>(messages.subList(0, limit)) : messages;
+    }
+
+    /**
+     * Physically removes up to limit messages that were deleted before deletedBefore.
+     * Only engines that keep deleted rows as tombstones have anything to remove.
+     * @param deletedBefore Epoch millis; rows deleted at or after it are kept.
+     * @param limit Most rows removed by this call.
+     * @return Number of rows removed.
+     */
+    default int purgeDeleted(long deletedBefore, int limit) {
+        return 0;
+    }
+
+    /**
+     * @return Number of databases the messages are spread over, each with its own message_change table.
+     */
+    default int shardCount() {
+        return 1;
+    }
+
+    /**
+     * Picks the storage engine by name. Used at startup with the "messageStore" system property.
+     * "h2" (default) is the JDBC engine, sharded when the shard map has more than one shard, "memory" is the in-memory engine, seeded from H2 on first use,
+     * and "mmap" is the memory-mapped log in the "messageLogDir" directory.
+     *
+     * @param engine Name of the engine.
+     * @return A ready to use MessageRepository.
+     */
+    static MessageRepository forEngine(String engine) {
+        if (engine == null || engine.isBlank() || engine.equalsIgnoreCase("h2")) {
+            ShardMap shardMap = ShardMap.load(ConnectionUtil.initialShardCount());
+            if (shardMap.shardCount() == 1) {
+                return new MessageDAO();
+            }
+            return new ShardedMessageDAO(shardMap, new AccountDAO()::accountExists);
+        }
+        if (engine.equalsIgnoreCase("memory")) {
+            return InMemoryMessageDAO.seededFrom(new MessageDAO(), new AccountDAO()::accountExists);
+        }
+        if (engine.equalsIgnoreCase("mmap")) {
+            return MappedLogMessageDAO.fromSystemProperties(new AccountDAO()::accountExists);
+        }
+        throw new IllegalArgumentException("Unknown message store: " + engine);
+    }
+}
@@ -0,0 +1,72 @@
+package DAO;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Data Access Object for the message_stats table: per-message counters, for now likes.
+ *
+ * Counters are never updated one like at a time; LikeCounter adds up likes in memory and
+ * adds them here in batches. The table is in the main database whatever the message store
+ * or shard, like the Account table, and a message without a row has no likes.
+ */
+public class MessageStatsDAO {
+    // message_id and likes of one row
+    private static final RowMapper<long[]> LIKES = RowMapper.of(
+            (rs, positions) -> new long[] { rs.getInt(positions[0]), rs.getLong(positions[1]) },
+            "message_id", "likes");
+
+    private final JdbcTemplate jdbc = new JdbcTemplate(0);
+
+    /**
+     * Retrieves the stored likes of one message.
+     * @return Likes, 0 if the message has no row.
+     */
+    public long getLikes(int id) {
+        return getLikes(Collections.singletonList(id)).getOrDefault(id, 0L);
+    }
+
+    /**
+     * Retrieves the stored likes of several messages in one query.
+     * @return Likes by message_id, only for messages that have a row.
+     */
+    public Map<Integer, Long> getLikes(Collection<Integer> ids) {
+        if (ids.isEmpty()) return new HashMap<>();
+        String sql = "SELECT message_id, likes FROM message_stats WHERE message_id = ANY(?)";
+        Integer[] idArray = ids.toArray(new Integer[0]);
+        return jdbc.execute("MessageStatsDAO.getLikes", sql, false, connection -> {
+            Map<Integer, Long> likes = new HashMap<>();
+            for (long[] row : JdbcTemplate.query(connection, sql, statement -> statement.setObject(1, idArray), LIKES)) {
+                likes.put((int) row[0], row[1]);
+            }
+            return likes;
+        }, new HashMap<>());
+    }
+
+    /**
+     * Adds likes to several messages in one transaction, one batched MERGE row per message.
+     * @param deltas Likes to add by message_id.
+     * @return true if every delta was committed, false if none was.
+     */
+    public boolean addLikes(Map<Integer, Long> deltas) {
+        String sql = "MERGE INTO message_stats t "
+                + "USING (VALUES (CAST(? AS INT), CAST(? AS BIGINT))) AS d (message_id, delta) "
+                + "ON t.message_id = d.message_id "
+                + "WHEN MATCHED THEN UPDATE SET likes = t.likes + d.delta "
+                + "WHEN NOT MATCHED THEN INSERT (message_id, likes) VALUES (d.message_id, d.delta)";
+        return jdbc.execute("MessageStatsDAO.addLikes", sql, true, connection -> {
+            try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                for (Map.Entry<Integer, Long> delta : deltas.entrySet()) {
+                    preparedStatement.setInt(1, delta.getKey());
+                    preparedStatement.setLong(2, delta.getValue());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+            }
+            return true;
+        }, false);
+    }
+}
@@ -0,0 +1,71 @@
+package DAO;
+
+import Util.Tracing;
+
+import java.util.Collection;
+import java.util.Map;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one DAO call, from getting the connection to the last row read.
+ *
+ * Created at the top of each DAO method and ended with the value it returns. When no
+ * recording has the event enabled, begin and end do nothing and the JIT drops the
+ * allocation, so the DAOs pay nothing outside a recording.
+ */
+@Name("socialmedia.DaoQuery")
+@Label("DAO Query")
+@Category({ "Social Media", "DAO" })
+@Description("One DAO method call and the statement it ran")
+@StackTrace(false)
+final class QueryEvent extends Event {
+    @Label("Method")
+    String method;
+
+    @Label("SQL")
+    @Description("Statement fingerprint, literals replaced by ?")
+    String sql;
+
+    @Label("Shard")
+    int shard;
+
+    @Label("Rows")
+    @Description("Rows returned or changed")
+    int rows;
+
+    static QueryEvent begin(String method, int shard) {
+        QueryEvent event = new QueryEvent();
+        event.method = method;
+        event.shard = shard;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits the event if a recording wants it.
+     * @return result, so a DAO can end with "return event.end(result);".
+     */
+    <T> T end(T result) {
+        if (shouldCommit()) {
+            if (sql != null) sql = Tracing.fingerprint(sql);
+            rows = rowsOf(result);
+            commit();
+        }
+        return result;
+    }
+
+    private static int rowsOf(Object result) {
+        if (result == null) return 0;
+        if (result instanceof Collection) return ((Collection<?>) result).size();
+        if (result instanceof Map) return ((Map<?, ?>) result).size();
+        if (result instanceof Integer) return (Integer) result;
+        if (result instanceof Boolean) return (Boolean) result ? 1 : 0;
+        return 1;
+    }
+}
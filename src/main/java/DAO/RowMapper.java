@@ -0,0 +1,73 @@
+package DAO;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps result rows to objects, reading columns by position.
+ *
+ * A mapper names the columns it reads. The first time it sees a statement, it looks those
+ * names up in the statement's SELECT list and keeps their positions, so each row after that
+ * is read with rs.getInt(2) rather than a lookup of "posted_by" per column per row. A column
+ * the statement does not select gets position 0, which the row function can test for to
+ * leave the field unset (e.g. for ?fields= reads). Positions are kept per SQL string; the
+ * DAOs build their statements from a fixed set of shapes, so the map stays small.
+ */
+final class RowMapper<T> {
+    /**
+     * Builds one object from the current row.
+     */
+    interface Row<T> {
+        /**
+         * @param positions Position of each named column in rs, 0 if it is not selected.
+         */
+        T map(ResultSet rs, int[] positions) throws SQLException;
+    }
+
+    private final String[] columns;
+    private final Row<T> row;
+    private final Map<String, int[]> positionsBySql = new ConcurrentHashMap<>();
+
+    private RowMapper(String[] columns, Row<T> row) {
+        this.columns = columns;
+        this.row = row;
+    }
+
+    /**
+     * @param columns Column names the row function reads, in the order of its positions array.
+     */
+    static <T> RowMapper<T> of(Row<T> row, String... columns) {
+        return new RowMapper<>(columns, row);
+    }
+
+    /**
+     * @return Positions of this mapper's columns in rs, looked up once per sql.
+     */
+    int[] positions(String sql, ResultSet rs) throws SQLException {
+        int[] positions = positionsBySql.get(sql);
+        if (positions == null) {
+            positions = resolve(rs.getMetaData());
+            positionsBySql.put(sql, positions);
+        }
+        return positions;
+    }
+
+    T map(ResultSet rs, int[] positions) throws SQLException {
+        return row.map(rs, positions);
+    }
+
+    private int[] resolve(ResultSetMetaData metaData) throws SQLException {
+        int[] positions = new int[columns.length];
+        for (int column = 1; column <= metaData.getColumnCount(); column++) {
+            String label = metaData.getColumnLabel(column).toLowerCase(Locale.ROOT);
+            for (int i = 0; i < columns.length; i++) {
+                if (positions[i] == 0 && columns[i].equals(label)) positions[i] = column;
+            }
+        }
+        return positions;
+    }
+}
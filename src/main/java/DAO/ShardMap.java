@@ -0,0 +1,195 @@
+package DAO;
+
+import Util.ConnectionUtil;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which shard holds an account's messages.
+ *
+ * posted_by is hashed into one of BUCKETS buckets and each bucket is assigned to a shard.
+ * The assignment is stored in the shard_bucket table of the main database, so splitting a
+ * shard only moves buckets (and their rows) instead of rehashing every account.
+ *
+ * message_ids carry the shard that generated them in their top bits: shard s hands out
+ * IDs from (s << LOCAL_ID_BITS) + 1, so IDs are globally unique and shard 0 keeps plain IDs.
+ * A shard rejects inserts once it reaches idLimitOf(s) rather than run into the next range.
+ */
+public class ShardMap {
+    public static final int BUCKETS = 256;
+    // 6 bits of shard tag and 25 bits of local ID, about 33 million messages per shard
+    public static final int LOCAL_ID_BITS = 25;
+    public static final int MAX_SHARDS = 1 << (31 - LOCAL_ID_BITS);
+
+    // The map last loaded or saved, reused until ConnectionUtil points at another database
+    private static volatile ShardMap loaded;
+
+    private final int[] shardByBucket;
+    private final int shardCount;
+    private final long databaseVersion;
+
+    private ShardMap(int[] shardByBucket, long databaseVersion) {
+        this.shardByBucket = shardByBucket;
+        int max = 0;
+        for (int shard : shardByBucket) {
+            max = Math.max(max, shard);
+        }
+        this.shardCount = max + 1;
+        this.databaseVersion = databaseVersion;
+    }
+
+    /**
+     * Reads the bucket assignment from the main database, creating an even
+     * split over initialShards shards the first time. The map is read once per
+     * database and then reused; a split made by another process is only seen
+     * after a restart.
+     */
+    public static ShardMap load(int initialShards) {
+        if (initialShards < 1 || initialShards > MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard count must be between 1 and " + MAX_SHARDS);
+        }
+        ShardMap cached = loaded;
+        if (cached != null && cached.databaseVersion == ConnectionUtil.databaseVersion()) {
+            return cached;
+        }
+
+        synchronized (ShardMap.class) {
+            long databaseVersion = ConnectionUtil.databaseVersion();
+            cached = loaded;
+            if (cached != null && cached.databaseVersion == databaseVersion) {
+                return cached;
+            }
+            int[] shardByBucket = read(initialShards);
+            if (shardByBucket == null) {
+                // Not cached, the next load tries again
+                return new ShardMap(new int[BUCKETS], databaseVersion);
+            }
+            ShardMap shardMap = new ShardMap(shardByBucket, databaseVersion);
+            loaded = shardMap;
+            return shardMap;
+        }
+    }
+
+    private static int[] read(int initialShards) {
+        int[] shardByBucket = new int[BUCKETS];
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS shard_bucket (bucket int primary key, shard int)");
+
+            int found = 0;
+            try (ResultSet rs = statement.executeQuery("SELECT bucket, shard FROM shard_bucket")) {
+                while (rs.next()) {
+                    shardByBucket[rs.getInt(1)] = rs.getInt(2);
+                    found++;
+                }
+            }
+
+            if (found < BUCKETS) {
+                try (PreparedStatement ps = connection.prepareStatement("MERGE INTO shard_bucket (bucket, shard) VALUES (?, ?)")) {
+                    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                        shardByBucket[bucket] = bucket % initialShards;
+                        ps.setInt(1, bucket);
+                        ps.setInt(2, shardByBucket[bucket]);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        return shardByBucket;
+    }
+
+    /**
+     * Reassigns buckets to another shard and saves the change in one transaction.
+     * @return The updated map.
+     * @throws IllegalStateException if the change could not be saved; shard_bucket is left as it was.
+     */
+    public ShardMap withBuckets(List<Integer> buckets, int shard) {
+        int[] next = shardByBucket.clone();
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement("UPDATE shard_bucket SET shard = ? WHERE bucket = ?")) {
+            connection.setAutoCommit(false);
+            try {
+                for (int bucket : buckets) {
+                    next[bucket] = shard;
+                    ps.setInt(1, shard);
+                    ps.setInt(2, bucket);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Assigning buckets to shard " + shard + " failed", e);
+        }
+
+        ShardMap shardMap = new ShardMap(next, databaseVersion);
+        synchronized (ShardMap.class) {
+            if (loaded == this) loaded = shardMap;
+        }
+        return shardMap;
+    }
+
+    /**
+     * @return Number of shards in use (highest assigned shard + 1).
+     */
+    public int shardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @return The shard holding messages posted by this account.
+     */
+    public int shardFor(int postedBy) {
+        return shardByBucket[bucketOf(postedBy)];
+    }
+
+    /**
+     * @return Buckets currently assigned to a shard.
+     */
+    public List<Integer> bucketsOf(int shard) {
+        List<Integer> buckets = new ArrayList<>();
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (shardByBucket[bucket] == shard) buckets.add(bucket);
+        }
+        return buckets;
+    }
+
+    public static int bucketOf(int postedBy) {
+        // Spread sequential account IDs over the buckets
+        int h = postedBy * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (BUCKETS - 1);
+    }
+
+    /**
+     * @return The shard that generated a message_id. Messages moved by a split keep the old tag.
+     */
+    public static int shardOfId(int messageId) {
+        return messageId >>> LOCAL_ID_BITS;
+    }
+
+    /**
+     * @return The first message_id a shard hands out.
+     */
+    public static int firstIdOf(int shard) {
+        return (shard << LOCAL_ID_BITS) + 1;
+    }
+
+    /**
+     * @return The first message_id past a shard's range, which shardOfId maps to the next shard.
+     */
+    public static long idLimitOf(int shard) {
+        return (long) (shard + 1) << LOCAL_ID_BITS;
+    }
+}
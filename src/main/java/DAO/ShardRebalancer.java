@@ -0,0 +1,149 @@
+package DAO;
+
+import Util.ConnectionUtil;
+
+import java.sql.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Offline tool that splits one message shard in two.
+ *
+ * Half of the source shard's buckets are given to a new shard: their rows are copied
+ * over, the shard map is updated, then the rows are deleted from the source. Copies use
+ * MERGE, so a split that fails before the map update has committed can simply be run
+ * again. Rows are only deleted once it has; if the delete fails, the copies left on the
+ * source are no longer routed to and "cleanup <shard>" removes them.
+ * Moved messages keep their message_id. Stop the API before running it and restart it
+ * afterwards, the shard map is only read at startup.
+ *
+ * Usage: java -cp ... DAO.ShardRebalancer split|cleanup <shard>
+ */
+public class ShardRebalancer {
+    private static final int BATCH_SIZE = 500;
+
+    public static void main(String[] args) {
+        if (args.length != 2 || !(args[0].equals("split") || args[0].equals("cleanup"))) {
+            System.err.println("Usage: ShardRebalancer split|cleanup <shard>");
+            System.exit(2);
+        }
+        int source = Integer.parseInt(args[1]);
+        if (args[0].equals("cleanup")) {
+            int deleted = cleanup(source);
+            System.out.println("Deleted " + deleted + " moved message(s) from shard " + source);
+            return;
+        }
+        int target = split(source);
+        System.out.println("Split shard " + source + " into shards " + source + " and " + target);
+    }
+
+    /**
+     * Moves half of a shard's buckets to a new shard.
+     *
+     * @param source The shard to split.
+     * @return The number of the new shard.
+     */
+    public static int split(int source) {
+        ShardMap shardMap = ShardMap.load(ConnectionUtil.initialShardCount());
+        int target = shardMap.shardCount();
+        if (target >= ShardMap.MAX_SHARDS) {
+            throw new IllegalStateException("Already at " + ShardMap.MAX_SHARDS + " shards");
+        }
+        List<Integer> buckets = shardMap.bucketsOf(source);
+        if (buckets.size() < 2) {
+            throw new IllegalStateException("Shard " + source + " has " + buckets.size() + " bucket(s), nothing to split");
+        }
+
+        List<Integer> moving = buckets.subList(buckets.size() / 2, buckets.size());
+        ShardedMessageDAO.ensureSchema(source);
+        ShardedMessageDAO.ensureSchema(target);
+
+        int[] movedIds = copyRows(source, target, new HashSet<>(moving));
+        // Throws if the map update did not commit, the source keeps every row and stays authoritative
+        shardMap.withBuckets(moving, target);
+        deleteRows(source, movedIds);
+        return target;
+    }
+
+    /**
+     * Deletes the rows a shard still holds for buckets the shard map now assigns elsewhere,
+     * e.g. after a split whose final delete failed.
+     *
+     * @param source The shard to clean up.
+     * @return The number of rows deleted.
+     */
+    public static int cleanup(int source) {
+        ShardMap shardMap = ShardMap.load(ConnectionUtil.initialShardCount());
+        int[] ids = new int[64];
+        int found = 0;
+
+        try (Connection connection = ConnectionUtil.getConnection(source);
+             Statement select = connection.createStatement();
+             ResultSet rs = select.executeQuery("SELECT message_id, posted_by FROM message WHERE deleted_at IS NULL")) {
+            while (rs.next()) {
+                if (shardMap.shardFor(rs.getInt(2)) == source) continue;
+                if (found == ids.length) ids = Arrays.copyOf(ids, found * 2);
+                ids[found++] = rs.getInt(1);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Reading shard " + source + " failed", e);
+        }
+
+        deleteRows(source, Arrays.copyOf(ids, found));
+        return found;
+    }
+
+    private static int[] copyRows(int source, int target, Set<Integer> moving) {
+        int[] movedIds = new int[64];
+        int moved = 0;
+
+        try (Connection from = ConnectionUtil.getConnection(source);
+             Connection to = ConnectionUtil.getConnection(target);
+             Statement select = from.createStatement();
+             ResultSet rs = select.executeQuery(
+                     "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE deleted_at IS NULL");
+             PreparedStatement insert = to.prepareStatement(
+                     "MERGE INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?)")) {
+            to.setAutoCommit(false);
+
+            while (rs.next()) {
+                if (!moving.contains(ShardMap.bucketOf(rs.getInt(2)))) continue;
+
+                insert.setInt(1, rs.getInt(1));
+                insert.setInt(2, rs.getInt(2));
+                insert.setString(3, rs.getString(3));
+                insert.setLong(4, rs.getLong(4));
+                insert.addBatch();
+
+                if (moved == movedIds.length) movedIds = Arrays.copyOf(movedIds, moved * 2);
+                movedIds[moved++] = rs.getInt(1);
+                if (moved % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                    to.commit();
+                }
+            }
+            insert.executeBatch();
+            to.commit();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Copying rows to shard " + target + " failed", e);
+        }
+
+        return Arrays.copyOf(movedIds, moved);
+    }
+
+    private static void deleteRows(int source, int[] ids) {
+        try (Connection connection = ConnectionUtil.getConnection(source);
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM message WHERE message_id = ?")) {
+            for (int i = 0; i < ids.length; i++) {
+                delete.setInt(1, ids[i]);
+                delete.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) delete.executeBatch();
+            }
+            delete.executeBatch();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Deleting moved rows from shard " + source + " failed", e);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package DAO;
+
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.Deadline;
+import Util.Tracing;
+
+import java.io.Closeable;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+/**
+ * MessageRepository spread over several H2 databases.
+ *
+ * Messages live on the shard that ShardMap assigns to their posted_by, so an account's
+ * messages are always together and per-account reads hit one database. Lookups by
+ * message_id go to the shard tagged in the ID, and fall back to the other shards for
+ * messages that a split moved. getAllMessages queries every shard in parallel and merges
+ * the sorted results.
+ *
+ * Only the main database has the Account table, so the posted_by foreign key is checked
+ * here for the other shards.
+ */
+public class ShardedMessageDAO implements MessageRepository, Closeable {
+    private final ShardMap shardMap;
+    private final MessageDAO[] shards;
+    private final IntPredicate accountExists;
+    private final ExecutorService scatter;
+
+    /**
+     * Opens every shard in the map, creating the Message table where it is missing.
+     */
+    public ShardedMessageDAO(ShardMap shardMap, IntPredicate accountExists) {
+        this.shardMap = shardMap;
+        this.accountExists = accountExists;
+        this.shards = new MessageDAO[shardMap.shardCount()];
+        for (int shard = 0; shard < shards.length; shard++) {
+            ensureSchema(shard);
+            shards[shard] = new MessageDAO(shard);
+        }
+        this.scatter = Executors.newFixedThreadPool(shards.length, r -> {
+            Thread t = new Thread(r, "message-shard-scatter");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Stops the threads that query the shards in parallel. Called by MessageService.close().
+     */
+    @Override
+    public void close() {
+        scatter.shutdown();
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        return getAllMessages(MessageFields.ALL);
+    }
+
+    @Override
+    public List<Message> getAllMessages(MessageFields fields) {
+        // The merge below orders by message_id, so it is always read
+        MessageFields withId = fields.withMessageId();
+        List<CompletableFuture<List<Message>>> parts = new ArrayList<>(shards.length);
+        for (MessageDAO shard : shards) {
+            parts.add(CompletableFuture.supplyAsync(Tracing.propagate(Deadline.propagate(() -> shard.getAllMessages(withId))), scatter));
+        }
+
+        // Each shard returns its rows in message_id order, merge them k-way
+        List<List<Message>> results = new ArrayList<>(parts.size());
+        int total = 0;
+        for (CompletableFuture<List<Message>> part : parts) {
+            List<Message> rows = join(part);
+            results.add(rows);
+            total += rows.size();
+        }
+
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> Integer.compare(
+                results.get(a[0]).get(a[1]).getMessage_id(), results.get(b[0]).get(b[1]).getMessage_id()));
+        for (int i = 0; i < results.size(); i++) {
+            if (!results.get(i).isEmpty()) heads.add(new int[] { i, 0 });
+        }
+
+        List<Message> merged = new ArrayList<>(total);
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<Message> rows = results.get(head[0]);
+            merged.add(rows.get(head[1]));
+            if (++head[1] < rows.size()) heads.add(head);
+        }
+        return merged;
+    }
+
+    @Override
+    public Message getMessageId(int id) {
+        return onOwningShard(id, shard -> shard.getMessageId(id));
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        int shard = shardMap.shardFor(message.getPosted_by());
+        // Shard 0 has the real foreign key
+        if (shard != 0 && !accountExists.test(message.getPosted_by())) {
+            return null;
+        }
+        return shards[shard].insertMessage(message);
+    }
+
+    @Override
+    public Message updateMessage(int id, String newText) {
+        return onOwningShard(id, shard -> shard.updateMessage(id, newText));
+    }
+
+    @Override
+    public Message deleteMessageById(int id) {
+        return onOwningShard(id, shard -> shard.deleteMessageById(id));
+    }
+
+    @Override
+    public List<Message> getMessagesByAccountId(int accountId) {
+        return shards[shardMap.shardFor(accountId)].getMessagesByAccountId(accountId);
+    }
+
+    @Override
+    public List<Message> getMessagesByTime(TimeRange range) {
+        // Every shard can hold part of the range, take a full page from each and keep the first
+        List<CompletableFuture<List<Message>>> parts = new ArrayList<>(shards.length);
+        for (MessageDAO shard : shards) {
+            parts.add(CompletableFuture.supplyAsync(Tracing.propagate(Deadline.propagate(() -> shard.getMessagesByTime(range))), scatter));
+        }
+        List<Message> merged = new ArrayList<>();
+        for (CompletableFuture<List<Message>> part : parts) {
+            merged.addAll(join(part));
+        }
+        return range.select(merged);
+    }
+
+    // Waits for one shard's part, rethrowing its failure (a passed deadline, ...) as it was thrown
+    private static List<Message> join(CompletableFuture<List<Message>> part) {
+        try {
+            return part.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesByAccountId(int accountId, MessageFields fields) {
+        return shards[shardMap.shardFor(accountId)].getMessagesByAccountId(accountId, fields);
+    }
+
+    @Override
+    public List<Message> getMessagesByAccountAndTime(int accountId, TimeRange range) {
+        return shards[shardMap.shardFor(accountId)].getMessagesByAccountAndTime(accountId, range);
+    }
+
+    @Override
+    public List<Message> getNewestMessages(int limit) {
+        List<Message> merged = new ArrayList<>();
+        for (MessageDAO shard : shards) {
+            merged.addAll(shard.getNewestMessages(limit));
+        }
+        merged.sort(TimeRange.ORDER.reversed());
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    @Override
+    public int shardCount() {
+        return shards.length;
+    }
+
+    @Override
+    public int purgeDeleted(long deletedBefore, int limit) {
+        int purged = 0;
+        for (int shard = 0; shard < shards.length && purged < limit; shard++) {
+            purged += shards[shard].purgeDeleted(deletedBefore, limit - purged);
+        }
+        return purged;
+    }
+
+    /**
+     * Runs op on the shard tagged in the message_id, then on the others until one returns
+     * a result. IDs are globally unique, so at most one shard can have the message.
+     */
+    private Message onOwningShard(int id, Function<MessageDAO, Message> op) {
+        int home = ShardMap.shardOfId(id);
+        if (home < shards.length) {
+            Message result = op.apply(shards[home]);
+            if (result != null) return result;
+        }
+        // Moved by a split, or does not exist
+        for (int shard = 0; shard < shards.length; shard++) {
+            if (shard == home) continue;
+            Message result = op.apply(shards[shard]);
+            if (result != null) return result;
+        }
+        return null;
+    }
+
+    /**
+     * Creates the Message table on a shard and points its ID generator at the shard's range.
+     * Shard 0 uses the table from SocialMedia.sql. Every shard, 0 included, then refuses
+     * message_ids past its range.
+     */
+    static void ensureSchema(int shard) {
+        if (shard != 0) {
+            createTables(shard);
+        }
+        limitIds(shard);
+    }
+
+    private static void createTables(int shard) {
+        try (Connection connection = ConnectionUtil.getConnection(shard);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS message ("
+                    + "message_id int primary key auto_increment, "
+                    + "posted_by int, "
+                    + "message_text varchar(255), "
+                    + "time_posted_epoch bigint, "
+                    + "deleted_at bigint)");
+            statement.execute("CREATE INDEX IF NOT EXISTS message_posted_by_idx ON message (posted_by)");
+            statement.execute("CREATE INDEX IF NOT EXISTS message_deleted_at_idx ON message (deleted_at)");
+            statement.execute("CREATE INDEX IF NOT EXISTS message_time_idx ON message (time_posted_epoch, message_id)");
+            statement.execute("CREATE INDEX IF NOT EXISTS message_posted_by_time_idx "
+                    + "ON message (posted_by, time_posted_epoch, message_id)");
+            statement.execute("CREATE TABLE IF NOT EXISTS message_change ("
+                    + "seq bigint primary key auto_increment, "
+                    + "message_id int, "
+                    + "posted_by int, "
+                    + "time_posted_epoch bigint, "
+                    + "changed_at bigint)");
+            statement.execute("CREATE INDEX IF NOT EXISTS message_change_changed_at_idx ON message_change (changed_at)");
+            statement.execute("CREATE TABLE IF NOT EXISTS message_outbox ("
+                    + "seq bigint primary key auto_increment, "
+                    + "event varchar(16), "
+                    + "message_id int, "
+                    + "posted_by int, "
+                    + "message_text varchar(255), "
+                    + "time_posted_epoch bigint, "
+                    + "created_at bigint)");
+            statement.execute("CREATE INDEX IF NOT EXISTS message_outbox_created_at_idx ON message_outbox (created_at)");
+            statement.execute("CREATE TABLE IF NOT EXISTS outbox_offset (sink varchar(255) primary key, seq bigint)");
+
+            // Only rows moved in by a split can be below the shard's range, so restart if none are in it
+            boolean restart;
+            try (PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM message WHERE message_id >= ?")) {
+                ps.setInt(1, ShardMap.firstIdOf(shard));
+                try (ResultSet rs = ps.executeQuery()) {
+                    restart = rs.next() && rs.getInt(1) == 0;
+                }
+            }
+            if (restart) {
+                statement.execute("ALTER TABLE message ALTER COLUMN message_id RESTART WITH " + ShardMap.firstIdOf(shard));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Adds a check constraint so that once a shard has handed out every ID of its range, its
+     * inserts fail instead of taking IDs that shardOfId routes to the next shard.
+     *
+     * @throws IllegalStateException if the shard already holds IDs past its range, e.g. a
+     * large unsharded database that was later split.
+     */
+    private static void limitIds(int shard) {
+        try (Connection connection = ConnectionUtil.getConnection(shard);
+             Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE message ADD CONSTRAINT IF NOT EXISTS message_id_range "
+                    + "CHECK (message_id < " + ShardMap.idLimitOf(shard) + ")");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Shard " + shard + " has message_ids at or past " + ShardMap.idLimitOf(shard), e);
+        }
+    }
+}
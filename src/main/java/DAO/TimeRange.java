@@ -0,0 +1,75 @@
+package DAO;
+
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One page of a time-range query: messages with since <= time_posted_epoch < until,
+ * in (time_posted_epoch, message_id) order, starting after a keyset cursor.
+ *
+ * The cursor is the (time_posted_epoch, message_id) of the last message of the previous
+ * page, so the next page is an index range scan from that point rather than an OFFSET.
+ */
+public final class TimeRange {
+    // Order of every time-range result, message_id breaks ties between equal timestamps
+    public static final Comparator<Message> ORDER = Comparator.comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id);
+
+    public final long since;
+    public final long until;
+    public final long afterEpoch;
+    public final int afterId;
+    public final int limit;
+
+    /**
+     * @param since      Lowest time_posted_epoch included.
+     * @param until      First time_posted_epoch no longer included.
+     * @param afterEpoch time_posted_epoch of the cursor, Long.MIN_VALUE for the first page.
+     * @param afterId    message_id of the cursor, Integer.MIN_VALUE for the first page.
+     * @param limit      Most messages returned.
+     */
+    public TimeRange(long since, long until, long afterEpoch, int afterId, int limit) {
+        this.since = since;
+        this.until = until;
+        this.afterEpoch = afterEpoch;
+        this.afterId = afterId;
+        this.limit = limit;
+    }
+
+    /**
+     * @return The first page of [since, until).
+     */
+    public static TimeRange of(long since, long until, int limit) {
+        return new TimeRange(since, until, Long.MIN_VALUE, Integer.MIN_VALUE, limit);
+    }
+
+    /**
+     * @return Lowest time_posted_epoch that can be on this page, the start of the index scan.
+     */
+    public long lowerBound() {
+        return Math.max(since, afterEpoch);
+    }
+
+    public boolean contains(Message m) {
+        long time = m.getTime_posted_epoch();
+        return time >= since && time < until
+                && (time > afterEpoch || (time == afterEpoch && m.getMessage_id() > afterId));
+    }
+
+    /**
+     * Applies the range to messages held in memory.
+     *
+     * @return The page, in ORDER.
+     */
+    public List<Message> select(List<Message> messages) {
+        List<Message> page = new ArrayList<>();
+        for (Message m : messages) {
+            if (contains(m)) page.add(m);
+        }
+        page.sort(ORDER);
+        return page.size() > limit ? new ArrayList<>(page.subList(0, limit)) : page;
+    }
+}
@@ -0,0 +1,125 @@
+package Service;
+
+import Model.Message;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-account message lists for GET /accounts/{account_id}/messages, used when the
+ * message index is off.
+ *
+ * Every account has a version, bumped by MessageService after each insert, update and
+ * delete of one of its messages. A list is stored with the version read before its query
+ * ran and only served while that is still the current version, so a write invalidates the
+ * account's list without touching the cache, and a query racing a write can at worst store
+ * a list that is never served.
+ *
+ * Versions live in a fixed array of stripes indexed by account_id, so they take constant
+ * memory; accounts sharing a stripe just invalidate each other.
+ */
+public class AccountMessageCache {
+    private static final int VERSION_STRIPES = 1 << 14;
+
+    private final int maxEntries;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bumps = new AtomicLong();
+
+    /**
+     * @param maxEntries Accounts kept before other entries are evicted.
+     */
+    public AccountMessageCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return The account's current version, read before querying its messages.
+     */
+    public long version(int accountId) {
+        return versions.get(stripe(accountId));
+    }
+
+    /**
+     * @return The cached list if it was stored at version, otherwise null. The list is shared and must not be modified.
+     */
+    public List<Message> get(int accountId, long version) {
+        Entry entry = entries.get(accountId);
+        if (entry != null && entry.version == version) {
+            hits.incrementAndGet();
+            return entry.messages;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores the result of a query that started at version.
+     */
+    public void put(int accountId, long version, List<Message> messages) {
+        if (version != version(accountId)) return;
+        if (entries.size() >= maxEntries && !entries.containsKey(accountId)) {
+            evictOne();
+        }
+        entries.put(accountId, new Entry(version, messages));
+    }
+
+    /**
+     * Invalidates the account's list after one of its messages changed.
+     */
+    public void bump(int accountId) {
+        bumps.incrementAndGet();
+        versions.incrementAndGet(stripe(accountId));
+    }
+
+    /**
+     * Drops every list, after rows were written around the service.
+     */
+    public void clear() {
+        for (int i = 0; i < VERSION_STRIPES; i++) {
+            versions.incrementAndGet(i);
+        }
+        entries.clear();
+    }
+
+    /**
+     * Sizes and counters for GET /admin/metrics.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("accounts", entries.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("versionBumps", bumps.get());
+        return stats;
+    }
+
+    private static int stripe(int accountId) {
+        return accountId & (VERSION_STRIPES - 1);
+    }
+
+    private void evictOne() {
+        Iterator<Integer> it = entries.keySet().iterator();
+        if (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static final class Entry {
+        final long version;
+        final List<Message> messages;
+
+        Entry(long version, List<Message> messages) {
+            this.version = version;
+            this.messages = messages;
+        }
+    }
+}
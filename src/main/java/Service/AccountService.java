@@ -2,6 +2,8 @@ package Service;
 
 import Model.Account;
 import DAO.AccountDAO;
+import Util.Span;
+import Util.Tracing;
 
 public class AccountService {
     AccountDAO accountDAO;
@@ -24,23 +26,25 @@ public class AccountService {
      * @return Inserted Account with account_id if successful; null if invalid input or username exists.
      */
     public Account register(Account acc) {
-        // Validate: username not blank (from readme #1)
-        if (acc.getUsername() == null || acc.getUsername().isBlank()) {
-            return null;
-        }
+        try (Span span = Tracing.start("AccountService.register")) {
+            // Validate: username not blank (from readme #1)
+            if (acc.getUsername() == null || acc.getUsername().isBlank()) {
+                return null;
+            }
 
-        // Validate: password at least 4 characters (from readme #1)
-        if (acc.getPassword() == null || acc.getPassword().length() < 4) {
-            return null;
-        }
+            // Validate: password at least 4 characters (from readme #1)
+            if (acc.getPassword() == null || acc.getPassword().length() < 4) {
+                return null;
+            }
 
-        // Validate: username must not already exist
-        if (accountDAO.usernameExists(acc.getUsername())) {
-            return null;
-        }
+            // Validate: username must not already exist
+            if (accountDAO.usernameExists(acc.getUsername())) {
+                return null;
+            }
 
-        // If valid, insert account and return it
-        return accountDAO.insertAccount(acc);
+            // If valid, insert account and return it
+            return accountDAO.insertAccount(acc);
+        }
     }
 
     /**
@@ -51,7 +55,9 @@ public class AccountService {
      * @return Account if credentials are valid; null if not found.
      */
     public Account login(String username, String password) {
-        return accountDAO.getAccountByUsernameAndPassword(username, password);
+        try (Span span = Tracing.start("AccountService.login")) {
+            return accountDAO.getAccountByUsernameAndPassword(username, password);
+        }
     }
 
 
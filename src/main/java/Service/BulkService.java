@@ -0,0 +1,76 @@
+package Service;
+
+import DAO.BulkDAO;
+import DAO.ShardMap;
+import Util.ConnectionUtil;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class BulkService {
+    BulkDAO bulkDAO;
+    JsonFactory jsonFactory = new JsonFactory();
+
+    // Default constructor
+    public BulkService() {
+        this.bulkDAO = new BulkDAO();
+    }
+
+    // Constructor for if exists
+    public BulkService(BulkDAO bulkDAO) {
+        this.bulkDAO = bulkDAO;
+    }
+
+    /**
+     * Streams every account and message to out as NDJSON.
+     *
+     * @param includePasswords Whether account lines carry the password, e.g. for a full backup.
+     */
+    public void exportAll(OutputStream out, boolean includePasswords) throws IOException {
+        JsonGenerator generator = jsonFactory.createGenerator(out);
+        // One object per line, without Jackson's default space between root values
+        generator.setRootValueSeparator(null);
+        bulkDAO.exportAll(generator, shardCount(), includePasswords);
+    }
+
+    /**
+     * Loads NDJSON rows from in. Only supported on a single (unsharded) h2 database.
+     *
+     * @return Rows imported and throughput.
+     */
+    public Map<String, Object> importAll(InputStream in) throws IOException {
+        if (shardCount() > 1) {
+            throw new IllegalStateException("Import is not supported on a sharded database");
+        }
+        if (!System.getProperty("messageStore", "h2").equals("h2")) {
+            // Rows go straight into H2, the memory and mmap engines would never see them
+            throw new IllegalStateException("Import is only supported on the h2 message store");
+        }
+        long start = System.nanoTime();
+        JsonParser parser = jsonFactory.createParser(in);
+        long[] counts = bulkDAO.importAll(parser);
+        return stats(counts, start);
+    }
+
+    private int shardCount() {
+        return ShardMap.load(ConnectionUtil.initialShardCount()).shardCount();
+    }
+
+    private static Map<String, Object> stats(long[] counts, long startNanos) {
+        long nanos = Math.max(1, System.nanoTime() - startNanos);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("accounts", counts[0]);
+        stats.put("messages", counts[1]);
+        stats.put("skipped", counts[2]);
+        stats.put("millis", nanos / 1_000_000);
+        stats.put("rowsPerSecond", (counts[0] + counts[1]) * 1_000_000_000L / nanos);
+        return stats;
+    }
+}
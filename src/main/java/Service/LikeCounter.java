@@ -0,0 +1,218 @@
+package Service;
+
+import DAO.MessageStatsDAO;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Likes counted in memory and added to message_stats in batches.
+ *
+ * An UPDATE per like would queue every like of a popular message on one row lock. Here a
+ * like is one LongAdder increment, which spreads concurrent likes of the same message
+ * over cells, and every interval a background job adds what each message gained since
+ * the previous flush with one batched MERGE per batchSize messages. A read adds the stored
+ * count to the likes not flushed yet.
+ *
+ * Crash loss: likes are acknowledged before they are stored, so a crash loses the likes
+ * made since the last successful flush, about one flush interval (likes.flushMillis,
+ * default 1 s) in normal operation. While the database is down nothing is flushed and
+ * everything since it went down is at risk; close flushes once more on a clean stop.
+ * A read that runs while a batch commits can count that batch twice until the commit
+ * is recorded here, which takes microseconds.
+ */
+public class LikeCounter implements Closeable {
+    /**
+     * Likes of one message since it was first liked in this process, and how many of them are stored.
+     */
+    private static final class Counter {
+        final int messageId;
+        final LongAdder likes = new LongAdder();
+        // Written only by the flush, after its batch committed
+        volatile long flushed;
+        // Flushes in a row that found nothing new
+        int idleFlushes;
+
+        Counter(int messageId) {
+            this.messageId = messageId;
+        }
+
+        long unflushed() {
+            return likes.sum() - flushed;
+        }
+    }
+
+    private final MessageStatsDAO statsDAO;
+    private final int batchSize;
+    private final ConcurrentHashMap<Integer, Counter> counters = new ConcurrentHashMap<>();
+    // Counters dropped as idle by the previous flush; a like that raced the removal is flushed from here
+    private List<Counter> retired = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    private final LongAdder liked = new LongAdder();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long lastFlushMillis;
+
+    /**
+     * @param statsDAO  Where the counts are stored.
+     * @param batchSize Messages per MERGE batch and transaction.
+     */
+    public LikeCounter(MessageStatsDAO statsDAO, int batchSize) {
+        this.statsDAO = statsDAO;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Flushes every intervalMillis on a daemon thread.
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "like-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runOnce, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void like(int messageId) {
+        counters.computeIfAbsent(messageId, Counter::new).likes.increment();
+        liked.increment();
+    }
+
+    /**
+     * @return Stored plus pending likes of one message.
+     */
+    public long count(int messageId) {
+        Counter counter = counters.get(messageId);
+        // Unflushed first: a flush committing in between then counts twice rather than not at all
+        long unflushed = counter == null ? 0 : counter.unflushed();
+        return statsDAO.getLikes(messageId) + unflushed;
+    }
+
+    /**
+     * @return Stored plus pending likes by message_id, read with one query.
+     */
+    public Map<Integer, Long> counts(Collection<Integer> messageIds) {
+        Map<Integer, Long> unflushed = new HashMap<>();
+        for (int id : messageIds) {
+            Counter counter = counters.get(id);
+            if (counter != null) unflushed.put(id, counter.unflushed());
+        }
+        Map<Integer, Long> counts = statsDAO.getLikes(messageIds);
+        unflushed.forEach((id, likes) -> counts.merge(id, likes, Long::sum));
+        return counts;
+    }
+
+    /**
+     * One flush: the likes each message gained since the last one, written batchSize messages per transaction.
+     *
+     * @return Messages whose count was written.
+     */
+    public synchronized int runOnce() {
+        flushes.incrementAndGet();
+        long start = System.nanoTime();
+        int written = 0;
+        try {
+            written = flushAll();
+        } catch (RuntimeException e) {
+            // A scheduled task that throws is never run again, the likes would then stay in memory only
+            e.printStackTrace();
+            failures.incrementAndGet();
+        }
+        rowsWritten.addAndGet(written);
+        lastFlushMillis = (System.nanoTime() - start) / 1_000_000;
+        return written;
+    }
+
+    private int flushAll() {
+        int written = 0;
+
+        // Whatever reached the counters dropped last time, they are no longer visible to reads
+        Map<Integer, Long> orphans = new HashMap<>();
+        for (Counter counter : retired) {
+            long delta = counter.unflushed();
+            if (delta != 0) orphans.merge(counter.messageId, delta, Long::sum);
+        }
+        if (orphans.isEmpty() || statsDAO.addLikes(orphans)) {
+            written += orphans.size();
+            retired = new ArrayList<>();
+        }
+
+        Map<Integer, Long> batch = new HashMap<>();
+        Map<Integer, Counter> batchCounters = new HashMap<>();
+        Iterator<Map.Entry<Integer, Counter>> entries = counters.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Integer, Counter> entry = entries.next();
+            Counter counter = entry.getValue();
+            long delta = counter.unflushed();
+            if (delta == 0) {
+                // Keep a counter one idle interval, so a message liked steadily keeps its adder
+                if (++counter.idleFlushes >= 2 && counters.remove(entry.getKey(), counter)) {
+                    retired.add(counter);
+                }
+                continue;
+            }
+            counter.idleFlushes = 0;
+            batch.put(entry.getKey(), delta);
+            batchCounters.put(entry.getKey(), counter);
+            if (batch.size() == batchSize) {
+                written += flush(batch, batchCounters);
+                batch = new HashMap<>();
+                batchCounters = new HashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) written += flush(batch, batchCounters);
+        return written;
+    }
+
+    private int flush(Map<Integer, Long> batch, Map<Integer, Counter> batchCounters) {
+        if (!statsDAO.addLikes(batch)) {
+            // Left unflushed, the next run retries them
+            failures.incrementAndGet();
+            return 0;
+        }
+        batch.forEach((id, delta) -> batchCounters.get(id).flushed += delta);
+        return batch.size();
+    }
+
+    /**
+     * Counters for GET /admin/metrics.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("liked", liked.sum());
+        stats.put("pendingMessages", counters.size());
+        stats.put("flushes", flushes.get());
+        stats.put("rowsWritten", rowsWritten.get());
+        stats.put("failures", failures.get());
+        stats.put("lastFlushMillis", lastFlushMillis);
+        return stats;
+    }
+
+    /**
+     * Stops the background flush and writes what is still pending.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        runOnce();
+    }
+}
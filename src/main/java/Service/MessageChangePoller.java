@@ -0,0 +1,214 @@
+package Service;
+
+import DAO.MessageChangeDAO;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Background job that keeps this instance's caches in step with writes made by other
+ * instances sharing the database.
+ *
+ * Every write logs the message_id to message_change; every interval this job reads the
+ * rows logged since the last sequence number it saw, on each shard, and hands them to the
+ * service, which re-reads those messages. A change is picked up within about one interval
+ * plus the poll time. Changes made by this instance come back too and are applied again,
+ * which is harmless, so writers need no node id.
+ *
+ * Sequence numbers are handed out at insert but become visible at commit, so a lower one
+ * can show up after a higher one. A gap in the sequence is waited on for gapTimeoutMillis
+ * and then passed; the skipped sequence numbers are rechecked on every poll for lateMillis,
+ * so a write whose transaction commits late (a slow request under a unit of work) is still
+ * applied rather than lost. Rows older than retentionMillis are removed.
+ */
+public class MessageChangePoller implements Closeable {
+    // Gaps wider than this are taken to be lost identity values, e.g. after a crash, and not rechecked
+    private static final int MAX_TRACKED_GAP = 1_000;
+
+    private final MessageChangeDAO[] shards;
+    private final Consumer<MessageChangeDAO.Change> apply;
+    private final int batchSize;
+    private final long gapTimeoutMillis;
+    private final long lateMillis;
+    private final long retentionMillis;
+    private ScheduledExecutorService scheduler;
+
+    // Per shard: last sequence number applied, when the gap after it was first seen (0 if none),
+    // and passed gap sequence numbers with when they were passed
+    private final long[] lastSeq;
+    private final long[] gapSince;
+    private final Map<Long, Long>[] passedGaps;
+    private long lastTrimMillis;
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong gapsSkipped = new AtomicLong();
+    private final AtomicLong lateChanges = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong trimmed = new AtomicLong();
+    private volatile long lastLagMillis;
+    private volatile long maxLagMillis;
+
+    /**
+     * @param shardCount       Databases with a message_change table, 0 to shardCount - 1.
+     * @param apply            Called with every change, in sequence order per shard.
+     * @param batchSize        Changes read per shard per poll.
+     * @param gapTimeoutMillis How long a missing sequence number is waited for.
+     * @param lateMillis       How long a passed gap is checked for a late change.
+     * @param retentionMillis  How long changes are kept for slower instances.
+     */
+    @SuppressWarnings("unchecked")
+    public MessageChangePoller(int shardCount, Consumer<MessageChangeDAO.Change> apply, int batchSize,
+                               long gapTimeoutMillis, long lateMillis, long retentionMillis) {
+        this.shards = new MessageChangeDAO[shardCount];
+        this.lastSeq = new long[shardCount];
+        this.gapSince = new long[shardCount];
+        this.passedGaps = new Map[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            shards[shard] = new MessageChangeDAO(shard);
+            passedGaps[shard] = new LinkedHashMap<>();
+            // Only changes made from now on, the caches were just warmed from the table
+            lastSeq[shard] = Math.max(0, shards[shard].latestSeq());
+        }
+        this.apply = apply;
+        this.batchSize = batchSize;
+        this.gapTimeoutMillis = gapTimeoutMillis;
+        this.lateMillis = lateMillis;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Builds a poller from the invalidation.* system properties and starts it.
+     */
+    public static MessageChangePoller startFromSystemProperties(int shardCount, Consumer<MessageChangeDAO.Change> apply) {
+        MessageChangePoller poller = new MessageChangePoller(shardCount, apply,
+                Integer.getInteger("invalidation.batchSize", 1_000),
+                Long.getLong("invalidation.gapTimeoutMillis", 1_000),
+                Long.getLong("invalidation.lateMillis", 60_000),
+                Long.getLong("invalidation.retentionMillis", 300_000));
+        poller.start(Long.getLong("invalidation.pollMillis", 100));
+        return poller;
+    }
+
+    /**
+     * Polls every intervalMillis on a daemon thread.
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "message-change-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runOnce, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * One poll of every shard, then a trim if the last one was a retention period ago.
+     * A failure, e.g. the database being unreachable, is logged and the next run tries
+     * again: a scheduled task that throws is never run again.
+     *
+     * @return Changes applied.
+     */
+    public synchronized int runOnce() {
+        polls.incrementAndGet();
+        long now = System.currentTimeMillis();
+        int count = 0;
+        try {
+            for (int shard = 0; shard < shards.length; shard++) {
+                count += poll(shard, now);
+            }
+            if (now - lastTrimMillis >= retentionMillis) {
+                lastTrimMillis = now;
+                for (MessageChangeDAO shard : shards) {
+                    trimmed.addAndGet(shard.trim(now - retentionMillis));
+                }
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            failures.incrementAndGet();
+        }
+        return count;
+    }
+
+    private int poll(int shard, long now) {
+        int count = applyLate(shard, now);
+        List<MessageChangeDAO.Change> changes = shards[shard].changesSince(lastSeq[shard], batchSize);
+        for (MessageChangeDAO.Change change : changes) {
+            if (change.seq != lastSeq[shard] + 1) {
+                // A write still in flight, or one that rolled back and will never show up
+                if (gapSince[shard] == 0) gapSince[shard] = now;
+                if (now - gapSince[shard] < gapTimeoutMillis) break;
+                gapsSkipped.incrementAndGet();
+                if (change.seq - lastSeq[shard] - 1 <= MAX_TRACKED_GAP) {
+                    for (long seq = lastSeq[shard] + 1; seq < change.seq; seq++) {
+                        passedGaps[shard].put(seq, now);
+                    }
+                }
+            }
+            gapSince[shard] = 0;
+            apply.accept(change);
+            lastSeq[shard] = change.seq;
+            lastLagMillis = Math.max(0, now - change.changedAt);
+            if (lastLagMillis > maxLagMillis) maxLagMillis = lastLagMillis;
+            count++;
+        }
+        applied.addAndGet(count);
+        return count;
+    }
+
+    /**
+     * Applies gap changes that showed up after they were passed, and forgets gaps older than lateMillis.
+     */
+    private int applyLate(int shard, long now) {
+        int count = 0;
+        Iterator<Map.Entry<Long, Long>> gaps = passedGaps[shard].entrySet().iterator();
+        while (gaps.hasNext()) {
+            Map.Entry<Long, Long> gap = gaps.next();
+            if (now - gap.getValue() > lateMillis) {
+                gaps.remove();
+                continue;
+            }
+            MessageChangeDAO.Change change = shards[shard].getChange(gap.getKey());
+            if (change != null) {
+                gaps.remove();
+                apply.accept(change);
+                lateChanges.incrementAndGet();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counters for GET /admin/metrics.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("polls", polls.get());
+        stats.put("applied", applied.get());
+        stats.put("gapsSkipped", gapsSkipped.get());
+        stats.put("lateChanges", lateChanges.get());
+        stats.put("failures", failures.get());
+        stats.put("trimmed", trimmed.get());
+        stats.put("lastLagMillis", lastLagMillis);
+        stats.put("maxLagMillis", maxLagMillis);
+        return stats;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
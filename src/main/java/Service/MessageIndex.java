@@ -0,0 +1,114 @@
+package Service;
+
+import Model.Message;
+import Util.AtomicPagedArray;
+import Util.SortedIdIndex;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process copy of the Message table for the read paths of MessageService.
+ * Holds every message by message_id, plus a posted_by -> sorted message_id list
+ * built on primitive int arrays (no boxed keys, no per-account List of Message).
+ *
+ * It is warmed once with every row and then kept in sync by MessageService on each
+ * insert, update and delete, so GET /messages/{id} and GET /accounts/{id}/messages
+ * never need a query. Writes that bypass MessageService are not seen.
+ */
+public class MessageIndex {
+    // Rough per-object costs on a 64-bit JVM with compressed oops
+    private static final int ID_LIST_OVERHEAD = 16 + 16 + 24;
+    private static final int MESSAGE_OVERHEAD = 32 + 24 + 16;
+
+    private final AtomicPagedArray<Message> messagesById = new AtomicPagedArray<>();
+    private final SortedIdIndex idsByAccount = new SortedIdIndex();
+    // Highest message_id seen, bounds iteration
+    private final AtomicInteger maxMessageId = new AtomicInteger();
+    private volatile long warmupMillis;
+
+    /**
+     * Loads every message into the index.
+     */
+    public void warm(List<Message> messages) {
+        long start = System.nanoTime();
+        for (Message m : messages) {
+            onInsert(m);
+        }
+        warmupMillis = (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * @return The message, or null if it does not exist.
+     */
+    public Message get(int id) {
+        return messagesById.get(id);
+    }
+
+    /**
+     * @return Every message posted by the account, in message_id order.
+     */
+    public List<Message> getByAccount(int accountId) {
+        int[] ids = idsByAccount.get(accountId);
+        List<Message> messages = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Message m = messagesById.get(id);
+            if (m != null) messages.add(m);
+        }
+        return messages;
+    }
+
+    public void onInsert(Message message) {
+        messagesById.set(message.getMessage_id(), message);
+        idsByAccount.add(message.getPosted_by(), message.getMessage_id());
+        maxMessageId.accumulateAndGet(message.getMessage_id(), Math::max);
+    }
+
+    public void onUpdate(Message message) {
+        // Never bring back a message that a concurrent delete already removed
+        while (true) {
+            Message current = messagesById.get(message.getMessage_id());
+            if (current == null || messagesById.compareAndSet(message.getMessage_id(), current, message)) return;
+        }
+    }
+
+    public void onDelete(Message message) {
+        messagesById.remove(message.getMessage_id());
+        idsByAccount.remove(message.getPosted_by(), message.getMessage_id());
+    }
+
+    /**
+     * Heap numbers for the per-account part of the index and the message cache.
+     */
+    public Map<String, Object> stats() {
+        long[] accounts = new long[1];
+        long[] ids = new long[1];
+        long[] idBytes = new long[1];
+        idsByAccount.forEachKey(key -> {
+            accounts[0]++;
+            ids[0] += idsByAccount.size(key);
+            idBytes[0] += ID_LIST_OVERHEAD + idsByAccount.capacityBytes(key);
+        });
+
+        long[] messages = new long[1];
+        long[] messageBytes = new long[1];
+        messagesById.forEach(maxMessageId.get(), (id, m) -> {
+            messages[0]++;
+            messageBytes[0] += MESSAGE_OVERHEAD + 2L * m.getMessage_text().length();
+        });
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("warmupMillis", warmupMillis);
+        stats.put("accounts", accounts[0]);
+        stats.put("messageIds", ids[0]);
+        stats.put("accountIndexBytes", idBytes[0]);
+        stats.put("accountIndexBytesPerAccount", accounts[0] == 0 ? 0 : idBytes[0] / accounts[0]);
+        stats.put("messages", messages[0]);
+        stats.put("messageCacheBytes", messageBytes[0]);
+        stats.put("messageCacheBytesPerAccount", accounts[0] == 0 ? 0 : messageBytes[0] / accounts[0]);
+        return stats;
+    }
+}
@@ -0,0 +1,161 @@
+package Service;
+
+import DAO.MessageRepository;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Background job that physically removes soft-deleted messages.
+ *
+ * DELETE only stamps deleted_at on the row; every interval this job removes rows deleted
+ * more than grace ago, batchSize rows per statement and at most maxBatches per run, with
+ * a pause between batches. It watches the service's operation count and skips runs while
+ * the API is busy, so the page churn happens in quiet periods. After MAX_SKIPS busy runs
+ * in a row one run goes ahead anyway, so tombstones cannot pile up forever.
+ */
+public class MessagePurger implements Closeable {
+    private static final int MAX_SKIPS = 30;
+
+    private final MessageRepository messageDAO;
+    private final LongSupplier operations;
+    private final long graceMillis;
+    private final int batchSize;
+    private final int maxBatches;
+    private final long pauseMillis;
+    private final long busyOperations;
+    private final LongSupplier clock;
+    private ScheduledExecutorService scheduler;
+
+    // Operation count at the previous run, and busy runs skipped since the last purge
+    private long lastOperations;
+    private int skippedInARow;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong skippedBusy = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong purged = new AtomicLong();
+    private volatile long lastBatchMillis;
+
+    /**
+     * @param messageDAO     Store to purge.
+     * @param operations     Running count of API operations, used to tell quiet from busy.
+     * @param graceMillis    How long a deleted row is kept before it may be purged.
+     * @param batchSize      Rows removed per statement.
+     * @param maxBatches     Statements per run.
+     * @param pauseMillis    Sleep between two statements of one run.
+     * @param busyOperations Operations since the previous run above which a run is skipped.
+     */
+    public MessagePurger(MessageRepository messageDAO, LongSupplier operations, long graceMillis,
+                         int batchSize, int maxBatches, long pauseMillis, long busyOperations) {
+        this(messageDAO, operations, graceMillis, batchSize, maxBatches, pauseMillis, busyOperations,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock Current time in milliseconds, which graceMillis is counted back from.
+     */
+    public MessagePurger(MessageRepository messageDAO, LongSupplier operations, long graceMillis,
+                         int batchSize, int maxBatches, long pauseMillis, long busyOperations, LongSupplier clock) {
+        this.clock = clock;
+        this.messageDAO = messageDAO;
+        this.operations = operations;
+        this.graceMillis = graceMillis;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+        this.pauseMillis = pauseMillis;
+        this.busyOperations = busyOperations;
+    }
+
+    /**
+     * Builds a purger from the messagePurge.* system properties and starts it.
+     */
+    public static MessagePurger startFromSystemProperties(MessageRepository messageDAO, LongSupplier operations) {
+        MessagePurger purger = new MessagePurger(messageDAO, operations,
+                Long.getLong("messagePurge.graceMillis", 60_000),
+                Integer.getInteger("messagePurge.batchSize", 500),
+                Integer.getInteger("messagePurge.maxBatches", 20),
+                Long.getLong("messagePurge.pauseMillis", 10),
+                Long.getLong("messagePurge.busyOperations", 1_000));
+        purger.start(Long.getLong("messagePurge.intervalMillis", 1_000));
+        return purger;
+    }
+
+    /**
+     * Runs the purge every intervalMillis on a daemon thread.
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "message-purger");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runOnce, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * One purge run: skipped if busy, otherwise batches until nothing is left or maxBatches is reached.
+     *
+     * @return Rows removed.
+     */
+    public synchronized int runOnce() {
+        runs.incrementAndGet();
+        long now = operations.getAsLong();
+        long sinceLastRun = now - lastOperations;
+        lastOperations = now;
+        if (sinceLastRun > busyOperations && skippedInARow < MAX_SKIPS) {
+            skippedInARow++;
+            skippedBusy.incrementAndGet();
+            return 0;
+        }
+        skippedInARow = 0;
+
+        long cutoff = clock.getAsLong() - graceMillis;
+        int removed = 0;
+        for (int batch = 0; batch < maxBatches; batch++) {
+            long start = System.nanoTime();
+            int rows = messageDAO.purgeDeleted(cutoff, batchSize);
+            lastBatchMillis = (System.nanoTime() - start) / 1_000_000;
+            batches.incrementAndGet();
+            purged.addAndGet(rows);
+            removed += rows;
+            if (rows < batchSize) break;
+
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Counters for GET /admin/metrics.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("runs", runs.get());
+        stats.put("skippedBusy", skippedBusy.get());
+        stats.put("batches", batches.get());
+        stats.put("purged", purged.get());
+        stats.put("lastBatchMillis", lastBatchMillis);
+        return stats;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
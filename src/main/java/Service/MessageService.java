@@ -1,21 +1,106 @@
 package Service;
 
-import DAO.MessageDAO;
+import DAO.MessageChangeDAO;
+import DAO.MessageFields;
+import DAO.MessageRepository;
+import DAO.MessageStatsDAO;
+import DAO.TimeRange;
 import Model.Message;
+import Util.SingleFlight;
+import Util.SlidingTopK;
+import Util.Span;
+import Util.Tracing;
+import Util.UnitOfWork;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 public class MessageService {
-    MessageDAO messageDAO;
+    MessageRepository messageDAO;
+    // In-process copy of the table for reads, null when disabled
+    volatile MessageIndex messageIndex;
+    // Concurrent identical reads that reach the DAO share one query
+    SingleFlight<Integer, Message> messageByIdLoads = new SingleFlight<>();
+    SingleFlight<Integer, List<Message>> messagesByAccountLoads = new SingleFlight<>();
+    // Calls made to this service, the purger only runs when it has barely moved
+    LongAdder operations = new LongAdder();
+    // Removes soft-deleted rows in the background, null when not running
+    MessagePurger purger;
+    // Per-account lists for by-account reads when the index is off, null when disabled
+    AccountMessageCache accountMessages;
+    // Newest messages for time-range reads, null when disabled
+    volatile RecentMessageWindow recentWindow;
+    int recentWindowSize;
+    // Shared by updates to the index and window, exclusive while reloadIndex swaps in new ones
+    private final ReentrantReadWriteLock readCacheSwap = new ReentrantReadWriteLock();
+    // Updates made while reloadIndex warms new copies, replayed onto them before the swap
+    private volatile Queue<ReadCacheUpdate> reloadBacklog;
+    // Applies writes made by other instances sharing the database, null when not running
+    MessageChangePoller changePoller;
+    // Publishes message_outbox events to the -Doutbox.sink sink, null when not running
+    OutboxTailer outboxTailer;
+    // Likes counted in memory, added to message_stats in batches
+    LikeCounter likeCounter = new LikeCounter(new MessageStatsDAO(), Integer.getInteger("likes.batchSize", 500));
+    // Most read messages and most active posters, null when off with -Dtrending=false
+    TrendingService trending = Boolean.parseBoolean(System.getProperty("trending", "true")) ? new TrendingService() : null;
 
-    // Default constructor
+    // Default constructor, storage engine picked with -DmessageStore=h2|memory|mmap,
+    // the read index turned off with -DmessageIndex=false and the recent window sized with -DrecentWindowSize
     public MessageService() {
-        this.messageDAO = new MessageDAO();
+        // The memory and mmap engines already serve reads from memory, the index only helps h2
+        this(MessageRepository.forEngine(System.getProperty("messageStore", "h2")),
+                Boolean.parseBoolean(System.getProperty("messageIndex",
+                        String.valueOf(System.getProperty("messageStore", "h2").equals("h2")))));
+        // Only the h2 engine keeps deleted rows as tombstones, off with -DmessagePurge=false
+        if (System.getProperty("messageStore", "h2").equals("h2")
+                && Boolean.parseBoolean(System.getProperty("messagePurge", "true"))) {
+            purger = MessagePurger.startFromSystemProperties(messageDAO, operations::sum);
+        }
+        // With the index on, by-account reads never reach the DAO, off with -DaccountMessageCache=false
+        if (messageIndex == null && Boolean.parseBoolean(System.getProperty("accountMessageCache", "true"))) {
+            accountMessages = new AccountMessageCache(Integer.getInteger("accountMessageCacheSize", 10_000));
+        }
+        if (System.getProperty("messageStore", "h2").equals("h2")) {
+            recentWindowSize = Integer.getInteger("recentWindowSize", 10_000);
+            recentWindow = newRecentWindow();
+        }
+        // Other instances may write the same database, on with an H2 server URL or -Dinvalidation=true
+        if (System.getProperty("messageStore", "h2").equals("h2") && MessageChangeDAO.enabled()) {
+            changePoller = MessageChangePoller.startFromSystemProperties(messageDAO.shardCount(), this::applyChange);
+        }
+        likeCounter.start(Long.getLong("likes.flushMillis", 1_000));
+        // With several instances, only one should be given a sink, the others only write with -Doutbox=true
+        String outboxSink = System.getProperty("outbox.sink");
+        if (System.getProperty("messageStore", "h2").equals("h2") && outboxSink != null) {
+            try {
+                outboxTailer = OutboxTailer.startFromSystemProperties(messageDAO.shardCount(), OutboxSink.forSpec(outboxSink));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     // Constructor for if exists
-    public MessageService(MessageDAO messageDAO) {
+    public MessageService(MessageRepository messageDAO) {
+        this(messageDAO, false);
+    }
+
+    // Constructor with the read index, warmed here with every message
+    public MessageService(MessageRepository messageDAO, boolean useIndex) {
         this.messageDAO = messageDAO;
+        if (useIndex) {
+            messageIndex = new MessageIndex();
+            messageIndex.warm(messageDAO.getAllMessages());
+        }
     }
 
     /**
@@ -26,42 +111,182 @@ public class MessageService {
      * @return The inserted Message object, or null if validation fails.
      */
     public Message createMessage(Message message) {
-        // Validate: message_text is not blank and <= 255 characters
-        if (message.getMessage_text() == null || message.getMessage_text().isBlank()) {
-            return null;
-        }
-        if (message.getMessage_text().length() > 255) {
-            return null;
-        }
+        try (Span span = Tracing.start("MessageService.createMessage")) {
+            operations.increment();
+            // Validate: message_text is not blank and <= 255 characters
+            if (message.getMessage_text() == null || message.getMessage_text().isBlank()) {
+                return null;
+            }
+            if (message.getMessage_text().length() > 255) {
+                return null;
+            }
 
-        // Validate: posted_by must be a valid user (positive ID)
-        if (message.getPosted_by() <= 0) {
-            return null;
-        }
+            // Validate: posted_by must be a valid user (positive ID)
+            if (message.getPosted_by() <= 0) {
+                return null;
+            }
 
-        // Passes all checks → call DAO to insert
-        return messageDAO.insertMessage(message);
+            // Passes all checks → call DAO to insert
+            Message created = messageDAO.insertMessage(message);
+            if (created != null) {
+                // Caches only show the message once the request's unit of work has committed it
+                UnitOfWork.afterCommit(() -> onCreated(created));
+            }
+            return created;
+        }
     }
 
     /**
      * Retrieves all messages from the database.
      */
     public List<Message> getAllMessages() {
-        return messageDAO.getAllMessages();
+        try (Span span = Tracing.start("MessageService.getAllMessages")) {
+            operations.increment();
+            return messageDAO.getAllMessages();
+        }
+    }
+
+    /**
+     * Retrieves all messages, reading only the requested columns from the database.
+     */
+    public List<Message> getAllMessages(MessageFields fields) {
+        try (Span span = Tracing.start("MessageService.getAllMessages")) {
+            if (fields.isAll()) return getAllMessages();
+            operations.increment();
+            return messageDAO.getAllMessages(fields);
+        }
     }
 
     /**
      * Retrieves a single message by its message_id.
      */
     public Message getMessageById(int id) {
-        return messageDAO.getMessageId(id);
+        try (Span span = Tracing.start("MessageService.getMessageById")) {
+            operations.increment();
+            Message message = findMessage(id);
+            if (message != null && trending != null) {
+                trending.onMessageActivity(id);
+            }
+            return message;
+        }
+    }
+
+    private Message findMessage(int id) {
+        if (messageIndex != null) {
+            return messageIndex.get(id);
+        }
+        return messageByIdLoads.load(id, () -> messageDAO.getMessageId(id));
+    }
+
+    /**
+     * Adds a like to a message.
+     * @return The message's like count after it, or null if the message does not exist.
+     */
+    public Long likeMessage(int id) {
+        try (Span span = Tracing.start("MessageService.likeMessage")) {
+            operations.increment();
+            if (findMessage(id) == null) return null;
+            likeCounter.like(id);
+            if (trending != null) {
+                trending.onMessageActivity(id);
+            }
+            return likeCounter.count(id);
+        }
+    }
+
+    /**
+     * @return The like count of a message, stored and not yet flushed.
+     */
+    public long getLikes(int id) {
+        return likeCounter.count(id);
+    }
+
+    /**
+     * @return Like counts by message_id, read with one query; messages without likes are left out.
+     */
+    public Map<Integer, Long> getLikes(List<Message> messages) {
+        List<Integer> ids = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            ids.add(message.getMessage_id());
+        }
+        return likeCounter.counts(ids);
+    }
+
+    /**
+     * Most read and liked messages of a window, without the ones deleted since.
+     *
+     * @param window One of TrendingService.WINDOWS.
+     * @return Messages with their counts, highest first.
+     * @throws IllegalArgumentException If window is unknown.
+     * @see #isTrendingEnabled()
+     */
+    public List<Ranked<Message>> getTrendingMessages(String window, int limit) {
+        try (Span span = Tracing.start("MessageService.getTrendingMessages")) {
+            operations.increment();
+            List<Ranked<Message>> ranked = new ArrayList<>();
+            // Ask for a few extra so deleted messages do not shorten the list
+            for (SlidingTopK.Entry entry : trending.topMessages(window, Math.min(limit * 2, trending.maxLimit()))) {
+                if (ranked.size() == limit) break;
+                Message message = findMessage(entry.key);
+                if (message != null) ranked.add(new Ranked<>(message, entry.count));
+            }
+            return ranked;
+        }
+    }
+
+    /**
+     * Accounts that posted the most messages in a window.
+     *
+     * @param window One of TrendingService.WINDOWS.
+     * @return account_ids with their post counts, highest first.
+     * @throws IllegalArgumentException If window is unknown.
+     * @see #isTrendingEnabled()
+     */
+    public List<Ranked<Integer>> getTrendingAccounts(String window, int limit) {
+        try (Span span = Tracing.start("MessageService.getTrendingAccounts")) {
+            operations.increment();
+            List<Ranked<Integer>> ranked = new ArrayList<>();
+            for (SlidingTopK.Entry entry : trending.topAccounts(window, limit)) {
+                ranked.add(new Ranked<>(entry.key, entry.count));
+            }
+            return ranked;
+        }
+    }
+
+    /**
+     * @return whether trending counts are kept; the trending queries are only answered when they are.
+     */
+    public boolean isTrendingEnabled() {
+        return trending != null;
+    }
+
+    /**
+     * @return The most entries a trending request can return.
+     */
+    public int getTrendingLimit() {
+        return trending == null ? 0 : trending.maxLimit();
+    }
+
+    /**
+     * Returns the message only if it can be answered from memory, without a query.
+     * Null when it is not cached or the index is off.
+     */
+    public Message getCachedMessageById(int id) {
+        return messageIndex == null ? null : messageIndex.get(id);
     }
 
     /**
      * Deletes a message by its ID and returns the deleted message.
      */
     public Message deleteMessageById(int id) {
-        return messageDAO.deleteMessageById(id);
+        try (Span span = Tracing.start("MessageService.deleteMessageById")) {
+            operations.increment();
+            Message deleted = messageDAO.deleteMessageById(id);
+            if (deleted != null) {
+                UnitOfWork.afterCommit(() -> onDeleted(deleted));
+            }
+            return deleted;
+        }
     }
 
     /**
@@ -72,27 +297,297 @@ public class MessageService {
      * @return Updated Message object, or null if validation fails or not found
      */
     public Message updateMessageText(int id, String newText) {
-        // Validate: message_text not blank or too long
-        if (newText == null || newText.isBlank()) {
-            return null;
+        try (Span span = Tracing.start("MessageService.updateMessageText")) {
+            operations.increment();
+            // Validate: message_text not blank or too long
+            if (newText == null || newText.isBlank()) {
+                return null;
+            }
+            if (newText.length() > 255) {
+                return null;
+            }
+
+            // Only update if the message exists
+            Message existing = findMessage(id);
+            if (existing == null) {
+                return null;
+            }
+
+            Message updated = messageDAO.updateMessage(id, newText);
+            if (updated != null) {
+                UnitOfWork.afterCommit(() -> onUpdated(updated));
+            }
+            return updated;
         }
-        if (newText.length() > 255) {
-            return null;
+    }
+
+    // Cache updates for a committed insert, update or delete
+
+    private void onCreated(Message created) {
+        updateReadCaches(new ReadCacheUpdate(index -> index.onInsert(created), window -> window.onInsert(created)));
+        if (accountMessages != null) {
+            accountMessages.bump(created.getPosted_by());
+        }
+        if (trending != null) {
+            trending.onPost(created.getPosted_by());
         }
+    }
 
-        // Only update if the message exists
-        Message existing = messageDAO.getMessageId(id);
-        if (existing == null) {
-            return null;
+    private void onUpdated(Message updated) {
+        updateReadCaches(new ReadCacheUpdate(index -> index.onUpdate(updated), window -> window.onUpdate(updated)));
+        if (accountMessages != null) {
+            accountMessages.bump(updated.getPosted_by());
         }
+    }
 
-        return messageDAO.updateMessage(id, newText);
+    private void onDeleted(Message deleted) {
+        updateReadCaches(new ReadCacheUpdate(index -> index.onDelete(deleted), window -> window.onDelete(deleted)));
+        if (accountMessages != null) {
+            accountMessages.bump(deleted.getPosted_by());
+        }
+    }
+
+    /**
+     * One write applied to the read index and the recent window.
+     */
+    private static final class ReadCacheUpdate {
+        final Consumer<MessageIndex> index;
+        final Consumer<RecentMessageWindow> window;
+
+        ReadCacheUpdate(Consumer<MessageIndex> index, Consumer<RecentMessageWindow> window) {
+            this.index = index;
+            this.window = window;
+        }
+
+        void applyTo(MessageIndex messageIndex, RecentMessageWindow recentWindow) {
+            if (messageIndex != null) index.accept(messageIndex);
+            if (recentWindow != null) window.accept(recentWindow);
+        }
+    }
+
+    private void updateReadCaches(ReadCacheUpdate update) {
+        readCacheSwap.readLock().lock();
+        try {
+            update.applyTo(messageIndex, recentWindow);
+            // Also queued for the copies a reload is warming, which may have read the table before this write
+            Queue<ReadCacheUpdate> backlog = reloadBacklog;
+            if (backlog != null) backlog.add(update);
+        } finally {
+            readCacheSwap.readLock().unlock();
+        }
     }
 
     /**
      * Retrieves all messages posted by a specific account_id.
      */
     public List<Message> getMessagesByAccountId(int accountId) {
-        return messageDAO.getMessagesByAccountId(accountId);
+        try (Span span = Tracing.start("MessageService.getMessagesByAccountId")) {
+            operations.increment();
+            if (messageIndex != null) {
+                return messageIndex.getByAccount(accountId);
+            }
+            AccountMessageCache cache = accountMessages;
+            if (cache == null) {
+                return messagesByAccountLoads.load(accountId, () -> messageDAO.getMessagesByAccountId(accountId));
+            }
+
+            long version = cache.version(accountId);
+            List<Message> cached = cache.get(accountId, version);
+            if (cached != null) {
+                return cached;
+            }
+            return messagesByAccountLoads.load(accountId, () -> {
+                // Version read before the query, so a write racing it leaves this list unusable
+                long loadVersion = cache.version(accountId);
+                List<Message> messages = messageDAO.getMessagesByAccountId(accountId);
+                cache.put(accountId, loadVersion, messages);
+                return messages;
+            });
+        }
+    }
+
+    /**
+     * Retrieves all messages posted by a specific account_id, with at least the requested fields.
+     * The index and the list cache hold whole messages and are used when they can answer,
+     * otherwise only the requested columns are read.
+     */
+    public List<Message> getMessagesByAccountId(int accountId, MessageFields fields) {
+        try (Span span = Tracing.start("MessageService.getMessagesByAccountId")) {
+            if (fields.isAll() || messageIndex != null) return getMessagesByAccountId(accountId);
+            operations.increment();
+            AccountMessageCache cache = accountMessages;
+            if (cache != null) {
+                List<Message> cached = cache.get(accountId, cache.version(accountId));
+                if (cached != null) return cached;
+            }
+            return messageDAO.getMessagesByAccountId(accountId, fields);
+        }
+    }
+
+    /**
+     * Retrieves one page of messages posted within a time range, from the recent window when it covers the page.
+     */
+    public List<Message> getMessagesByTime(TimeRange range) {
+        try (Span span = Tracing.start("MessageService.getMessagesByTime")) {
+            operations.increment();
+            RecentMessageWindow window = recentWindow;
+            if (window != null) {
+                List<Message> page = window.get(range);
+                if (page != null) return page;
+            }
+            return messageDAO.getMessagesByTime(range);
+        }
+    }
+
+    /**
+     * Retrieves one page of a specific account's messages posted within a time range.
+     */
+    public List<Message> getMessagesByAccountAndTime(int accountId, TimeRange range) {
+        try (Span span = Tracing.start("MessageService.getMessagesByAccountAndTime")) {
+            operations.increment();
+            return messageDAO.getMessagesByAccountAndTime(accountId, range);
+        }
+    }
+
+    /**
+     * Rebuilds the read index and the recent window from the table, after rows were written
+     * around this service (e.g. a bulk import). Writes made through the service while the new
+     * copies are warmed are replayed onto them before they replace the old ones.
+     */
+    public synchronized void reloadIndex() {
+        if (accountMessages != null) {
+            accountMessages.clear();
+        }
+        if (messageIndex == null && recentWindow == null) return;
+
+        Queue<ReadCacheUpdate> backlog = new ConcurrentLinkedQueue<>();
+        reloadBacklog = backlog;
+        MessageIndex freshIndex = null;
+        if (messageIndex != null) {
+            freshIndex = new MessageIndex();
+            freshIndex.warm(messageDAO.getAllMessages());
+        }
+        RecentMessageWindow freshWindow = recentWindow == null ? null : newRecentWindow();
+
+        readCacheSwap.writeLock().lock();
+        try {
+            for (ReadCacheUpdate update = backlog.poll(); update != null; update = backlog.poll()) {
+                update.applyTo(freshIndex, freshWindow);
+            }
+            messageIndex = freshIndex;
+            recentWindow = freshWindow;
+            reloadBacklog = null;
+        } finally {
+            readCacheSwap.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Brings the caches up to date with a message another instance inserted, updated or deleted.
+     * The message is re-read, so changes may arrive late or twice.
+     */
+    void applyChange(MessageChangeDAO.Change change) {
+        if (accountMessages != null) {
+            accountMessages.bump(change.postedBy);
+        }
+        if (messageIndex == null && recentWindow == null) return;
+
+        Message current = messageDAO.getMessageId(change.messageId);
+        if (current == null) {
+            // Deleted: only the key fields are needed to find the entries
+            Message deleted = new Message(change.messageId, change.postedBy, null, change.timePostedEpoch);
+            updateReadCaches(new ReadCacheUpdate(index -> index.onDelete(deleted), window -> window.onDelete(deleted)));
+            return;
+        }
+        updateReadCaches(new ReadCacheUpdate(index -> {
+            if (index.get(change.messageId) == null) {
+                index.onInsert(current);
+            } else {
+                index.onUpdate(current);
+            }
+        }, window -> {
+            // Insert keeps the window's size bound and replaces an entry with the same key
+            window.onInsert(current);
+        }));
+    }
+
+    /**
+     * @return The sink message events are published to, e.g. to take events from a QueueSink, or null if none.
+     */
+    public OutboxSink outboxSink() {
+        return outboxTailer == null ? null : outboxTailer.sink();
+    }
+
+    private RecentMessageWindow newRecentWindow() {
+        if (recentWindowSize <= 0) return null;
+        RecentMessageWindow window = new RecentMessageWindow(recentWindowSize);
+        window.warm(messageDAO.getNewestMessages(recentWindowSize));
+        return window;
+    }
+
+    /**
+     * Counters and sizes for GET /admin/metrics.
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        if (messageIndex != null) {
+            metrics.put("messageIndex", messageIndex.stats());
+        }
+
+        Map<String, Object> singleFlight = new LinkedHashMap<>();
+        singleFlight.put("messageById", singleFlightStats(messageByIdLoads));
+        singleFlight.put("messagesByAccount", singleFlightStats(messagesByAccountLoads));
+        metrics.put("singleFlight", singleFlight);
+
+        if (accountMessages != null) {
+            metrics.put("accountMessageCache", accountMessages.stats());
+        }
+        if (recentWindow != null) {
+            metrics.put("recentWindow", recentWindow.stats());
+        }
+        if (purger != null) {
+            metrics.put("messagePurge", purger.stats());
+        }
+        metrics.put("likes", likeCounter.stats());
+        if (changePoller != null) {
+            metrics.put("invalidation", changePoller.stats());
+        }
+        if (outboxTailer != null) {
+            metrics.put("outbox", outboxTailer.stats());
+        }
+        if (trending != null) {
+            metrics.put("trending", trending.stats());
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops background work. Called when the API server stops.
+     */
+    public void close() {
+        if (purger != null) {
+            purger.close();
+        }
+        if (changePoller != null) {
+            changePoller.close();
+        }
+        if (outboxTailer != null) {
+            outboxTailer.close();
+        }
+        likeCounter.close();
+        if (messageDAO instanceof Closeable) {
+            try {
+                ((Closeable) messageDAO).close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static Map<String, Object> singleFlightStats(SingleFlight<?, ?> flight) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queries", flight.loadCount());
+        stats.put("collapsed", flight.collapsedCount());
+        return stats;
     }
 }
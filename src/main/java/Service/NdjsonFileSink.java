@@ -0,0 +1,45 @@
+package Service;
+
+import DAO.MessageOutboxDAO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Outbox sink that appends events to a file, one JSON object per line. Each batch is
+ * forced to disk before it counts as published, so a saved offset never runs ahead of
+ * the file.
+ */
+public class NdjsonFileSink implements OutboxSink {
+    private final Path path;
+    private final FileChannel channel;
+
+    public NdjsonFileSink(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public String name() {
+        return "file:" + path.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public int publish(List<MessageOutboxDAO.Event> events) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(OutboxSink.toNdjson(events));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        return events.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
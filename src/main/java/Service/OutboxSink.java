@@ -0,0 +1,96 @@
+package Service;
+
+import DAO.MessageOutboxDAO;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Where OutboxTailer publishes message events. Events of one shard arrive in sequence
+ * order, so every posted_by sees its events in the order they were written, except an
+ * event whose write committed after the tailer passed its gap, which arrives late with a
+ * lower seq than events before it. Delivery is at least once: events are published again
+ * if the tailer stops between publishing and saving its offset, or after a gap it still
+ * waits on, and consumers drop repeats by shard and seq.
+ */
+public interface OutboxSink extends Closeable {
+    JsonFactory JSON = new JsonFactory();
+
+    /**
+     * @return Name the sink's offset is saved under, the same across restarts.
+     */
+    String name();
+
+    /**
+     * Publishes events, in order, or as many of the first ones as the sink has room for.
+     *
+     * @return How many events from the start of the list were published. Fewer than all
+     *         means the sink is full; the tailer waits and offers the rest again.
+     * @throws IOException When the sink failed. The tailer backs off and retries the batch.
+     */
+    int publish(List<MessageOutboxDAO.Event> events) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * Picks a sink by spec. Used at startup with the "outbox.sink" system property:
+     * "file:path" appends NDJSON to path, "webhook:url" POSTs NDJSON batches to url and
+     * "queue" or "queue:capacity" keeps events in a bounded in-process queue.
+     */
+    static OutboxSink forSpec(String spec) throws IOException {
+        if (spec.startsWith("file:")) {
+            return new NdjsonFileSink(Paths.get(spec.substring("file:".length())));
+        }
+        if (spec.startsWith("webhook:")) {
+            return new WebhookSink(URI.create(spec.substring("webhook:".length())),
+                    Long.getLong("outbox.webhookTimeoutMillis", 5_000));
+        }
+        if (spec.equals("queue") || spec.startsWith("queue:")) {
+            int capacity = spec.equals("queue") ? 10_000 : Integer.parseInt(spec.substring("queue:".length()));
+            return new QueueSink(capacity, Long.getLong("outbox.queueWaitMillis", 100));
+        }
+        throw new IllegalArgumentException("Unknown outbox sink: " + spec);
+    }
+
+    /**
+     * @return events as newline-delimited JSON, one object per event.
+     */
+    static byte[] toNdjson(List<MessageOutboxDAO.Event> events) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(events.size() * 160);
+        writeNdjson(events, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes events to out as newline-delimited JSON, without closing out.
+     */
+    static void writeNdjson(List<MessageOutboxDAO.Event> events, OutputStream out) throws IOException {
+        try (JsonGenerator json = JSON.createGenerator(out)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.setRootValueSeparator(null);
+            for (MessageOutboxDAO.Event event : events) {
+                json.writeStartObject();
+                json.writeNumberField("shard", event.shard);
+                json.writeNumberField("seq", event.seq);
+                json.writeStringField("event", event.event);
+                json.writeNumberField("message_id", event.messageId);
+                json.writeNumberField("posted_by", event.postedBy);
+                json.writeStringField("message_text", event.messageText);
+                json.writeNumberField("time_posted_epoch", event.timePostedEpoch);
+                json.writeNumberField("created_at", event.createdAt);
+                json.writeEndObject();
+                json.writeRaw('\n');
+            }
+        }
+    }
+}
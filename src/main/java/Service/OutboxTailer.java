@@ -0,0 +1,302 @@
+package Service;
+
+import DAO.MessageOutboxDAO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background job that publishes message_outbox events to a sink.
+ *
+ * Every interval it reads up to batchSize events after the sink's saved offset on each
+ * shard, publishes them in sequence order and saves the offset the sink has everything
+ * up to. Messages of one posted_by live on one shard, so they are published in the order
+ * they were written, apart from late events (below).
+ *
+ * Backpressure: the next batch is only read once the sink took the previous one. A full
+ * sink takes part of a batch and the rest waits for the next run; a failing sink or
+ * database is retried after a backoff that doubles up to maxBackoffMillis. Events accumulate in the
+ * table meanwhile, the writes themselves never wait.
+ *
+ * Sequence numbers are handed out at insert but become visible at commit, so a lower one
+ * can show up after a higher one. A gap is waited on for gapTimeoutMillis, which keeps
+ * the order, and then passed; a gap event that still shows up within lateMillis of being
+ * passed is published late, after events with higher sequence numbers, so consumers
+ * that keep state per message skip an event with a lower seq than the last one they
+ * applied. The saved offset stays below the lowest passed gap until it shows up or
+ * lateMillis runs out, so a restart publishes again from the gap rather than losing it;
+ * lateMillis should outlast the longest message write transaction. Published events
+ * older than retentionMillis are removed, up to the saved offset.
+ */
+public class OutboxTailer implements Closeable {
+    // Gaps wider than this are taken to be lost identity values, e.g. after a crash, and not rechecked
+    private static final int MAX_TRACKED_GAP = 1_000;
+
+    private final MessageOutboxDAO[] shards;
+    private final OutboxSink sink;
+    private final int batchSize;
+    private final long gapTimeoutMillis;
+    private final long lateMillis;
+    private final long maxBackoffMillis;
+    private final long retentionMillis;
+    private ScheduledExecutorService scheduler;
+
+    // Per shard: last sequence number published (-1 until read), the offset saved for the
+    // sink, held below the lowest passed gap, when the gap after offset was first seen
+    // (0 if none), and passed gap sequence numbers with when they were passed
+    private final long[] offset;
+    private final long[] savedOffset;
+    private final long[] gapSince;
+    private final Map<Long, Long>[] passedGaps;
+    private long backoffUntil;
+    private int failuresInARow;
+    private long lastTrimMillis;
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong sinkFull = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong gapsPassed = new AtomicLong();
+    private final AtomicLong lateEvents = new AtomicLong();
+    private final AtomicLong gapsExpired = new AtomicLong();
+    private final AtomicLong trimmed = new AtomicLong();
+    private volatile long lastLagMillis;
+
+    /**
+     * @param shardCount       Databases with a message_outbox table, 0 to shardCount - 1.
+     * @param sink             Where events are published.
+     * @param batchSize        Events read per shard per run.
+     * @param gapTimeoutMillis How long a missing sequence number holds back the ones after it.
+     * @param lateMillis       How long a passed gap is checked for a late event.
+     * @param maxBackoffMillis Longest wait after the sink failed.
+     * @param retentionMillis  How long published events are kept.
+     */
+    @SuppressWarnings("unchecked")
+    public OutboxTailer(int shardCount, OutboxSink sink, int batchSize, long gapTimeoutMillis, long lateMillis,
+                        long maxBackoffMillis, long retentionMillis) {
+        this.shards = new MessageOutboxDAO[shardCount];
+        this.offset = new long[shardCount];
+        this.savedOffset = new long[shardCount];
+        this.gapSince = new long[shardCount];
+        this.passedGaps = new Map[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            shards[shard] = new MessageOutboxDAO(shard);
+            offset[shard] = -1;
+            passedGaps[shard] = new LinkedHashMap<>();
+        }
+        this.sink = sink;
+        this.batchSize = batchSize;
+        this.gapTimeoutMillis = gapTimeoutMillis;
+        this.lateMillis = lateMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Builds a tailer from the outbox.* system properties and starts it.
+     */
+    public static OutboxTailer startFromSystemProperties(int shardCount, OutboxSink sink) {
+        OutboxTailer tailer = new OutboxTailer(shardCount, sink,
+                Integer.getInteger("outbox.batchSize", 500),
+                Long.getLong("outbox.gapTimeoutMillis", 1_000),
+                Long.getLong("outbox.lateMillis", 60_000),
+                Long.getLong("outbox.maxBackoffMillis", 30_000),
+                Long.getLong("outbox.retentionMillis", 3_600_000));
+        tailer.start(Long.getLong("outbox.pollMillis", 100));
+        return tailer;
+    }
+
+    /**
+     * Runs every intervalMillis on a daemon thread.
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "outbox-tailer");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runOnce, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * One run: a batch per shard unless backing off, then a trim if the last one was a retention period ago.
+     *
+     * @return Events published.
+     */
+    public synchronized int runOnce() {
+        polls.incrementAndGet();
+        long now = System.currentTimeMillis();
+        if (now < backoffUntil) return 0;
+
+        int count = 0;
+        try {
+            for (int shard = 0; shard < shards.length; shard++) {
+                count += tail(shard, now);
+            }
+            failuresInARow = 0;
+        } catch (IOException | RuntimeException e) {
+            // A failing sink or DAO call; the next run retries the batch after the backoff
+            e.printStackTrace();
+            failures.incrementAndGet();
+            failuresInARow++;
+            backoffUntil = now + Math.min(maxBackoffMillis, 100L << Math.min(failuresInARow - 1, 20));
+            return count;
+        }
+
+        if (now - lastTrimMillis >= retentionMillis) {
+            lastTrimMillis = now;
+            for (int shard = 0; shard < shards.length; shard++) {
+                if (savedOffset[shard] > 0) trimmed.addAndGet(shards[shard].trim(savedOffset[shard], now - retentionMillis));
+            }
+        }
+        return count;
+    }
+
+    private int tail(int shard, long now) throws IOException {
+        MessageOutboxDAO outbox = shards[shard];
+        if (offset[shard] < 0) {
+            offset[shard] = outbox.getOffset(sink.name());
+            if (offset[shard] < 0) return 0;
+            savedOffset[shard] = offset[shard];
+        }
+        int count = publishLate(shard, now);
+        saveOffset(shard);
+
+        List<MessageOutboxDAO.Event> events = outbox.eventsSince(offset[shard], batchSize);
+        int ready = 0;
+        long expected = offset[shard] + 1;
+        boolean waiting = false;
+        for (MessageOutboxDAO.Event event : events) {
+            if (event.seq != expected && !passed(shard, expected, event.seq)) {
+                // A write still in flight, or one that rolled back and will never show up
+                if (gapSince[shard] == 0) gapSince[shard] = now;
+                if (now - gapSince[shard] < gapTimeoutMillis) {
+                    waiting = true;
+                    break;
+                }
+                gapSince[shard] = 0;
+                gapsPassed.incrementAndGet();
+                if (event.seq - expected <= MAX_TRACKED_GAP) {
+                    for (long seq = expected; seq < event.seq; seq++) {
+                        passedGaps[shard].put(seq, now);
+                    }
+                }
+            }
+            ready++;
+            expected = event.seq + 1;
+        }
+        if (!waiting) gapSince[shard] = 0;
+        if (ready == 0) {
+            saveOffset(shard);
+            return count;
+        }
+
+        List<MessageOutboxDAO.Event> batch = events.subList(0, ready);
+        int accepted = sink.publish(batch);
+        batches.incrementAndGet();
+        if (accepted < batch.size()) sinkFull.incrementAndGet();
+        if (accepted == 0) return count;
+
+        MessageOutboxDAO.Event last = batch.get(accepted - 1);
+        offset[shard] = last.seq;
+        saveOffset(shard);
+        published.addAndGet(accepted);
+        lastLagMillis = Math.max(0, now - last.createdAt);
+        return count + accepted;
+    }
+
+    /**
+     * @return whether every sequence number from first up to end was already passed as a gap.
+     */
+    private boolean passed(int shard, long first, long end) {
+        for (long seq = first; seq < end; seq++) {
+            if (!passedGaps[shard].containsKey(seq)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Saves the offset the sink has every event up to: the last one published, or just
+     * below the lowest passed gap still waited on.
+     */
+    private void saveOffset(int shard) {
+        long seq = offset[shard];
+        for (long gap : passedGaps[shard].keySet()) {
+            seq = Math.min(seq, gap - 1);
+        }
+        if (seq != savedOffset[shard] && shards[shard].saveOffset(sink.name(), seq)) {
+            savedOffset[shard] = seq;
+        }
+    }
+
+    /**
+     * Publishes gap events that showed up after they were passed, and gives up on gaps older than lateMillis.
+     */
+    private int publishLate(int shard, long now) throws IOException {
+        int count = 0;
+        Iterator<Map.Entry<Long, Long>> gaps = passedGaps[shard].entrySet().iterator();
+        while (gaps.hasNext()) {
+            Map.Entry<Long, Long> gap = gaps.next();
+            if (now - gap.getValue() > lateMillis) {
+                // Rolled back, or committed too late to be told apart from that
+                gaps.remove();
+                gapsExpired.incrementAndGet();
+                continue;
+            }
+            MessageOutboxDAO.Event event = shards[shard].getEvent(gap.getKey());
+            if (event != null && sink.publish(List.of(event)) == 1) {
+                gaps.remove();
+                lateEvents.incrementAndGet();
+                published.incrementAndGet();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public OutboxSink sink() {
+        return sink;
+    }
+
+    /**
+     * Counters for GET /admin/metrics.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sink", sink.name());
+        stats.put("polls", polls.get());
+        stats.put("batches", batches.get());
+        stats.put("published", published.get());
+        stats.put("sinkFull", sinkFull.get());
+        stats.put("failures", failures.get());
+        stats.put("gapsPassed", gapsPassed.get());
+        stats.put("lateEvents", lateEvents.get());
+        stats.put("gapsExpired", gapsExpired.get());
+        stats.put("trimmed", trimmed.get());
+        stats.put("lastLagMillis", lastLagMillis);
+        return stats;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        try {
+            sink.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package Service;
+
+import DAO.MessageOutboxDAO;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbox sink for consumers in the same process: a bounded queue they take events from.
+ *
+ * When the queue is full, publish waits up to waitMillis for a consumer to make room and
+ * then reports how many events fit, so a slow consumer holds the tailer back instead of
+ * the queue growing without bound.
+ */
+public class QueueSink implements OutboxSink {
+    private final BlockingQueue<MessageOutboxDAO.Event> queue;
+    private final long waitMillis;
+
+    /**
+     * @param capacity   Events held before publish waits.
+     * @param waitMillis How long publish waits for room for the next event.
+     */
+    public QueueSink(int capacity, long waitMillis) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.waitMillis = waitMillis;
+    }
+
+    @Override
+    public String name() {
+        return "queue";
+    }
+
+    @Override
+    public int publish(List<MessageOutboxDAO.Event> events) {
+        int published = 0;
+        try {
+            for (MessageOutboxDAO.Event event : events) {
+                if (!queue.offer(event, waitMillis, TimeUnit.MILLISECONDS)) break;
+                published++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return published;
+    }
+
+    /**
+     * The queue consumers take events from, in publish order.
+     */
+    public BlockingQueue<MessageOutboxDAO.Event> queue() {
+        return queue;
+    }
+}
@@ -0,0 +1,14 @@
+package Service;
+
+/**
+ * An item with the count it was ranked by, e.g. a trending message and its reads in the window.
+ */
+public class Ranked<T> {
+    public final T item;
+    public final long count;
+
+    public Ranked(T item, long count) {
+        this.item = item;
+        this.count = count;
+    }
+}
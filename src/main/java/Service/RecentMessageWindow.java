@@ -0,0 +1,137 @@
+package Service;
+
+import DAO.TimeRange;
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The newest messages, by (time_posted_epoch, message_id), kept sorted in memory for
+ * time-range reads of GET /messages.
+ *
+ * It holds every live message above a floor key: warmed with the newest maxSize rows,
+ * then kept up to date by MessageService on each insert, update and delete. Once over
+ * maxSize the oldest entries are dropped and the floor moves up. A range query whose page
+ * starts above the floor is answered here, anything older goes to the database.
+ *
+ * Writes are serialized, reads walk the skip list without locking.
+ */
+public class RecentMessageWindow {
+    private final int maxSize;
+    private final ConcurrentSkipListMap<Key, Message> messages = new ConcurrentSkipListMap<>();
+    // Every live message with a key above floor is in the window, null when all of them are
+    private volatile Key floor;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize Messages kept.
+     */
+    public RecentMessageWindow(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Loads the window, before it is used.
+     *
+     * @param newest The newest messages, newest first, as returned by getNewestMessages(maxSize).
+     */
+    public synchronized void warm(List<Message> newest) {
+        for (Message m : newest) {
+            messages.put(Key.of(m), m);
+        }
+        // Fewer rows than asked for means the table has no older ones
+        floor = newest.size() < maxSize || messages.isEmpty() ? null : messages.firstKey();
+    }
+
+    /**
+     * @return The page, or null if part of it may be older than the window.
+     */
+    public List<Message> get(TimeRange range) {
+        Key start = new Key(range.lowerBound(), range.afterEpoch >= range.since ? range.afterId : Integer.MIN_VALUE);
+        Key currentFloor = floor;
+        if (currentFloor != null && start.compareTo(currentFloor) < 0) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        List<Message> page = new ArrayList<>();
+        NavigableMap<Key, Message> tail = messages.tailMap(start, false);
+        for (Message m : tail.values()) {
+            if (m.getTime_posted_epoch() >= range.until || page.size() == range.limit) break;
+            if (range.contains(m)) page.add(m);
+        }
+        return page;
+    }
+
+    public synchronized void onInsert(Message m) {
+        Key key = Key.of(m);
+        if (floor != null && key.compareTo(floor) <= 0) return;
+        messages.put(key, m);
+        while (messages.size() > maxSize) {
+            floor = messages.pollFirstEntry().getKey();
+        }
+    }
+
+    public synchronized void onUpdate(Message m) {
+        // Time and ID never change, so the key stays put
+        messages.replace(Key.of(m), m);
+    }
+
+    public synchronized void onDelete(Message m) {
+        messages.remove(Key.of(m));
+    }
+
+    /**
+     * Sizes and hit counters for GET /admin/metrics.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Key currentFloor = floor;
+        stats.put("messages", messages.size());
+        stats.put("floorEpoch", currentFloor == null ? null : currentFloor.epoch);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+
+    /**
+     * Sort key of a message, same order as TimeRange.ORDER.
+     */
+    private static final class Key implements Comparable<Key> {
+        final long epoch;
+        final int id;
+
+        Key(long epoch, int id) {
+            this.epoch = epoch;
+            this.id = id;
+        }
+
+        static Key of(Message m) {
+            return new Key(m.getTime_posted_epoch(), m.getMessage_id());
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byEpoch = Long.compare(epoch, other.epoch);
+            return byEpoch != 0 ? byEpoch : Integer.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && compareTo((Key) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(epoch) * 31 + id;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package Service;
+
+import Util.SlidingTopK;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Most active messages and accounts over the last 5 minutes, hour and day, counted as
+ * events arrive so a request never aggregates the message table.
+ *
+ * Each window of each stream is a SlidingTopK: 5m is 10 buckets of 30 s, 1h is 12 of 5 min
+ * and 24h is 24 of 1 h, so a window slides in steps of one bucket. Memory is fixed by
+ * -Dtrending.width (counters per sketch row, default 1024), -Dtrending.depth (rows, default 4)
+ * and -Dtrending.topK (keys kept per bucket and the most a request returns, default 100),
+ * whatever the number of messages or accounts. Counts are sketch estimates: never low, and
+ * high by at most a small share of the window's events.
+ */
+public class TrendingService {
+    /**
+     * Window names accepted by ?window=, in order.
+     */
+    public static final List<String> WINDOWS = List.of("5m", "1h", "24h");
+
+    private final Map<String, SlidingTopK> messages = new LinkedHashMap<>();
+    private final Map<String, SlidingTopK> accounts = new LinkedHashMap<>();
+
+    /**
+     * Sized from -Dtrending.width, -Dtrending.depth and -Dtrending.topK.
+     */
+    public TrendingService() {
+        this(Integer.getInteger("trending.width", 1024), Integer.getInteger("trending.depth", 4),
+                Integer.getInteger("trending.topK", 100), System::currentTimeMillis);
+    }
+
+    public TrendingService(int width, int depth, int k, LongSupplier clock) {
+        long[] bucketMillis = {30_000L, 5 * 60_000L, 60 * 60_000L};
+        int[] bucketCounts = {10, 12, 24};
+        for (int i = 0; i < WINDOWS.size(); i++) {
+            messages.put(WINDOWS.get(i), new SlidingTopK(bucketMillis[i], bucketCounts[i], width, depth, k, clock));
+            accounts.put(WINDOWS.get(i), new SlidingTopK(bucketMillis[i], bucketCounts[i], width, depth, k, clock));
+        }
+    }
+
+    /**
+     * Counts a read or like of a message.
+     */
+    public void onMessageActivity(int messageId) {
+        for (SlidingTopK window : messages.values()) {
+            window.record(messageId);
+        }
+    }
+
+    /**
+     * Counts a message posted by an account.
+     */
+    public void onPost(int accountId) {
+        for (SlidingTopK window : accounts.values()) {
+            window.record(accountId);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException If window is not one of WINDOWS.
+     */
+    public List<SlidingTopK.Entry> topMessages(String window, int limit) {
+        return window(messages, window).top(limit);
+    }
+
+    /**
+     * @throws IllegalArgumentException If window is not one of WINDOWS.
+     */
+    public List<SlidingTopK.Entry> topAccounts(String window, int limit) {
+        return window(accounts, window).top(limit);
+    }
+
+    /**
+     * @return The most entries a request can return.
+     */
+    public int maxLimit() {
+        return messages.get(WINDOWS.get(0)).k();
+    }
+
+    private static SlidingTopK window(Map<String, SlidingTopK> windows, String name) {
+        SlidingTopK window = windows.get(name);
+        if (window == null) {
+            throw new IllegalArgumentException("window must be one of " + WINDOWS);
+        }
+        return window;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("messageEvents", messages.get(WINDOWS.get(0)).eventCount());
+        stats.put("postEvents", accounts.get(WINDOWS.get(0)).eventCount());
+        long maxBytes = 0;
+        for (SlidingTopK window : messages.values()) maxBytes += window.maxSizeBytes();
+        for (SlidingTopK window : accounts.values()) maxBytes += window.maxSizeBytes();
+        stats.put("maxSizeBytes", maxBytes);
+        return stats;
+    }
+}
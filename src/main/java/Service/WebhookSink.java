@@ -0,0 +1,55 @@
+package Service;
+
+import DAO.MessageOutboxDAO;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outbox sink that POSTs each batch to an HTTP endpoint as an application/x-ndjson body.
+ *
+ * Any 2xx answer publishes the whole batch. A 429 or 503 means the receiver is
+ * overloaded and is treated as a full sink; any other answer, a timeout or a refused
+ * connection is a failure the tailer backs off from.
+ */
+public class WebhookSink implements OutboxSink {
+    private final URI uri;
+    private final Duration timeout;
+    private final HttpClient client;
+
+    public WebhookSink(URI uri, long timeoutMillis) {
+        this.uri = uri;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.client = HttpClient.newBuilder().connectTimeout(timeout).build();
+    }
+
+    @Override
+    public String name() {
+        return "webhook:" + uri;
+    }
+
+    @Override
+    public int publish(List<MessageOutboxDAO.Event> events) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(OutboxSink.toNdjson(events)))
+                .build();
+        HttpResponse<Void> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        int status = response.statusCode();
+        if (status / 100 == 2) return events.size();
+        if (status == 429 || status == 503) return 0;
+        throw new IOException("Webhook " + uri + " answered " + status);
+    }
+}
@@ -0,0 +1,107 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * A lock-free map from a non-negative int key to a value, stored as lazily allocated pages
+ * of AtomicReferenceArray. Keys index straight into the pages, so there is no hashing and
+ * no boxing of the key. Works best for dense keys such as auto-increment IDs.
+ *
+ * @param <V> The value type.
+ */
+public class AtomicPagedArray<V> {
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    // Enough pages to cover every non-negative int
+    private static final int DIRECTORY_SIZE = 1 << (31 - PAGE_BITS);
+
+    private final AtomicReferenceArray<AtomicReferenceArray<V>> pages =
+            new AtomicReferenceArray<>(DIRECTORY_SIZE);
+
+    /**
+     * @param key A non-negative key.
+     * @return The value stored at key, or null.
+     */
+    public V get(int key) {
+        if (key < 0) return null;
+        AtomicReferenceArray<V> page = pages.get(key >>> PAGE_BITS);
+        return page == null ? null : page.get(key & PAGE_MASK);
+    }
+
+    /**
+     * Stores a value, allocating the page if needed.
+     */
+    public void set(int key, V value) {
+        page(key).set(key & PAGE_MASK, value);
+    }
+
+    /**
+     * Atomically replaces the value at key if it is still expected.
+     * @return true if the swap happened.
+     */
+    public boolean compareAndSet(int key, V expected, V value) {
+        return page(key).compareAndSet(key & PAGE_MASK, expected, value);
+    }
+
+    /**
+     * Atomically clears the value at key.
+     * @return The previous value, or null.
+     */
+    public V remove(int key) {
+        if (key < 0) return null;
+        AtomicReferenceArray<V> page = pages.get(key >>> PAGE_BITS);
+        return page == null ? null : page.getAndSet(key & PAGE_MASK, null);
+    }
+
+    /**
+     * Visits every non-null value with a key in [0, maxKey], in key order.
+     */
+    public void forEach(int maxKey, IntObjConsumer<V> consumer) {
+        if (maxKey < 0) return;
+        int lastPage = maxKey >>> PAGE_BITS;
+        for (int p = 0; p <= lastPage; p++) {
+            AtomicReferenceArray<V> page = pages.get(p);
+            if (page == null) continue;
+            int base = p << PAGE_BITS;
+            int end = p == lastPage ? (maxKey & PAGE_MASK) : PAGE_MASK;
+            for (int i = 0; i <= end; i++) {
+                V value = page.get(i);
+                if (value != null) consumer.accept(base + i, value);
+            }
+        }
+    }
+
+    /**
+     * Returns the value at key, computing and installing it if absent.
+     */
+    public V computeIfAbsent(int key, IntFunction<V> factory) {
+        AtomicReferenceArray<V> page = page(key);
+        int slot = key & PAGE_MASK;
+        V current = page.get(slot);
+        if (current != null) return current;
+        V created = factory.apply(key);
+        if (page.compareAndSet(slot, null, created)) return created;
+        return page.get(slot);
+    }
+
+    private AtomicReferenceArray<V> page(int key) {
+        if (key < 0) throw new IllegalArgumentException("Negative key: " + key);
+        int index = key >>> PAGE_BITS;
+        AtomicReferenceArray<V> page = pages.get(index);
+        if (page == null) {
+            // Losing the race is fine, we just use the winner's page
+            pages.compareAndSet(index, null, new AtomicReferenceArray<>(PAGE_SIZE));
+            page = pages.get(index);
+        }
+        return page;
+    }
+
+    /**
+     * Callback for forEach that receives the primitive key.
+     */
+    public interface IntObjConsumer<V> {
+        void accept(int key, V value);
+    }
+}
@@ -0,0 +1,160 @@
+package Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Adaptive limit on requests in flight, shared by every route (AIMD, as in TCP congestion control).
+ *
+ * Each finished request reports how long it took. A request is slow when it took longer than
+ * the latency threshold and, if it names its route, than twice the route's usual time, so a
+ * route that is expensive by design (a full GET /messages) is measured against itself and
+ * does not shed the cheap ones. While requests are not slow and at least half the limit is
+ * in use, the limit grows by one per request; a slow request cuts it by a tenth, at most
+ * once per threshold interval so a burst of slow requests counts as one congestion event. A request over its priority's
+ * share of the limit is rejected at once rather than queued, so when the database slows
+ * down the excess fails fast and the admitted requests keep their latency.
+ */
+public class ConcurrencyLimiter {
+    /**
+     * How much of the limit a request may fill. Lower priorities are shed first.
+     */
+    public enum Priority {
+        HIGH(1.0), NORMAL(0.8), LOW(0.5);
+
+        final double share;
+
+        Priority(double share) {
+            this.share = share;
+        }
+    }
+
+    private static final double BACKOFF = 0.9;
+    // A route's request is slow past this many times its usual time
+    private static final int TOLERANCE = 2;
+    // Share of the distance to each new sample a route's usual time moves
+    private static final int USUAL_SMOOTHING = 16;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong lastDecrease;
+    // Route -> smoothed request time in nanoseconds
+    private final Map<String, AtomicLong> usualLatency = new ConcurrentHashMap<>();
+    private final AtomicLongArray rejected = new AtomicLongArray(Priority.values().length);
+    private final AtomicLong increases = new AtomicLong();
+    private final AtomicLong decreases = new AtomicLong();
+
+    /**
+     * @param initialLimit     Requests allowed in flight at start.
+     * @param minLimit         Floor the limit never backs off below.
+     * @param maxLimit         Ceiling the limit never grows past.
+     * @param latencyThreshold Request time above which the database is taken to be overloaded,
+     *                         raised per route to TOLERANCE times its usual time.
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThreshold, TimeUnit unit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = unit.toNanos(latencyThreshold);
+        this.limit = new AtomicInteger(Math.max(minLimit, Math.min(maxLimit, initialLimit)));
+        this.lastDecrease = new AtomicLong(System.nanoTime() - latencyThresholdNanos);
+    }
+
+    /**
+     * Admits one request if its priority's share of the limit is not full.
+     * Every true must be followed by exactly one release.
+     */
+    public boolean tryAcquire(Priority priority) {
+        while (true) {
+            int current = inFlight.get();
+            int allowed = Math.max(1, (int) (limit.get() * priority.share));
+            if (current >= allowed) {
+                rejected.incrementAndGet(priority.ordinal());
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    /**
+     * Ends an admitted request and adjusts the limit from how long it took, compared with the threshold.
+     */
+    public void release(long latencyNanos) {
+        release(latencyNanos, latencyThresholdNanos);
+    }
+
+    /**
+     * Ends an admitted request of route and adjusts the limit from how long it took, compared
+     * with the threshold or the route's usual time, whichever is higher.
+     */
+    public void release(String route, long latencyNanos) {
+        AtomicLong usual = usualLatency.computeIfAbsent(route, r -> new AtomicLong(latencyNanos));
+        long slowNanos = Math.max(latencyThresholdNanos, usual.get() * TOLERANCE);
+        // Capped so a congested stretch only drags the usual time up slowly
+        long sample = Math.min(latencyNanos, slowNanos);
+        usual.accumulateAndGet(sample, (current, next) -> current + (next - current) / USUAL_SMOOTHING);
+        release(latencyNanos, slowNanos);
+    }
+
+    private void release(long latencyNanos, long slowNanos) {
+        int current = inFlight.getAndDecrement();
+        if (latencyNanos > slowNanos) {
+            decrease();
+        } else if (current * 2 >= limit.get()) {
+            // Only grow while the limit is actually in use, or it drifts up during quiet periods
+            int now = limit.get();
+            if (now < maxLimit && limit.compareAndSet(now, now + 1)) increases.incrementAndGet();
+        }
+    }
+
+    /**
+     * Ends an admitted request that is long by design (bulk export, ...) without adjusting the limit.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    private void decrease() {
+        long now = System.nanoTime();
+        long last = lastDecrease.get();
+        if (now - last < latencyThresholdNanos || !lastDecrease.compareAndSet(last, now)) return;
+        limit.updateAndGet(l -> Math.max(minLimit, (int) (l * BACKOFF)));
+        decreases.incrementAndGet();
+    }
+
+    public int limit() {
+        return limit.get();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Current limit and counters for GET /admin/metrics.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("limit", limit.get());
+        stats.put("inFlight", inFlight.get());
+        Map<String, Object> shed = new LinkedHashMap<>();
+        for (Priority priority : Priority.values()) {
+            shed.put(priority.name().toLowerCase(), rejected.get(priority.ordinal()));
+        }
+        stats.put("rejected", shed);
+        stats.put("limitIncreases", increases.get());
+        stats.put("limitDecreases", decreases.get());
+        Map<String, Object> usual = new TreeMap<>();
+        usualLatency.forEach((route, nanos) -> usual.put(route, TimeUnit.NANOSECONDS.toMillis(nanos.get())));
+        stats.put("usualMillis", usual);
+        return stats;
+    }
+}
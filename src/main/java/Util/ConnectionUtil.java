@@ -1,41 +1,89 @@
 package Util;
 
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
+import org.h2.util.ScriptReader;
 
 /**
  * The ConnectionUtil class will be utilized to create an active connection to
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Message rows can also be spread over several H2 databases (shards). Shard 0 is the
+ * main database and also holds the Account table; shard i is stored in ./h2/db-shard{i}.
+ *
+ * Tests can instead point every connection at a private in-memory database, so test
+ * classes running in parallel JVMs never share state.
+ *
+ * Several API instances can share one database through an H2 server started with
+ * org.h2.tools.Server -tcp, e.g. -Ddb.url=jdbc:h2:tcp://dbhost:9092/./h2/db; each shard is
+ * then a database of that server as well.
  */
 public class ConnectionUtil {
 
+	/**
+	 * The database file next to the working directory. DAOs close their connections after
+	 * each call, so DB_CLOSE_DELAY=-1 keeps the database open in between rather than
+	 * closing it with the last connection and reopening the file on the next call.
+	 */
+	private static final String FILE_URL = "jdbc:h2:./h2/db;DB_CLOSE_DELAY=-1";
+
 	/**
 	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
+	 * will represent a file location to store the data. Set with -Ddb.url, e.g. to an H2 server
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static volatile String url = System.getProperty("db.url", FILE_URL);
 	/**
-	 * Default username for connecting to h2
+	 * Default username for connecting to h2, set with -Ddb.user
 	 */
-	private static String username = "sa";
+	private static String username = System.getProperty("db.user", "sa");
 	/**
-	 * Default password for connecting to h2
+	 * Default password for connecting to h2, set with -Ddb.password
 	 */
-	private static String password = "sa";
+	private static String password = System.getProperty("db.password", "sa");
 
 	/**
 	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
 	 */
 	private static JdbcDataSource pool = new JdbcDataSource();
 
+	/**
+	 * DataSources for shards 1 and up, created on first use
+	 */
+	private static Map<Integer, JdbcDataSource> shardPools = new ConcurrentHashMap<>();
+
+	/**
+	 * Number of shards used when no shard map exists yet, set with -Dshards=N
+	 */
+	private static int initialShardCount = Integer.getInteger("shards", 1);
+
+	/**
+	 * Bumped whenever the connections move to another database or the test database is reset
+	 */
+	private static final AtomicLong databaseVersion = new AtomicLong();
+
+	/**
+	 * Statements of SocialMedia.sql, parsed on the first in-memory reset
+	 */
+	private static List<String> schema;
+
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
@@ -58,17 +106,172 @@ public class ConnectionUtil {
 		return null;
 	}
 
+	/**
+	 * @param shard The shard number, 0 being the main database
+	 * @return an active connection to that shard's database
+	 */
+	public static Connection getConnection(int shard) {
+		if (shard == 0) {
+			return getConnection();
+		}
+		try {
+			return shardPools.computeIfAbsent(shard, ConnectionUtil::createShardPool).getConnection();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return the number of shards to create when the database has no shard map yet
+	 */
+	public static int initialShardCount() {
+		return initialShardCount;
+	}
+
+	/**
+	 * @return a number that changes whenever the database is switched or reset, so what was read
+	 * from it before can be told apart
+	 */
+	public static long databaseVersion() {
+		return databaseVersion.get();
+	}
+
+	/**
+	 * @return shard numbers (other than 0) that have a database file
+	 */
+	private static List<Integer> existingShards() throws IOException {
+		List<Integer> shards = new ArrayList<>(shardPools.keySet());
+		Path directory = Paths.get("./h2");
+		if (isLocalFile() && Files.isDirectory(directory)) {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "db-shard*.mv.db")) {
+				for (Path file : files) {
+					String name = file.getFileName().toString();
+					int shard = Integer.parseInt(name.substring("db-shard".length(), name.length() - ".mv.db".length()));
+					if (!shards.contains(shard)) shards.add(shard);
+				}
+			}
+		}
+		return shards;
+	}
+
+	private static JdbcDataSource createShardPool(int shard) {
+		JdbcDataSource shardPool = new JdbcDataSource();
+		// Shard databases sit next to the main one: ./h2/db-shard3, mem:<name>-shard3, tcp://host/<name>-shard3
+		int nameEnd = url.indexOf(';');
+		if (nameEnd < 0) nameEnd = url.length();
+		shardPool.setURL(url.substring(0, nameEnd) + "-shard" + shard + url.substring(nameEnd));
+		shardPool.setUser(username);
+		shardPool.setPassword(password);
+		return shardPool;
+	}
+
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
 	 * file in resources. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
-		try {
-			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
-		} catch (SQLException | FileNotFoundException e) {
+		if (!isLocalFile()) {
+			switchTo(FILE_URL);
+		}
+		try (Connection connection = getConnection();
+			 Reader sqlReader = new FileReader("src/main/resources/SocialMedia.sql")) {
+			RunScript.execute(connection, sqlReader);
+			// Shards other than 0 only hold messages, their tables are recreated on next use
+			for (int shard : existingShards()) {
+				try (Connection shardConnection = getConnection(shard);
+					 Statement statement = shardConnection.createStatement()) {
+					statement.execute("drop table if exists message_change");
+					statement.execute("drop table if exists message_outbox");
+					statement.execute("drop table if exists outbox_offset");
+					statement.execute("drop table if exists message");
+				}
+			}
+		} catch (SQLException | IOException e) {
+			e.printStackTrace();
+		}
+		databaseVersion.incrementAndGet();
+	}
+
+	/**
+	 * Same as resetTestDatabase, but moves every connection (shards included) to a new
+	 * in-memory database instead of rewriting the file one. The previous in-memory
+	 * database is shut down. SocialMedia.sql is only read and parsed once per JVM.
+	 */
+	public static void resetInMemoryTestDatabase() {
+		resetTestDatabase("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+	}
+
+	/**
+	 * Moves every connection to newUrl, e.g. a fresh database on a test H2 server, and
+	 * creates the tables of SocialMedia.sql there.
+	 */
+	public static void resetTestDatabase(String newUrl) {
+		switchTo(newUrl);
+		try (Connection connection = getConnection();
+			 Statement statement = connection.createStatement()) {
+			for (String sql : schema()) {
+				statement.execute(sql);
+			}
+		} catch (SQLException | IOException e) {
 			e.printStackTrace();
 		}
 	}
+
+	private static boolean isInMemory() {
+		return url.startsWith("jdbc:h2:mem:");
+	}
+
+	/**
+	 * @return whether the database is reached through an H2 server, so other processes may share it
+	 */
+	public static boolean isServerMode() {
+		return url.startsWith("jdbc:h2:tcp:") || url.startsWith("jdbc:h2:ssl:");
+	}
+
+	private static boolean isLocalFile() {
+		return !isInMemory() && !isServerMode();
+	}
+
+	/**
+	 * Points the main pool and every shard pool at a new database URL.
+	 */
+	private static synchronized void switchTo(String newUrl) {
+		if (isInMemory()) {
+			// DB_CLOSE_DELAY=-1 keeps an in-memory database alive until it is shut down
+			List<Connection> open = new ArrayList<>();
+			open.add(getConnection());
+			for (int shard : shardPools.keySet()) {
+				open.add(getConnection(shard));
+			}
+			for (Connection connection : open) {
+				try (Connection shutdown = connection;
+					 Statement statement = shutdown.createStatement()) {
+					statement.execute("SHUTDOWN");
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		url = newUrl;
+		pool.setURL(url);
+		shardPools.clear();
+		databaseVersion.incrementAndGet();
+	}
+
+	private static synchronized List<String> schema() throws IOException {
+		if (schema == null) {
+			List<String> statements = new ArrayList<>();
+			try (Reader sqlReader = new FileReader("src/main/resources/SocialMedia.sql")) {
+				ScriptReader scriptReader = new ScriptReader(sqlReader);
+				for (String sql = scriptReader.readStatement(); sql != null; sql = scriptReader.readStatement()) {
+					if (!sql.trim().isEmpty()) statements.add(sql);
+				}
+			}
+			schema = statements;
+		}
+		return schema;
+	}
 }
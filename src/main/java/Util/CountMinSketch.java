@@ -0,0 +1,87 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate counts of int keys in fixed memory (Cormode and Muthukrishnan's count-min sketch).
+ *
+ * depth rows of width counters; a key increments one counter per row, picked by a
+ * different hash each, and its estimate is the smallest of those counters. Collisions only
+ * add, so an estimate is never below the true count and, with probability 1 - e^-depth,
+ * at most e / width of all counted events above it. Counters are atomic, so adds from
+ * any number of threads need no lock.
+ */
+public class CountMinSketch {
+    private final int depth;
+    private final int mask;
+    private final int[] seeds;
+    private final AtomicLongArray counters;
+
+    /**
+     * @param width Counters per row, rounded up to a power of two.
+     * @param depth Rows, one hash each.
+     */
+    public CountMinSketch(int width, int depth) {
+        int rowWidth = rowWidth(width);
+        this.depth = depth;
+        this.mask = rowWidth - 1;
+        this.seeds = new int[depth];
+        for (int row = 0; row < depth; row++) {
+            seeds[row] = 0x9E3779B9 * (row + 1);
+        }
+        this.counters = new AtomicLongArray(rowWidth * depth);
+    }
+
+    /**
+     * Counts count more occurrences of key.
+     *
+     * @return The key's estimate after the add.
+     */
+    public long add(int key, long count) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.addAndGet(index(row, key), count));
+        }
+        return estimate;
+    }
+
+    /**
+     * @return An upper bound of the occurrences of key counted so far.
+     */
+    public long estimate(int key) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(row, key)));
+        }
+        return estimate;
+    }
+
+    /**
+     * @return Heap taken by the counters.
+     */
+    public long sizeBytes() {
+        return counters.length() * 8L;
+    }
+
+    /**
+     * @return Heap the counters of a sketch of this width and depth take, without building one.
+     */
+    public static long sizeBytes(int width, int depth) {
+        return (long) rowWidth(width) * depth * 8L;
+    }
+
+    private static int rowWidth(int width) {
+        return Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+    }
+
+    private int index(int row, int key) {
+        // murmur3 finalizer, so neighbouring IDs land far apart
+        int h = key ^ seeds[row];
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return row * (mask + 1) + (h & mask);
+    }
+}
@@ -0,0 +1,89 @@
+package Util;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The time by which the request running on this thread must be answered.
+ *
+ * The controller starts one per request and clears it afterwards. DAOs call apply on each
+ * statement, which turns the time left into a JDBC query timeout, or throws
+ * DeadlineExceededException at once if none is left, so a client that gave up does not
+ * keep a query running. Threads without a deadline (background jobs, tests) are unaffected.
+ */
+public final class Deadline {
+    // System.nanoTime() at which the current request expires, unset when there is no deadline
+    private static final ThreadLocal<Long> EXPIRES_AT = new ThreadLocal<>();
+
+    // SQLSTATE for a statement canceled by its query timeout
+    private static final String QUERY_CANCELED = "57014";
+
+    private Deadline() {
+    }
+
+    /**
+     * Gives the current thread's request timeoutMillis from now.
+     */
+    public static void start(long timeoutMillis) {
+        EXPIRES_AT.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    public static void clear() {
+        EXPIRES_AT.remove();
+    }
+
+    /**
+     * @return Nanoseconds left, Long.MAX_VALUE if there is no deadline.
+     */
+    public static long remainingNanos() {
+        Long expiresAt = EXPIRES_AT.get();
+        return expiresAt == null ? Long.MAX_VALUE : expiresAt - System.nanoTime();
+    }
+
+    /**
+     * @throws DeadlineExceededException if the deadline has passed.
+     */
+    public static void check() {
+        if (remainingNanos() <= 0) throw new DeadlineExceededException();
+    }
+
+    /**
+     * Limits statement to the time left, rounded up to whole seconds as JDBC requires.
+     *
+     * @throws DeadlineExceededException if the deadline has already passed.
+     */
+    public static void apply(Statement statement) throws SQLException {
+        long remaining = remainingNanos();
+        if (remaining == Long.MAX_VALUE) return;
+        if (remaining <= 0) throw new DeadlineExceededException();
+        statement.setQueryTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + 999_999_999L)));
+    }
+
+    /**
+     * Called from a DAO's SQLException handler: rethrows a query timeout as DeadlineExceededException,
+     * so it is not mistaken for an empty or failed result. Other errors are left to the caller.
+     */
+    public static void rethrowIfExpired(SQLException e) {
+        if (EXPIRES_AT.get() != null && QUERY_CANCELED.equals(e.getSQLState())) {
+            throw new DeadlineExceededException();
+        }
+    }
+
+    /**
+     * @return task, run under the calling thread's deadline on whichever thread runs it.
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        Long expiresAt = EXPIRES_AT.get();
+        if (expiresAt == null) return task;
+        return () -> {
+            EXPIRES_AT.set(expiresAt);
+            try {
+                return task.get();
+            } finally {
+                EXPIRES_AT.remove();
+            }
+        };
+    }
+}
@@ -0,0 +1,11 @@
+package Util;
+
+/**
+ * Thrown when the current request's Deadline passed before or while its database work ran.
+ * The work is abandoned; the controller answers 504.
+ */
+public class DeadlineExceededException extends RuntimeException {
+    public DeadlineExceededException() {
+        super("Request deadline exceeded");
+    }
+}
@@ -0,0 +1,103 @@
+package Util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token-bucket rate limiter with one bucket per key (account, IP, ...).
+ *
+ * Each bucket is a single AtomicLong holding the time at which it would be full again
+ * (the GCRA form of a token bucket), so acquiring a permit is one compare-and-set with
+ * no locks and no allocation. A bucket that is full carries no state worth keeping, so
+ * when the map grows past maxKeys the full buckets are dropped first.
+ */
+public class RateLimiter {
+    private final long nanosPerPermit;
+    private final long burstNanos;
+    private final int maxKeys;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param permitsPerSecond Sustained rate allowed per key.
+     * @param burst            Permits a key can use at once after being idle.
+     * @param maxKeys          Keys tracked before idle buckets are evicted.
+     */
+    public RateLimiter(double permitsPerSecond, int burst, int maxKeys) {
+        this.nanosPerPermit = (long) (1_000_000_000L / permitsPerSecond);
+        this.burstNanos = nanosPerPermit * burst;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Parses a "permitsPerSecond:burst" setting, e.g. "20:40".
+     */
+    public static RateLimiter parse(String setting, int maxKeys) {
+        String[] parts = setting.split(":");
+        double rate = Double.parseDouble(parts[0].trim());
+        int burst = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : (int) Math.max(1, rate);
+        return new RateLimiter(rate, burst, maxKeys);
+    }
+
+    /**
+     * Takes one permit for key if available.
+     *
+     * @return 0 if the permit was granted, otherwise the nanoseconds until one will be.
+     */
+    public long tryAcquire(String key) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong());
+            if (buckets.size() > maxKeys) evictIdle();
+        }
+
+        while (true) {
+            long now = System.nanoTime();
+            long fullAt = bucket.get();
+            // Spending a permit pushes the "full again" time one interval further out
+            long next = Math.max(fullAt, now) + nanosPerPermit;
+            long wait = next - now - burstNanos;
+            if (wait > 0) {
+                rejected.incrementAndGet();
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, next)) return 0;
+        }
+    }
+
+    /**
+     * @return How many requests were turned away so far.
+     */
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return Keys currently tracked.
+     */
+    public int trackedKeys() {
+        return buckets.size();
+    }
+
+    private void evictIdle() {
+        // One thread sweeps, the others carry on
+        if (!evicting.compareAndSet(false, true)) return;
+        try {
+            long now = System.nanoTime();
+            buckets.values().removeIf(b -> b.get() <= now);
+
+            // Every bucket is busy: drop arbitrary ones, which only makes those keys a little more lenient
+            Iterator<AtomicLong> it = buckets.values().iterator();
+            while (buckets.size() > maxKeys && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+}
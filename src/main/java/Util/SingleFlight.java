@@ -0,0 +1,105 @@
+package Util;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent loads of the same key into one.
+ *
+ * The first caller for a key runs the loader; callers arriving while it is in flight
+ * wait for and share its result instead of running their own. Nothing is kept once the
+ * load finishes, so this is not a cache: a later call loads again.
+ *
+ * Waiting callers get the same object as the leader, so results must not be modified.
+ *
+ * @param <K> The key type.
+ * @param <V> The loaded value type.
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+
+    /**
+     * Runs loader for key, or joins the load already running for it. A caller with a
+     * Deadline waits for the shared load only until its own deadline, and if the leader
+     * gave up on its deadline the callers waiting on it load again under theirs.
+     *
+     * @return The loaded value, which may be null.
+     */
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            collapsed.incrementAndGet();
+            try {
+                return await(running);
+            } catch (LeaderExpiredException e) {
+                // The leader's deadline is not ours, try again with whoever leads now
+                return load(key, loader);
+            }
+        }
+
+        loads.incrementAndGet();
+        V value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            // Removed first, so a follower retrying after a failure never joins this load again
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+        inFlight.remove(key, mine);
+        mine.complete(value);
+        return value;
+    }
+
+    private V await(CompletableFuture<V> running) {
+        long remaining = Deadline.remainingNanos();
+        try {
+            if (remaining == Long.MAX_VALUE) return running.join();
+            if (remaining <= 0) throw new DeadlineExceededException();
+            return running.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (CompletionException | ExecutionException e) {
+            if (e.getCause() instanceof DeadlineExceededException) throw new LeaderExpiredException();
+            // Rethrow the leader's failure as it was thrown
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    // The load a caller waited on ran out of the leader's time, not the caller's
+    private static final class LeaderExpiredException extends RuntimeException {
+        LeaderExpiredException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * @return Loads that actually ran.
+     */
+    public long loadCount() {
+        return loads.get();
+    }
+
+    /**
+     * @return Calls that joined a load already in flight instead of running one.
+     */
+    public long collapsedCount() {
+        return collapsed.get();
+    }
+}
@@ -0,0 +1,138 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Most frequent int keys over a sliding time window, in bounded memory.
+ *
+ * The window is a ring of buckets of bucketMillis each, and every bucket has its own
+ * CountMinSketch and TopK. An event goes to the bucket of the current time; the first
+ * event of a new period swaps a fresh bucket into the slot with a compareAndSet, which
+ * drops the bucket that period pushed out of the window, so rotation takes no lock. A
+ * query ranks the keys kept by any live bucket by the sum of their live estimates.
+ *
+ * Memory is bucketCount sketches and heaps whatever the number of distinct keys. The
+ * window covers the current, partial bucket and the bucketCount - 1 before it, so it
+ * slides in bucketMillis steps.
+ */
+public class SlidingTopK {
+    /**
+     * One ranked key.
+     */
+    public static final class Entry {
+        public final int key;
+        public final long count;
+
+        public Entry(int key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+
+    private static final class Bucket {
+        final long period;
+        final CountMinSketch sketch;
+        final TopK top;
+
+        Bucket(long period, int width, int depth, int k) {
+            this.period = period;
+            this.sketch = new CountMinSketch(width, depth);
+            this.top = new TopK(k);
+        }
+    }
+
+    private final long bucketMillis;
+    private final int width;
+    private final int depth;
+    private final int k;
+    private final LongSupplier clock;
+    private final AtomicReferenceArray<Bucket> ring;
+    private final AtomicLong events = new AtomicLong();
+
+    /**
+     * @param bucketMillis Time covered by one bucket.
+     * @param bucketCount  Buckets in the window.
+     * @param width        Counters per sketch row.
+     * @param depth        Sketch rows.
+     * @param k            Keys kept per bucket, the most a query can return.
+     * @param clock        Current time in milliseconds, e.g. System::currentTimeMillis.
+     */
+    public SlidingTopK(long bucketMillis, int bucketCount, int width, int depth, int k, LongSupplier clock) {
+        this.bucketMillis = bucketMillis;
+        this.width = width;
+        this.depth = depth;
+        this.k = k;
+        this.clock = clock;
+        this.ring = new AtomicReferenceArray<>(bucketCount);
+    }
+
+    /**
+     * Counts one event for key at the current time.
+     */
+    public void record(int key) {
+        Bucket bucket = current(clock.getAsLong() / bucketMillis);
+        if (bucket == null) return;
+        bucket.top.offer(key, bucket.sketch.add(key, 1));
+        events.incrementAndGet();
+    }
+
+    private Bucket current(long period) {
+        int slot = (int) (period % ring.length());
+        while (true) {
+            Bucket bucket = ring.get(slot);
+            if (bucket != null && bucket.period == period) return bucket;
+            // The clock went back past a rotation, drop the event rather than the newer bucket
+            if (bucket != null && bucket.period > period) return null;
+            Bucket fresh = new Bucket(period, width, depth, k);
+            if (ring.compareAndSet(slot, bucket, fresh)) return fresh;
+        }
+    }
+
+    /**
+     * @return Up to limit keys with the highest estimated counts in the window, highest first.
+     */
+    public List<Entry> top(int limit) {
+        long now = clock.getAsLong() / bucketMillis;
+        List<Bucket> live = new ArrayList<>(ring.length());
+        Set<Integer> candidates = new LinkedHashSet<>();
+        for (int slot = 0; slot < ring.length(); slot++) {
+            Bucket bucket = ring.get(slot);
+            if (bucket == null || bucket.period <= now - ring.length() || bucket.period > now) continue;
+            live.add(bucket);
+            for (int key : bucket.top.keys()) candidates.add(key);
+        }
+
+        List<Entry> ranked = new ArrayList<>(candidates.size());
+        for (int key : candidates) {
+            long count = 0;
+            for (Bucket bucket : live) {
+                count += bucket.sketch.estimate(key);
+            }
+            ranked.add(new Entry(key, count));
+        }
+        ranked.sort(Comparator.comparingLong((Entry e) -> e.count).reversed().thenComparingInt(e -> e.key));
+        return ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked;
+    }
+
+    /**
+     * @return The most heap the window can take, when every bucket is in use.
+     */
+    public long maxSizeBytes() {
+        return ring.length() * (CountMinSketch.sizeBytes(width, depth) + TopK.sizeBytes(k));
+    }
+
+    public long eventCount() {
+        return events.get();
+    }
+
+    public int k() {
+        return k;
+    }
+}
@@ -0,0 +1,141 @@
+package Util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Secondary index from an int key (e.g. posted_by) to a sorted, growable list of int IDs.
+ *
+ * Readers never lock: each list publishes an immutable (array, size) snapshot through a
+ * volatile field. Writers to the same key are serialized on that key's list only. Appending
+ * an ID larger than every existing one (the normal case for auto-increment IDs) writes past
+ * the published size and is amortized O(1); anything else copies the array so snapshots
+ * already handed out never change.
+ */
+public class SortedIdIndex {
+    private static final int[] NO_IDS = new int[0];
+
+    private final AtomicPagedArray<IdList> listsByKey = new AtomicPagedArray<>();
+    // Highest key ever added, bounds forEachKey
+    private final AtomicInteger maxKey = new AtomicInteger(-1);
+
+    /**
+     * @return A copy of the sorted IDs for key, or an empty array.
+     */
+    public int[] get(int key) {
+        IdList list = listsByKey.get(key);
+        if (list == null) return NO_IDS;
+        Snapshot snap = list.snapshot;
+        return snap.size == 0 ? NO_IDS : Arrays.copyOf(snap.ids, snap.size);
+    }
+
+    /**
+     * @return The number of IDs under key.
+     */
+    public int size(int key) {
+        IdList list = listsByKey.get(key);
+        return list == null ? 0 : list.snapshot.size;
+    }
+
+    /**
+     * @return true if key has ever been added or touched, even if all of its IDs were removed since.
+     */
+    public boolean contains(int key) {
+        return listsByKey.get(key) != null;
+    }
+
+    /**
+     * Marks key as known without adding any ID.
+     */
+    public void touch(int key) {
+        list(key);
+    }
+
+    /**
+     * Adds id under key, keeping the list sorted. Adding an existing id does nothing.
+     */
+    public void add(int key, int id) {
+        list(key).add(id);
+    }
+
+    /**
+     * Removes id from key. The key stays known (with an empty list) afterwards.
+     */
+    public void remove(int key, int id) {
+        IdList list = listsByKey.get(key);
+        if (list != null) list.remove(id);
+    }
+
+    /**
+     * @return Bytes of int[] capacity held for key, excluding object headers.
+     */
+    public long capacityBytes(int key) {
+        IdList list = listsByKey.get(key);
+        return list == null ? 0 : (long) list.snapshot.ids.length * Integer.BYTES;
+    }
+
+    /**
+     * Visits every known key in increasing order.
+     */
+    public void forEachKey(IntConsumer consumer) {
+        listsByKey.forEach(maxKey.get(), (key, list) -> consumer.accept(key));
+    }
+
+    private IdList list(int key) {
+        IdList list = listsByKey.get(key);
+        if (list != null) return list;
+        maxKey.accumulateAndGet(key, Math::max);
+        return listsByKey.computeIfAbsent(key, k -> new IdList());
+    }
+
+    private static final class Snapshot {
+        final int[] ids;
+        final int size;
+
+        Snapshot(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+    }
+
+    private static final class IdList {
+        volatile Snapshot snapshot = new Snapshot(NO_IDS, 0);
+
+        synchronized void add(int id) {
+            Snapshot current = snapshot;
+            int size = current.size;
+            int[] ids = current.ids;
+
+            if (size == 0 || id > ids[size - 1]) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, Math.max(4, size * 2));
+                }
+                // Slots past size are invisible to readers until the new snapshot is published
+                ids[size] = id;
+                snapshot = new Snapshot(ids, size + 1);
+                return;
+            }
+
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) return;
+            int insertAt = -pos - 1;
+            int[] next = new int[Math.max(ids.length, size + 1)];
+            System.arraycopy(ids, 0, next, 0, insertAt);
+            next[insertAt] = id;
+            System.arraycopy(ids, insertAt, next, insertAt + 1, size - insertAt);
+            snapshot = new Snapshot(next, size + 1);
+        }
+
+        synchronized void remove(int id) {
+            Snapshot current = snapshot;
+            int pos = Arrays.binarySearch(current.ids, 0, current.size, id);
+            if (pos < 0) return;
+
+            int[] next = new int[current.ids.length];
+            System.arraycopy(current.ids, 0, next, 0, pos);
+            System.arraycopy(current.ids, pos + 1, next, pos, current.size - pos - 1);
+            snapshot = new Snapshot(next, current.size - 1);
+        }
+    }
+}
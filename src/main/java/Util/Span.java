@@ -0,0 +1,83 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One timed unit of work in a trace: a request, a service call or a statement.
+ *
+ * Spans are opened with Tracing and closed with try-with-resources. A request that was not
+ * sampled gets NOOP everywhere, which records nothing, so instrumented code never checks.
+ */
+public final class Span implements AutoCloseable {
+    // OTLP span kinds
+    static final int KIND_INTERNAL = 1;
+    static final int KIND_SERVER = 2;
+    static final int KIND_CLIENT = 3;
+
+    static final Span NOOP = new Span(null, 0, 0, 0, 0, null, 0);
+
+    // Span that was current when this one opened, made current again when it closes
+    final Span enclosing;
+    final long traceIdHigh;
+    final long traceIdLow;
+    final long spanId;
+    // 0 for the root of a trace
+    final long parentSpanId;
+    final String name;
+    final int kind;
+    final long startEpochNanos;
+    private final long startNanos;
+    long durationNanos;
+    // Alternating keys and values, null until the first tag
+    List<String> attributes;
+
+    Span(Span enclosing, long traceIdHigh, long traceIdLow, long spanId, long parentSpanId, String name, int kind) {
+        this.enclosing = enclosing;
+        this.traceIdHigh = traceIdHigh;
+        this.traceIdLow = traceIdLow;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.kind = kind;
+        this.startEpochNanos = System.currentTimeMillis() * 1_000_000L;
+        this.startNanos = System.nanoTime();
+    }
+
+    public boolean isSampled() {
+        return this != NOOP;
+    }
+
+    /**
+     * Adds an attribute. Does nothing on an unsampled span.
+     */
+    public Span tag(String key, Object value) {
+        if (this == NOOP) return this;
+        if (attributes == null) attributes = new ArrayList<>(4);
+        attributes.add(key);
+        attributes.add(String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * @return The W3C traceparent header value naming this span, e.g. for a response header.
+     */
+    public String traceparent() {
+        return "00-" + hex(traceIdHigh) + hex(traceIdLow) + "-" + hex(spanId) + "-01";
+    }
+
+    /**
+     * Ends the span and hands it to the exporter.
+     */
+    @Override
+    public void close() {
+        if (this == NOOP) return;
+        durationNanos = System.nanoTime() - startNanos;
+        Tracing.end(this);
+    }
+
+    static String hex(long id) {
+        String digits = Long.toHexString(id);
+        return "0000000000000000".substring(digits.length()) + digits;
+    }
+}
@@ -0,0 +1,189 @@
+package Util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ships finished spans off the request threads.
+ *
+ * Spans are queued without blocking (and dropped, counted, when the queue is full) and a
+ * daemon thread drains them in batches. Each batch is kept in an in-process collector of the
+ * most recent spans, served by GET /admin/traces, and, with -Dtracing.file, appended to that
+ * file as one OTLP/JSON ExportTraceServiceRequest per line, the format the OpenTelemetry
+ * Collector's file receiver and otlpjsonfile tooling read.
+ */
+public class SpanExporter {
+    private static final int MAX_BATCH = 512;
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final BlockingQueue<Span> queue;
+    private final int collectorSize;
+    private final Deque<Span> recent = new ArrayDeque<>();
+    private final OutputStream file;
+    private final AtomicLong exported = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param queueSize     Spans waiting to be exported before new ones are dropped.
+     * @param collectorSize Most recent spans kept in process.
+     * @param file          File the spans are appended to, null for none.
+     */
+    public SpanExporter(int queueSize, int collectorSize, OutputStream file) {
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.collectorSize = collectorSize;
+        this.file = file;
+        Thread worker = new Thread(this::run, "span-exporter");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Exporter configured with -Dtracing.queueSize, -Dtracing.collectorSize and -Dtracing.file.
+     */
+    static SpanExporter fromSystemProperties() {
+        OutputStream file = null;
+        String path = System.getProperty("tracing.file");
+        if (path != null) {
+            try {
+                file = new BufferedOutputStream(new FileOutputStream(path, true));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return new SpanExporter(Integer.getInteger("tracing.queueSize", 8_192),
+                Integer.getInteger("tracing.collectorSize", 1_000), file);
+    }
+
+    void offer(Span span) {
+        if (!queue.offer(span)) dropped.incrementAndGet();
+    }
+
+    private void run() {
+        List<Span> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                synchronized (recent) {
+                    for (Span span : batch) {
+                        if (recent.size() == collectorSize) recent.removeFirst();
+                        recent.addLast(span);
+                    }
+                }
+                if (file != null) {
+                    write(batch, file);
+                    file.write('\n');
+                    file.flush();
+                }
+                exported.addAndGet(batch.size());
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * @return The most recently exported spans, oldest first.
+     */
+    public List<Span> recent() {
+        synchronized (recent) {
+            return new ArrayList<>(recent);
+        }
+    }
+
+    /**
+     * Writes the most recently exported spans to out as one OTLP/JSON request.
+     */
+    public void writeRecent(OutputStream out) throws IOException {
+        write(recent(), out);
+    }
+
+    /**
+     * Writes spans to out as an OTLP/JSON ExportTraceServiceRequest, without closing out.
+     */
+    static void write(List<Span> spans, OutputStream out) throws IOException {
+        try (JsonGenerator json = JSON.createGenerator(out)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.writeStartObject();
+            json.writeArrayFieldStart("resourceSpans");
+            json.writeStartObject();
+            json.writeObjectFieldStart("resource");
+            json.writeArrayFieldStart("attributes");
+            writeAttribute(json, "service.name", "social-media");
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeArrayFieldStart("scopeSpans");
+            json.writeStartObject();
+            json.writeObjectFieldStart("scope");
+            json.writeStringField("name", "Util.Tracing");
+            json.writeEndObject();
+            json.writeArrayFieldStart("spans");
+            for (Span span : spans) {
+                writeSpan(json, span);
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    private static void writeSpan(JsonGenerator json, Span span) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("traceId", Span.hex(span.traceIdHigh) + Span.hex(span.traceIdLow));
+        json.writeStringField("spanId", Span.hex(span.spanId));
+        if (span.parentSpanId != 0) json.writeStringField("parentSpanId", Span.hex(span.parentSpanId));
+        json.writeStringField("name", span.name);
+        json.writeNumberField("kind", span.kind);
+        // OTLP/JSON carries 64 bit integers as strings
+        json.writeStringField("startTimeUnixNano", Long.toString(span.startEpochNanos));
+        json.writeStringField("endTimeUnixNano", Long.toString(span.startEpochNanos + span.durationNanos));
+        json.writeArrayFieldStart("attributes");
+        if (span.attributes != null) {
+            for (int i = 0; i < span.attributes.size(); i += 2) {
+                writeAttribute(json, span.attributes.get(i), span.attributes.get(i + 1));
+            }
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    private static void writeAttribute(JsonGenerator json, String key, String value) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("key", key);
+        json.writeObjectFieldStart("value");
+        json.writeStringField("stringValue", value);
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+    /**
+     * Counters for GET /admin/metrics.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("exported", exported.get());
+        stats.put("dropped", dropped.get());
+        stats.put("queued", queue.size());
+        return stats;
+    }
+}
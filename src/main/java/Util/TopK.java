@@ -0,0 +1,115 @@
+package Util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The k keys with the highest counts offered so far, for heavy hitters next to a CountMinSketch.
+ *
+ * An indexed min-heap: the smallest kept count is at the root, so a new key either beats
+ * it and takes its place or is dropped, and a kept key whose count grew moves down in
+ * O(log k). Once full, keys that do not beat the smallest count are turned away by a
+ * volatile read without taking the lock, which is most offers of a long-tailed stream.
+ */
+public class TopK {
+    private final int k;
+    private final int[] keys;
+    private final long[] counts;
+    // Heap slot of each kept key
+    private final Map<Integer, Integer> slots;
+    private int size;
+    // Smallest kept count once full, 0 before
+    private volatile long floor;
+
+    public TopK(int k) {
+        this.k = k;
+        this.keys = new int[k];
+        this.counts = new long[k];
+        this.slots = new HashMap<>(k * 2);
+    }
+
+    /**
+     * Offers key with its current count, e.g. a sketch estimate. Counts of a key only grow.
+     */
+    public void offer(int key, long count) {
+        if (count <= floor) return;
+        synchronized (this) {
+            Integer slot = slots.get(key);
+            if (slot != null) {
+                if (count > counts[slot]) {
+                    counts[slot] = count;
+                    siftDown(slot);
+                }
+            } else if (size < k) {
+                keys[size] = key;
+                counts[size] = count;
+                slots.put(key, size);
+                siftUp(size++);
+            } else if (count > counts[0]) {
+                slots.remove(keys[0]);
+                keys[0] = key;
+                counts[0] = count;
+                slots.put(key, 0);
+                siftDown(0);
+            }
+            if (size == k) floor = counts[0];
+        }
+    }
+
+    /**
+     * @return The kept keys, in no particular order.
+     */
+    public synchronized int[] keys() {
+        int[] kept = new int[size];
+        System.arraycopy(keys, 0, kept, 0, size);
+        return kept;
+    }
+
+    private void siftUp(int slot) {
+        while (slot > 0) {
+            int parent = (slot - 1) / 2;
+            if (counts[parent] <= counts[slot]) return;
+            swap(slot, parent);
+            slot = parent;
+        }
+    }
+
+    private void siftDown(int slot) {
+        while (true) {
+            int smallest = slot;
+            int left = 2 * slot + 1;
+            int right = left + 1;
+            if (left < size && counts[left] < counts[smallest]) smallest = left;
+            if (right < size && counts[right] < counts[smallest]) smallest = right;
+            if (smallest == slot) return;
+            swap(slot, smallest);
+            slot = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int key = keys[a];
+        long count = counts[a];
+        keys[a] = keys[b];
+        counts[a] = counts[b];
+        keys[b] = key;
+        counts[b] = count;
+        slots.put(keys[a], a);
+        slots.put(keys[b], b);
+    }
+
+    /**
+     * @return Heap taken by the kept keys, roughly.
+     */
+    public long sizeBytes() {
+        return sizeBytes(k);
+    }
+
+    /**
+     * @return Heap a TopK of k keys takes, roughly, without building one.
+     */
+    public static long sizeBytes(int k) {
+        // Two arrays plus a boxed map entry per key
+        return k * (4L + 8L + 48L);
+    }
+}
@@ -0,0 +1,160 @@
+package Util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Request tracing: spans around controller handlers, service methods and DAO statements.
+ *
+ * The controller opens one root span per request and decides there whether the request is
+ * sampled (-Dtracing.sampleRate, default 0.01, or the sampled flag of an incoming W3C
+ * traceparent header). Service and DAO spans are children of the span current on the
+ * thread and are only created inside a sampled request, so an unsampled request costs one
+ * random number and a ThreadLocal read per instrumented call. Finished spans go to a
+ * SpanExporter, which writes them on its own thread.
+ */
+public final class Tracing {
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static volatile double sampleRate = Double.parseDouble(System.getProperty("tracing.sampleRate", "0.01"));
+    private static final SpanExporter EXPORTER = SpanExporter.fromSystemProperties();
+
+    // Literals and runs of whitespace, replaced to group statements that differ only in values
+    private static final Pattern LITERALS = Pattern.compile("'(?:[^']|'')*'|\\b\\d+\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final int MAX_FINGERPRINTS = 1_000;
+    private static final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    private Tracing() {
+    }
+
+    /**
+     * Opens the root span of a request, sampled or not.
+     *
+     * @param traceparent The request's traceparent header, may be null. A valid one makes this
+     *                    span part of the caller's trace and follows its sampling decision.
+     */
+    public static Span startRequest(String name, String traceparent) {
+        if (traceparent != null && traceparent.length() == 55 && traceparent.startsWith("00-")) {
+            try {
+                long traceIdHigh = Long.parseUnsignedLong(traceparent.substring(3, 19), 16);
+                long traceIdLow = Long.parseUnsignedLong(traceparent.substring(19, 35), 16);
+                long parentSpanId = Long.parseUnsignedLong(traceparent.substring(36, 52), 16);
+                if ((Integer.parseInt(traceparent.substring(53, 55), 16) & 1) == 0) return Span.NOOP;
+                return open(new Span(null, traceIdHigh, traceIdLow, newId(), parentSpanId, name, Span.KIND_SERVER));
+            } catch (NumberFormatException e) {
+                // Malformed, start a trace of our own
+            }
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() >= sampleRate) return Span.NOOP;
+        return open(new Span(null, random.nextLong(), newId(), newId(), 0, name, Span.KIND_SERVER));
+    }
+
+    /**
+     * Opens a child of the current span, or returns NOOP outside a sampled request.
+     */
+    public static Span start(String name) {
+        return start(name, Span.KIND_INTERNAL);
+    }
+
+    private static Span start(String name, int kind) {
+        Span parent = CURRENT.get();
+        if (parent == null) return Span.NOOP;
+        return open(new Span(parent, parent.traceIdHigh, parent.traceIdLow, newId(), parent.spanId, name, kind));
+    }
+
+    private static Span open(Span span) {
+        CURRENT.set(span);
+        return span;
+    }
+
+    static void end(Span span) {
+        if (span.enclosing == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(span.enclosing);
+        }
+        EXPORTER.offer(span);
+    }
+
+    /**
+     * @return statement, timing each execution as a child span tagged with the statement's
+     *         fingerprint when the current request is sampled. Otherwise statement itself.
+     */
+    public static PreparedStatement statement(PreparedStatement statement, String sql) {
+        if (CURRENT.get() == null) return statement;
+        String fingerprint = fingerprint(sql);
+        String name = "SQL " + fingerprint.substring(0, Math.max(0, fingerprint.indexOf(' '))).toUpperCase();
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+                    if (!method.getName().startsWith("execute")) return invoke(statement, method, args);
+                    try (Span span = start(name, Span.KIND_CLIENT)) {
+                        span.tag("db.system", "h2").tag("db.statement", fingerprint);
+                        return invoke(statement, method, args);
+                    }
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return sql with literals replaced by ? and whitespace collapsed, e.g. for grouping statements.
+     */
+    public static String fingerprint(String sql) {
+        String fingerprint = fingerprints.get(sql);
+        if (fingerprint != null) return fingerprint;
+        fingerprint = WHITESPACE.matcher(LITERALS.matcher(sql).replaceAll("?")).replaceAll(" ").trim();
+        if (fingerprints.size() < MAX_FINGERPRINTS) fingerprints.put(sql, fingerprint);
+        return fingerprint;
+    }
+
+    /**
+     * @return task, run as part of the calling thread's trace on whichever thread runs it.
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        Span parent = CURRENT.get();
+        if (parent == null) return task;
+        return () -> {
+            CURRENT.set(parent);
+            try {
+                return task.get();
+            } finally {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    public static double sampleRate() {
+        return sampleRate;
+    }
+
+    public static void setSampleRate(double rate) {
+        sampleRate = rate;
+    }
+
+    public static SpanExporter exporter() {
+        return EXPORTER;
+    }
+
+    private static long newId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+}
@@ -0,0 +1,116 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One connection and one transaction for everything the request on this thread reads and writes.
+ *
+ * The controller begins a unit per request, commits it when the handler returns and closes
+ * it afterwards, which rolls back whatever was not committed. The DAOs' JdbcTemplate asks
+ * for the unit's connection and only opens its own when the thread has no unit (background
+ * jobs, tests, bulk routes). The connection is opened on first use, so a request answered
+ * from the caches opens none; each shard gets its own, and a commit is not atomic across
+ * shards.
+ *
+ * Caches must not show a write that may still roll back, so the service hands its cache
+ * updates to afterCommit, which runs them once the unit has committed, or at once on a
+ * thread without a unit.
+ */
+public final class UnitOfWork implements AutoCloseable {
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    // Connections by shard, with auto-commit off
+    private final Map<Integer, Connection> connections = new LinkedHashMap<>();
+    private final List<Runnable> afterCommit = new ArrayList<>();
+
+    private UnitOfWork() {
+    }
+
+    /**
+     * Starts a unit of work on the current thread, to be closed by the caller.
+     *
+     * @throws IllegalStateException if the thread already has one.
+     */
+    public static UnitOfWork begin() {
+        if (CURRENT.get() != null) throw new IllegalStateException("unit of work already open on this thread");
+        UnitOfWork unit = new UnitOfWork();
+        CURRENT.set(unit);
+        return unit;
+    }
+
+    /**
+     * @return The current thread's unit of work, or null if there is none.
+     */
+    public static UnitOfWork current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return The current unit's connection to shard, opened on first use, or null if the thread has no unit.
+     */
+    public static Connection connection(int shard) throws SQLException {
+        UnitOfWork unit = CURRENT.get();
+        if (unit == null) return null;
+        Connection connection = unit.connections.get(shard);
+        if (connection == null) {
+            connection = ConnectionUtil.getConnection(shard);
+            if (connection == null) throw new SQLException("No connection to shard " + shard);
+            connection.setAutoCommit(false);
+            unit.connections.put(shard, connection);
+        }
+        return connection;
+    }
+
+    /**
+     * Runs action once the current unit has committed, or now if the thread has no unit.
+     * Dropped if the unit rolls back.
+     */
+    public static void afterCommit(Runnable action) {
+        UnitOfWork unit = CURRENT.get();
+        if (unit == null) {
+            action.run();
+        } else {
+            unit.afterCommit.add(action);
+        }
+    }
+
+    /**
+     * Commits every connection the unit opened, then runs the afterCommit actions. The unit
+     * stays open, later statements start a new transaction.
+     *
+     * @throws SQLException if a commit failed; the connections after it are not committed.
+     */
+    public void commit() throws SQLException {
+        for (Connection connection : connections.values()) {
+            connection.commit();
+        }
+        List<Runnable> actions = new ArrayList<>(afterCommit);
+        afterCommit.clear();
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    /**
+     * Rolls back what was not committed, closes the connections and ends the unit.
+     */
+    @Override
+    public void close() {
+        CURRENT.remove();
+        afterCommit.clear();
+        for (Connection connection : connections.values()) {
+            try {
+                connection.rollback();
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        connections.clear();
+    }
+}
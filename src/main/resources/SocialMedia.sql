@@ -1,3 +1,8 @@
+drop table if exists shard_bucket;
+drop table if exists message_change;
+drop table if exists message_outbox;
+drop table if exists outbox_offset;
+drop table if exists message_stats;
 drop table if exists message;
 drop table if exists account;
 create table account (
@@ -10,8 +15,38 @@ create table message (
     posted_by int,
     message_text varchar(255),
     time_posted_epoch bigint,
+    deleted_at bigint,
     foreign key (posted_by) references  account(account_id)
 );
+create index message_deleted_at_idx on message (deleted_at);
+create index message_time_idx on message (time_posted_epoch, message_id);
+create index message_posted_by_time_idx on message (posted_by, time_posted_epoch, message_id);
+create table message_change (
+    seq bigint primary key auto_increment,
+    message_id int,
+    posted_by int,
+    time_posted_epoch bigint,
+    changed_at bigint
+);
+create index message_change_changed_at_idx on message_change (changed_at);
+create table message_outbox (
+    seq bigint primary key auto_increment,
+    event varchar(16),
+    message_id int,
+    posted_by int,
+    message_text varchar(255),
+    time_posted_epoch bigint,
+    created_at bigint
+);
+create index message_outbox_created_at_idx on message_outbox (created_at);
+create table outbox_offset (
+    sink varchar(255) primary key,
+    seq bigint
+);
+create table message_stats (
+    message_id int primary key,
+    likes bigint
+);
 
 insert into account (username, password) values ('testuser1', 'password');
 insert into message (posted_by, message_text, time_posted_epoch) values (1,'test message 1',1669947792);
@@ -0,0 +1,78 @@
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+public class AccountMessageCacheTest {
+    MessageService messageService;
+
+    /**
+     * Before every test, reset the database and build a service without the message index,
+     * so by-account reads go through the per-account cache.
+     */
+    @Before
+    public void setUp() {
+        System.setProperty("messageIndex", "false");
+        System.setProperty("messagePurge", "false");
+        ConnectionUtil.resetInMemoryTestDatabase();
+        messageService = new MessageService();
+    }
+
+    @After
+    public void tearDown() {
+        messageService.close();
+        System.clearProperty("messageIndex");
+        System.clearProperty("messagePurge");
+    }
+
+    @SuppressWarnings("unchecked")
+    private long stat(String name) {
+        Map<String, Object> cache = (Map<String, Object>) messageService.metrics().get("accountMessageCache");
+        return ((Number) cache.get(name)).longValue();
+    }
+
+    /**
+     * Reading account 1's messages twice
+     *
+     * Expected: the second read is served from the cache.
+     */
+    @Test
+    public void repeatedReadIsCached() {
+        List<Message> first = messageService.getMessagesByAccountId(1);
+        List<Message> second = messageService.getMessagesByAccountId(1);
+
+        Assert.assertEquals(1, first.size());
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, stat("hits"));
+        Assert.assertEquals(1, stat("misses"));
+    }
+
+    /**
+     * Inserting, updating and deleting account 1's messages between reads
+     *
+     * Expected: every read after a write sees it.
+     */
+    @Test
+    public void writesInvalidateTheAccount() {
+        messageService.getMessagesByAccountId(1);
+
+        Message created = messageService.createMessage(new Message(1, "second message", 1669947793));
+        Assert.assertEquals(2, messageService.getMessagesByAccountId(1).size());
+
+        messageService.updateMessageText(created.getMessage_id(), "edited");
+        Assert.assertEquals("edited", messageService.getMessagesByAccountId(1).get(1).getMessage_text());
+
+        messageService.deleteMessageById(1);
+        List<Message> remaining = messageService.getMessagesByAccountId(1);
+        Assert.assertEquals(1, remaining.size());
+        Assert.assertEquals(created.getMessage_id(), remaining.get(0).getMessage_id());
+        Assert.assertEquals(3, stat("versionBumps"));
+    }
+}
@@ -0,0 +1,120 @@
+package Benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * MessageDAO reads through the JDBC template and position-resolved row mapper, against the
+ * code they replaced: columns looked up by name on every row, with the connection,
+ * statement and result set of each call left open (byNameUnclosed) or closed (byNameClosed).
+ * Runs on a private in-memory database. H2 keeps getting faster for the first ten or so
+ * seconds of a fork, so shorter warmups or a single fork mostly measure that ramp.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 10, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 3, jvmArgs = "-Xmx1g")
+public class DaoMappingBenchmark {
+    private static final int SEEDED = 1_000;
+    private static final String BY_ID = "SELECT * FROM Message WHERE message_id = ? AND deleted_at IS NULL";
+    private static final String ALL = "SELECT * FROM Message USE INDEX () WHERE deleted_at IS NULL ORDER BY message_id";
+
+    MessageDAO messageDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        messageDAO = new MessageDAO();
+        for (int i = 1; i < SEEDED; i++) {
+            messageDAO.insertMessage(new Message(1, "seed message " + i, 1669947792L + i));
+        }
+    }
+
+    private static Message byName(ResultSet rs) throws SQLException {
+        return new Message(
+                rs.getInt("message_id"),
+                rs.getInt("posted_by"),
+                rs.getString("message_text"),
+                rs.getLong("time_posted_epoch")
+        );
+    }
+
+    private static int randomId() {
+        return ThreadLocalRandom.current().nextInt(1, SEEDED + 1);
+    }
+
+    @Benchmark
+    public Message readByIdTemplate() {
+        return messageDAO.getMessageId(randomId());
+    }
+
+    @Benchmark
+    public Message readByIdByNameClosed() throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement statement = connection.prepareStatement(BY_ID)) {
+            statement.setInt(1, randomId());
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? byName(rs) : null;
+            }
+        }
+    }
+
+    @Benchmark
+    public Message readByIdByNameUnclosed() throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement statement = connection.prepareStatement(BY_ID);
+        statement.setInt(1, randomId());
+        ResultSet rs = statement.executeQuery();
+        return rs.next() ? byName(rs) : null;
+    }
+
+    @Benchmark
+    public List<Message> readAllTemplate() {
+        return messageDAO.getAllMessages();
+    }
+
+    @Benchmark
+    public List<Message> readAllByNameClosed() throws SQLException {
+        List<Message> messages = new ArrayList<>();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement statement = connection.prepareStatement(ALL);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) messages.add(byName(rs));
+        }
+        return messages;
+    }
+
+    @Benchmark
+    public List<Message> readAllByNameUnclosed() throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement statement = connection.prepareStatement(ALL);
+        ResultSet rs = statement.executeQuery();
+        List<Message> messages = new ArrayList<>();
+        while (rs.next()) messages.add(byName(rs));
+        return messages;
+    }
+}
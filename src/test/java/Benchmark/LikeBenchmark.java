@@ -0,0 +1,87 @@
+package Benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageStatsDAO;
+import Service.LikeCounter;
+import Util.ConnectionUtil;
+
+/**
+ * Eight threads liking one hot message: a LongAdder counter flushed in the background
+ * against an UPDATE ... SET likes = likes + 1 per like. Runs on a private in-memory database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(8)
+public class LikeBenchmark {
+    private static final int HOT_MESSAGE = 1;
+
+    LikeCounter counter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        MessageStatsDAO statsDAO = new MessageStatsDAO();
+        statsDAO.addLikes(Collections.singletonMap(HOT_MESSAGE, 0L));
+        counter = new LikeCounter(statsDAO, 500);
+        counter.start(1_000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        counter.close();
+    }
+
+    /**
+     * Each benchmark thread's own connection and statement for the UPDATE per like.
+     */
+    @State(Scope.Thread)
+    public static class Updater {
+        Connection connection;
+        PreparedStatement update;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            connection = ConnectionUtil.getConnection();
+            update = connection.prepareStatement("UPDATE message_stats SET likes = likes + 1 WHERE message_id = ?");
+            update.setInt(1, HOT_MESSAGE);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SQLException {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public void stripedCounter() {
+        counter.like(HOT_MESSAGE);
+    }
+
+    @Benchmark
+    public int updatePerLike(Updater updater) throws SQLException {
+        return updater.update.executeUpdate();
+    }
+}
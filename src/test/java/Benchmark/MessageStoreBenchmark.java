@@ -0,0 +1,100 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.InMemoryMessageDAO;
+import DAO.MappedLogMessageDAO;
+import DAO.MessageDAO;
+import DAO.MessageRepository;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Insert and read throughput of the message stores.
+ *
+ * The h2 engine uses the same ./h2/db file as the tests and resets it, so do not run this
+ * against a database you care about.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class MessageStoreBenchmark {
+    private static final int SEEDED = 10_000;
+
+    @Param({ "h2", "mmap", "memory" })
+    public String engine;
+
+    MessageRepository store;
+    Path logDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ConnectionUtil.resetTestDatabase();
+        AccountDAO accounts = new AccountDAO();
+        if (engine.equals("h2")) {
+            store = new MessageDAO();
+        } else if (engine.equals("mmap")) {
+            logDirectory = Files.createTempDirectory("message-log-bench");
+            store = new MappedLogMessageDAO(logDirectory, MappedLogMessageDAO.DEFAULT_RECORDS_PER_SEGMENT,
+                    accounts::accountExists);
+        } else {
+            store = new InMemoryMessageDAO(accounts::accountExists);
+        }
+
+        for (int i = 0; i < SEEDED; i++) {
+            store.insertMessage(new Message(1, "seed message " + i, 1669947792L + i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (store instanceof MappedLogMessageDAO) {
+            ((MappedLogMessageDAO) store).close();
+            try (Stream<Path> files = Files.walk(logDirectory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> {
+                    try {
+                        Files.delete(p);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        }
+    }
+
+    @Benchmark
+    public Message insert() {
+        return store.insertMessage(new Message(1, "benchmark message", 1669947792L));
+    }
+
+    @Benchmark
+    public Message readById() {
+        // The seeded messages have IDs 1..SEEDED in every engine
+        return store.getMessageId(ThreadLocalRandom.current().nextInt(1, SEEDED + 1));
+    }
+}
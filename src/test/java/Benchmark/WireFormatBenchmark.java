@@ -0,0 +1,69 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import Controller.WireFormat;
+import Model.Message;
+
+/**
+ * Encode and decode cost of a GET /messages sized list in each wire format.
+ *
+ * Payload sizes are printed once per trial, since they matter as much as the timings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class WireFormatBenchmark {
+    @Param({ "JSON", "SMILE", "CBOR" })
+    public WireFormat format;
+
+    @Param({ "1000" })
+    public int messages;
+
+    List<Message> list;
+    byte[] encoded;
+    ObjectReader reader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        list = new ArrayList<>(messages);
+        for (int i = 0; i < messages; i++) {
+            list.add(new Message(i + 1, 1 + i % 50, "benchmark message number " + i, 1669947792L + i));
+        }
+        encoded = format.mapper.writeValueAsBytes(list);
+        reader = format.mapper.readerFor(new TypeReference<List<Message>>(){});
+        System.out.println(format + " payload: " + encoded.length + " bytes for " + messages + " messages");
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return format.mapper.writeValueAsBytes(list);
+    }
+
+    @Benchmark
+    public List<Message> decode() throws IOException {
+        return reader.readValue(encoded);
+    }
+}
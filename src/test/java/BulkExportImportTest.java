@@ -0,0 +1,261 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BulkExportImportTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    int port;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(0);
+        port = app.port();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/admin/export, without and with ?include_passwords=true
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one JSON line for the seeded account, then one for the seeded message;
+     *  the password only when asked for
+     */
+    @Test
+    public void exportAll() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/admin/export"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(
+                "{\"type\":\"account\",\"account_id\":1,\"username\":\"testuser1\"}\n" +
+                "{\"type\":\"message\",\"message_id\":1,\"posted_by\":1,\"message_text\":\"test message 1\",\"time_posted_epoch\":1669947792}\n",
+                response.body());
+
+        HttpRequest withPasswords = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/admin/export?include_passwords=true"))
+                .build();
+        Assert.assertTrue(webClient.send(withPasswords, HttpResponse.BodyHandlers.ofString()).body()
+                .startsWith("{\"type\":\"account\",\"account_id\":1,\"username\":\"testuser1\",\"password\":\"password\"}\n"));
+    }
+
+    /**
+     * Sending GET localhost:8080/admin/export and /admin/metrics to an app started with -Dadmin.token
+     *
+     * Expected Response:
+     *  401 without the token or with a wrong one, 200 with "Authorization: Bearer <token>"
+     */
+    @Test
+    public void adminRoutesNeedTheTokenWhenOneIsSet() throws IOException, InterruptedException {
+        System.setProperty("admin.token", "s3cret");
+        Javalin guarded;
+        try {
+            guarded = new SocialMediaController().startAPI().start(0);
+        } finally {
+            System.clearProperty("admin.token");
+        }
+        try {
+            for (String path : new String[] { "/admin/export", "/admin/metrics" }) {
+                URI uri = URI.create("http://localhost:" + guarded.port() + path);
+                Assert.assertEquals(401, webClient.send(HttpRequest.newBuilder().uri(uri).build(),
+                        HttpResponse.BodyHandlers.ofString()).statusCode());
+                Assert.assertEquals(401, webClient.send(HttpRequest.newBuilder().uri(uri).header("Authorization", "Bearer wrong").build(),
+                        HttpResponse.BodyHandlers.ofString()).statusCode());
+                Assert.assertEquals(200, webClient.send(HttpRequest.newBuilder().uri(uri).header("Authorization", "Bearer s3cret").build(),
+                        HttpResponse.BodyHandlers.ofString()).statusCode());
+            }
+        } finally {
+            guarded.stop();
+        }
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/admin/import with new accounts and messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: row counts; the rows are then served by the message endpoints and new IDs continue after them
+     */
+    @Test
+    public void importRows() throws IOException, InterruptedException {
+        Assume.assumeTrue(System.getProperty("messageStore", "h2").equals("h2"));
+        StringBuilder ndjson = new StringBuilder();
+        ndjson.append("{\"type\":\"account\",\"account_id\":5,\"username\":\"imported\",\"password\":\"password\"}\n");
+        for (int i = 10; i < 15; i++) {
+            ndjson.append("{\"type\":\"message\",\"message_id\":").append(i)
+                    .append(",\"posted_by\":5,\"message_text\":\"imported ").append(i)
+                    .append("\",\"time_posted_epoch\":1669947792}\n");
+        }
+        HttpRequest importRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/admin/import"))
+                .POST(HttpRequest.BodyPublishers.ofString(ndjson.toString()))
+                .header("Content-Type", "application/x-ndjson")
+                .build();
+        HttpResponse<String> response = webClient.send(importRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Map<String, Object> stats = objectMapper.readValue(response.body(), new TypeReference<Map<String, Object>>(){});
+        Assert.assertEquals(1, stats.get("accounts"));
+        Assert.assertEquals(5, stats.get("messages"));
+
+        HttpRequest byAccount = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/accounts/5/messages"))
+                .build();
+        List<Message> messages = objectMapper.readValue(
+                webClient.send(byAccount, HttpResponse.BodyHandlers.ofString()).body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(5, messages.size());
+        Assert.assertEquals(new Message(10, 5, "imported 10", 1669947792), messages.get(0));
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":5, " +
+                        "\"message_text\": \"after import\", " +
+                        "\"time_posted_epoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Message created = objectMapper.readValue(
+                webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).body(), Message.class);
+        Assert.assertEquals(15, created.getMessage_id());
+    }
+
+    /**
+     * Sending POST localhost:8080/admin/import with a valid message, a message by an unknown account,
+     * blank and too long texts, and an account without a password
+     *
+     * Expected Response:
+     *  Status Code: 200, one message imported and four rows skipped, only the valid message stored
+     */
+    @Test
+    public void importSkipsRowsTheApiWouldReject() throws IOException, InterruptedException {
+        Assume.assumeTrue(System.getProperty("messageStore", "h2").equals("h2"));
+        String ndjson = "{\"type\":\"account\",\"account_id\":1,\"username\":\"testuser1\"}\n"
+                + "{\"type\":\"message\",\"message_id\":20,\"posted_by\":1,\"message_text\":\"valid\",\"time_posted_epoch\":1}\n"
+                + "{\"type\":\"message\",\"message_id\":21,\"posted_by\":99,\"message_text\":\"no author\",\"time_posted_epoch\":1}\n"
+                + "{\"type\":\"message\",\"message_id\":22,\"posted_by\":1,\"message_text\":\" \",\"time_posted_epoch\":1}\n"
+                + "{\"type\":\"message\",\"message_id\":23,\"posted_by\":1,\"message_text\":\"" + "x".repeat(256) + "\",\"time_posted_epoch\":1}\n";
+        HttpRequest importRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/admin/import"))
+                .POST(HttpRequest.BodyPublishers.ofString(ndjson))
+                .header("Content-Type", "application/x-ndjson")
+                .build();
+        HttpResponse<String> response = webClient.send(importRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Map<String, Object> stats = objectMapper.readValue(response.body(), new TypeReference<Map<String, Object>>(){});
+        Assert.assertEquals(0, stats.get("accounts"));
+        Assert.assertEquals(1, stats.get("messages"));
+        Assert.assertEquals(4, stats.get("skipped"));
+
+        for (int id = 20; id <= 23; id++) {
+            HttpRequest byId = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:" + port + "/messages/" + id))
+                    .build();
+            String body = webClient.send(byId, HttpResponse.BodyHandlers.ofString()).body();
+            Assert.assertEquals(id == 20, !body.isEmpty());
+        }
+
+        HttpRequest login = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser1\",\"password\":\"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(login, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    /**
+     * Sending POST localhost:8080/admin/import with a line that is not JSON, then with a row of unknown type
+     *
+     * Expected Response:
+     *  Status Code: 400 for both, and the message table is left as it was
+     */
+    @Test
+    public void importRejectsMalformedNdjson() throws IOException, InterruptedException {
+        Assume.assumeTrue(System.getProperty("messageStore", "h2").equals("h2"));
+        String[] bodies = {
+                "{\"type\":\"message\",\"message_id\":20,\"posted_by\":1,\"message_text\":\"valid\",\"time_posted_epoch\":1}\n{oops\n",
+                "{\"type\":\"message\",\"message_id\":20,\"posted_by\":1,\"message_text\":\"valid\",\"time_posted_epoch\":1}\n{\"type\":\"comment\"}\n"
+        };
+        for (String ndjson : bodies) {
+            HttpRequest importRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:" + port + "/admin/import"))
+                    .POST(HttpRequest.BodyPublishers.ofString(ndjson))
+                    .header("Content-Type", "application/x-ndjson")
+                    .build();
+            Assert.assertEquals(400, webClient.send(importRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+
+        HttpRequest byId = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/messages/20"))
+                .build();
+        Assert.assertTrue(webClient.send(byId, HttpResponse.BodyHandlers.ofString()).body().isEmpty());
+    }
+
+    /**
+     * A message created after reloadIndex has read the table, but before the new index replaces
+     * the old one
+     *
+     * Expected: the reloaded index still serves it.
+     */
+    @Test
+    public void reloadKeepsWritesMadeWhileWarming() {
+        MessageService[] service = new MessageService[1];
+        Message[] created = new Message[1];
+        MessageDAO messageDAO = new MessageDAO() {
+            int reads;
+
+            @Override
+            public List<Message> getAllMessages() {
+                List<Message> messages = super.getAllMessages();
+                if (++reads == 2) {
+                    created[0] = service[0].createMessage(new Message(1, "written during the reload", 1669947800));
+                }
+                return messages;
+            }
+        };
+        service[0] = new MessageService(messageDAO, true);
+
+        service[0].reloadIndex();
+        Assert.assertNotNull(created[0]);
+        Assert.assertEquals(created[0], service[0].getMessageById(created[0].getMessage_id()));
+        Assert.assertEquals(2, service[0].getMessagesByAccountId(1).size());
+        service[0].close();
+    }
+}
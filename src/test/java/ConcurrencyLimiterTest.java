@@ -0,0 +1,84 @@
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.ConcurrencyLimiter;
+import Util.ConcurrencyLimiter.Priority;
+
+public class ConcurrencyLimiterTest {
+
+    /**
+     * Filling a limit of 10 with requests of each priority
+     *
+     * Expected: LOW stops at 5 in flight, NORMAL at 8 and HIGH at 10.
+     */
+    @Test
+    public void lowPriorityIsShedFirst() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 100, 1, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 5; i++) Assert.assertTrue(limiter.tryAcquire(Priority.LOW));
+        Assert.assertFalse(limiter.tryAcquire(Priority.LOW));
+        for (int i = 0; i < 3; i++) Assert.assertTrue(limiter.tryAcquire(Priority.NORMAL));
+        Assert.assertFalse(limiter.tryAcquire(Priority.NORMAL));
+        for (int i = 0; i < 2; i++) Assert.assertTrue(limiter.tryAcquire(Priority.HIGH));
+        Assert.assertFalse(limiter.tryAcquire(Priority.HIGH));
+        Assert.assertEquals(10, limiter.inFlight());
+
+        // A finished request frees a slot for the next one
+        limiter.release();
+        Assert.assertTrue(limiter.tryAcquire(Priority.HIGH));
+    }
+
+    /**
+     * Releasing fast requests while the limit is in use, then slow ones
+     *
+     * Expected: the limit grows by one per fast request and backs off once per slow burst.
+     */
+    @Test
+    public void limitFollowsLatency() {
+        long fast = TimeUnit.MILLISECONDS.toNanos(1);
+        long slow = TimeUnit.SECONDS.toNanos(1);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 20, 100, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 10; i++) limiter.tryAcquire(Priority.HIGH);
+        for (int i = 0; i < 10; i++) limiter.release(fast);
+        // Grows while at least half of it is in flight: 10 of 10, 9 of 11, 8 of 12, 7 of 13
+        Assert.assertEquals(14, limiter.limit());
+
+        // Releasing with nothing much in flight leaves it alone
+        limiter.tryAcquire(Priority.HIGH);
+        limiter.release(fast);
+        Assert.assertEquals(14, limiter.limit());
+
+        for (int i = 0; i < 3; i++) limiter.tryAcquire(Priority.HIGH);
+        for (int i = 0; i < 3; i++) limiter.release(slow);
+        Assert.assertEquals(12, limiter.limit());
+        Assert.assertEquals(0, limiter.inFlight());
+    }
+
+    /**
+     * A route that always takes 300 ms, then a cheap route taking as long, with a 100 ms threshold
+     *
+     * Expected: the expensive route is measured against its own usual time and leaves the
+     * limit alone; the cheap route is slow and backs the limit off.
+     */
+    @Test
+    public void slowRouteIsMeasuredAgainstItself() {
+        long fast = TimeUnit.MILLISECONDS.toNanos(1);
+        long scan = TimeUnit.MILLISECONDS.toNanos(300);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 20, 100, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 10; i++) limiter.tryAcquire(Priority.HIGH);
+        for (int i = 0; i < 10; i++) limiter.release("getMessageById", fast);
+        Assert.assertEquals(14, limiter.limit());
+
+        for (int i = 0; i < 5; i++) limiter.tryAcquire(Priority.LOW);
+        for (int i = 0; i < 5; i++) limiter.release("getAllMessages", scan);
+        Assert.assertEquals(14, limiter.limit());
+
+        limiter.tryAcquire(Priority.HIGH);
+        limiter.release("getMessageById", scan);
+        Assert.assertEquals(12, limiter.limit());
+    }
+}
@@ -21,6 +21,7 @@ public class CreateMessageTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    int port;
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
@@ -29,13 +30,13 @@ public class CreateMessageTest {
      */
     @Before
     public void setUp() throws InterruptedException {
-        ConnectionUtil.resetTestDatabase();
+        ConnectionUtil.resetInMemoryTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        app.start(0);
+        port = app.port();
     }
 
     @After
@@ -56,7 +57,7 @@ public class CreateMessageTest {
     @Test
     public void createMessageSuccessful() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages"))
+                .uri(URI.create("http://localhost:" + port + "/messages"))
                 .POST(HttpRequest.BodyPublishers.ofString("{"+
                         "\"posted_by\":1, " +
                         "\"message_text\": \"hello message\", " +
@@ -84,7 +85,7 @@ public class CreateMessageTest {
     @Test
     public void createMessageMessageTextBlank() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages"))
+                .uri(URI.create("http://localhost:" + port + "/messages"))
                 .POST(HttpRequest.BodyPublishers.ofString("{"+
                         "\"posted_by\":1, " +
                         "\"message_text\": \"\", " +
@@ -109,7 +110,7 @@ public class CreateMessageTest {
     @Test
     public void createMessageMessageGreaterThan255() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages"))
+                .uri(URI.create("http://localhost:" + port + "/messages"))
                 .POST(HttpRequest.BodyPublishers.ofString("{"+
                         "\"posted_by\":1, " +
                         "\"message_text\": \"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\", " +
@@ -134,7 +135,7 @@ public class CreateMessageTest {
     @Test
     public void createMessageUserNotInDb() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages"))
+                .uri(URI.create("http://localhost:" + port + "/messages"))
                 .POST(HttpRequest.BodyPublishers.ofString("{"+
                         "\"posted_by\":3, " +
                         "\"message_text\": \"message test\", " +
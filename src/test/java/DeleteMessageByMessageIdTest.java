@@ -22,6 +22,7 @@ public class DeleteMessageByMessageIdTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    int port;
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
@@ -30,13 +31,13 @@ public class DeleteMessageByMessageIdTest {
      */
     @Before
     public void setUp() throws InterruptedException {
-        ConnectionUtil.resetTestDatabase();
+        ConnectionUtil.resetInMemoryTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        app.start(0);
+        port = app.port();
     }
 
     @After
@@ -55,7 +56,7 @@ public class DeleteMessageByMessageIdTest {
     @Test
     public void deleteMessageGivenMessageIdMessageFound() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/1"))
+                .uri(URI.create("http://localhost:" + port + "/messages/1"))
                 .DELETE()
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
@@ -78,7 +79,7 @@ public class DeleteMessageByMessageIdTest {
     @Test
     public void deleteMessageGivenMessageIdMessageNotFound() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/100"))
+                .uri(URI.create("http://localhost:" + port + "/messages/100"))
                 .DELETE()
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class FlightRecorderEventTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    int port;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(0);
+        port = app.port();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String type, String field, String value) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(type) && value.equals(event.getString(field))) return event;
+        }
+        Assert.fail("No " + type + " with " + field + " = " + value + " in " + events);
+        return null;
+    }
+
+    /**
+     * Sending POST localhost:8080/register during a recording with the app's events enabled
+     *
+     * Expected: an HttpRequest event for the route and DaoQuery events for the DAO calls it made.
+     */
+    @Test
+    public void registerEmitsEvents() throws IOException, InterruptedException {
+        Path file = Files.createTempFile("social-media", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("socialmedia.HttpRequest").withoutThreshold();
+            recording.enable("socialmedia.DaoQuery").withoutThreshold();
+            recording.start();
+
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:" + port + "/register"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"recorded\", \"password\": \"password\"}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+            RecordedEvent http = find(events, "socialmedia.HttpRequest", "route", "/register");
+            Assert.assertEquals("POST", http.getString("method"));
+            Assert.assertEquals(200, http.getInt("status"));
+            Assert.assertEquals(response.body().length(), http.getLong("responseBytes"));
+
+            RecordedEvent insert = find(events, "socialmedia.DaoQuery", "method", "AccountDAO.insertAccount");
+            Assert.assertEquals("INSERT INTO Account (username, password) VALUES (?, ?)", insert.getString("sql"));
+            Assert.assertEquals(1, insert.getInt("rows"));
+            Assert.assertEquals(0, find(events, "socialmedia.DaoQuery", "method", "AccountDAO.usernameExists").getInt("rows"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Loading the bundled socialmedia.jfc
+     *
+     * Expected: a valid JFR configuration that enables the app's events.
+     */
+    @Test
+    public void bundledSettingsEnableEvents() throws IOException, ParseException {
+        try (Reader jfc = new InputStreamReader(getClass().getResourceAsStream("/socialmedia.jfc"), StandardCharsets.UTF_8)) {
+            Configuration configuration = Configuration.create(jfc);
+            Assert.assertEquals("true", configuration.getSettings().get("socialmedia.HttpRequest#enabled"));
+            Assert.assertEquals("true", configuration.getSettings().get("socialmedia.DaoQuery#enabled"));
+        }
+    }
+}
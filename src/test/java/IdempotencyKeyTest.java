@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.IdempotencyStore;
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.Deadline;
+import Util.DeadlineExceededException;
+import io.javalin.Javalin;
+
+public class IdempotencyKeyTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    int port;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(0);
+        port = app.port();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> post(String path, String key, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", key)
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending POST localhost:8080/messages twice with the same Idempotency-Key
+     *
+     * Expected Response:
+     *  Both 200 with the same message, the second marked as replayed, and only one message inserted
+     */
+    @Test
+    public void retriedPostMessageIsReplayed() throws IOException, InterruptedException {
+        String body = "{\"posted_by\":1, \"message_text\": \"hello message\", \"time_posted_epoch\": 1669947792}";
+        HttpResponse<String> first = post("/messages", "key-1", body);
+        HttpResponse<String> retry = post("/messages", "key-1", body);
+
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals(200, retry.statusCode());
+        Assert.assertEquals(first.body(), retry.body());
+        Assert.assertFalse(first.headers().firstValue("Idempotent-Replayed").isPresent());
+        Assert.assertEquals("true", retry.headers().firstValue("Idempotent-Replayed").orElse(null));
+
+        HttpRequest all = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/messages"))
+                .build();
+        List<Message> messages = objectMapper.readValue(
+                webClient.send(all, HttpResponse.BodyHandlers.ofString()).body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(2, messages.size());
+
+        // A different key is a new request
+        HttpResponse<String> other = post("/messages", "key-2", body);
+        Assert.assertNotEquals(first.body(), other.body());
+    }
+
+    /**
+     * Sending POST localhost:8080/register twice with the same Idempotency-Key, then reusing the key with another body
+     *
+     * Expected Response:
+     *  The retry gets the created account (not 400 for a taken username), the reuse gets 422
+     */
+    @Test
+    public void retriedRegisterIsReplayed() throws IOException, InterruptedException {
+        String body = "{\"username\": \"user\", \"password\": \"password\"}";
+        HttpResponse<String> first = post("/register", "register-1", body);
+        HttpResponse<String> retry = post("/register", "register-1", body);
+        HttpResponse<String> reused = post("/register", "register-1", "{\"username\": \"other\", \"password\": \"password\"}");
+
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals(200, retry.statusCode());
+        Assert.assertEquals(first.body(), retry.body());
+        Assert.assertEquals(422, reused.statusCode());
+    }
+
+    /**
+     * Ten concurrent requests with one key while the first is still running
+     *
+     * Expected: the handler runs once and every request gets its response.
+     */
+    @Test
+    public void concurrentDuplicatesWaitForTheFirst() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(1, TimeUnit.MINUTES, 100);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(10);
+
+        try {
+            Future<IdempotencyStore.StoredResponse> first = pool.submit(() -> store.execute("key", "body".getBytes(), () -> {
+                runs.incrementAndGet();
+                release.await();
+                return new IdempotencyStore.StoredResponse(200, "application/json", "{}".getBytes());
+            }));
+            while (runs.get() == 0) Thread.sleep(1);
+
+            List<Future<IdempotencyStore.StoredResponse>> duplicates = new ArrayList<>();
+            for (int i = 0; i < 9; i++) {
+                duplicates.add(pool.submit(() -> store.execute("key", "body".getBytes(), () -> {
+                    runs.incrementAndGet();
+                    return new IdempotencyStore.StoredResponse(200, "application/json", "{}".getBytes());
+                })));
+            }
+            Thread.sleep(50);
+            release.countDown();
+
+            Assert.assertNull(first.get(5, TimeUnit.SECONDS));
+            for (Future<IdempotencyStore.StoredResponse> duplicate : duplicates) {
+                Assert.assertNotNull(duplicate.get(5, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(1, runs.get());
+            Assert.assertEquals(9, store.replayCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * A hundred keys whose handler answers 503, in a store that keeps ten keys
+     *
+     * Expected: none of them is kept, and the eviction queue stays at ten.
+     */
+    @Test
+    public void forgottenKeysDoNotPileUp() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(1, TimeUnit.MINUTES, 10);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertNull(store.execute("key" + i, "body".getBytes(),
+                    () -> new IdempotencyStore.StoredResponse(503, "text/plain", new byte[0])));
+        }
+        Assert.assertEquals(0, store.size());
+        Assert.assertEquals(10, store.queuedCount());
+    }
+
+    /**
+     * A duplicate with a 50 ms deadline while the first request is stuck
+     *
+     * Expected: the duplicate gives up at its deadline; the first request still finishes.
+     */
+    @Test
+    public void duplicateWaitsOnlyUntilItsDeadline() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(1, TimeUnit.MINUTES, 100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<IdempotencyStore.StoredResponse> first = pool.submit(() -> store.execute("key", "body".getBytes(), () -> {
+                started.countDown();
+                release.await();
+                return new IdempotencyStore.StoredResponse(200, "application/json", "{}".getBytes());
+            }));
+            started.await();
+
+            Deadline.start(50);
+            long start = System.nanoTime();
+            try {
+                store.execute("key", "body".getBytes(), () -> {
+                    throw new AssertionError("duplicate ran the handler");
+                });
+                Assert.fail("duplicate waited past its deadline");
+            } catch (DeadlineExceededException expected) {
+                Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            } finally {
+                Deadline.clear();
+            }
+
+            release.countDown();
+            Assert.assertNull(first.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
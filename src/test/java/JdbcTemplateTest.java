@@ -0,0 +1,82 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import DAO.MessageFields;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+public class JdbcTemplateTest {
+    MessageDAO messageDAO;
+    AccountDAO accountDAO;
+
+    /**
+     * Before every test, reset the database and create the DAOs.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        messageDAO = new MessageDAO();
+        accountDAO = new AccountDAO();
+    }
+
+    private static long openSessions() throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Every MessageDAO and AccountDAO method called 100 times
+     *
+     * Expected: no database session left open by any of them.
+     */
+    @Test
+    public void daoCallsCloseTheirConnections() throws SQLException {
+        long before = openSessions();
+        for (int i = 0; i < 100; i++) {
+            Message created = messageDAO.insertMessage(new Message(1, "leak check " + i, 1669947792));
+            messageDAO.getMessageId(created.getMessage_id());
+            messageDAO.getAllMessages();
+            messageDAO.getMessagesByAccountId(1, MessageFields.parse("message_id"));
+            messageDAO.updateMessage(created.getMessage_id(), "updated " + i);
+            messageDAO.deleteMessageById(created.getMessage_id());
+            accountDAO.insertAccount(new Account("leak" + i, "password"));
+            accountDAO.getAccountByUsernameAndPassword("leak" + i, "password");
+            accountDAO.usernameExists("leak" + i);
+            accountDAO.accountExists(1);
+        }
+        // Sessions other code left open may be closed meanwhile, but none may be added
+        Assert.assertTrue(openSessions() <= before);
+    }
+
+    /**
+     * The same statement shape read with all columns and with two of them
+     *
+     * Expected: selected fields set by position, the others left at 0 or null.
+     */
+    @Test
+    public void rowsAreMappedByPositionPerStatementShape() {
+        Message full = messageDAO.getAllMessages().get(0);
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), full);
+
+        List<Message> sparse = messageDAO.getAllMessages(MessageFields.parse("time_posted_epoch,message_id"));
+        Assert.assertEquals(1, sparse.get(0).getMessage_id());
+        Assert.assertEquals(0, sparse.get(0).getPosted_by());
+        Assert.assertNull(sparse.get(0).getMessage_text());
+        Assert.assertEquals(1669947792, sparse.get(0).getTime_posted_epoch());
+
+        Assert.assertEquals(1, accountDAO.getAccountByUsernameAndPassword("testuser1", "password").getAccount_id());
+        Assert.assertNull(accountDAO.getAccountByUsernameAndPassword("testuser1", "wrong"));
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageStatsDAO;
+import Service.LikeCounter;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class LikeMessageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    int port;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(0);
+        port = app.port();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(String method, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending POST localhost:8080/messages/1/likes three times, then GET with ?fields=likes
+     *
+     * Expected Response:
+     *  Counts 1, 2 and 3, and likes 3 on message 1 in the single and list reads; 400 for a missing message
+     */
+    @Test
+    public void likesAreCountedAndReturned() throws IOException, InterruptedException {
+        for (int i = 1; i <= 3; i++) {
+            HttpResponse<String> response = send("POST", "/messages/1/likes");
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertEquals("{\"message_id\":1,\"likes\":" + i + "}", response.body());
+        }
+
+        JsonNode one = objectMapper.readTree(send("GET", "/messages/1?fields=message_text,likes").body());
+        Assert.assertEquals("test message 1", one.get("message_text").asText());
+        Assert.assertEquals(3, one.get("likes").asLong());
+
+        JsonNode all = objectMapper.readTree(send("GET", "/messages?fields=likes").body());
+        Assert.assertEquals(3, all.get(0).get("likes").asLong());
+        Assert.assertEquals(1, all.get(0).size());
+
+        Assert.assertEquals(400, send("POST", "/messages/100/likes").statusCode());
+    }
+
+    /**
+     * Eight threads liking one message 1000 times each, flushed once
+     *
+     * Expected: every like counted, one row written, and nothing left for the next flush.
+     */
+    @Test
+    public void concurrentLikesAreFlushedInOneRow() throws Exception {
+        MessageStatsDAO statsDAO = new MessageStatsDAO();
+        LikeCounter counter = new LikeCounter(statsDAO, 500);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> likers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                likers.add(pool.submit(() -> {
+                    for (int i = 0; i < 1_000; i++) counter.like(1);
+                }));
+            }
+            for (Future<?> liker : likers) liker.get();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Assert.assertEquals(0, statsDAO.getLikes(1));
+        Assert.assertEquals(8_000, counter.count(1));
+        Assert.assertEquals(1, counter.runOnce());
+        Assert.assertEquals(8_000, statsDAO.getLikes(1));
+        Assert.assertEquals(8_000, counter.count(1));
+        Assert.assertEquals(0, counter.runOnce());
+
+        counter.like(1);
+        counter.close();
+        Assert.assertEquals(8_001, statsDAO.getLikes(1));
+    }
+
+    /**
+     * A flush that throws, e.g. while the database is unreachable
+     *
+     * Expected: the failure is counted, the likes stay pending and the next flush writes them.
+     */
+    @Test
+    public void failedFlushIsRetried() {
+        boolean[] fail = { true };
+        MessageStatsDAO statsDAO = new MessageStatsDAO() {
+            @Override
+            public boolean addLikes(Map<Integer, Long> deltas) {
+                if (fail[0]) throw new IllegalStateException("database unreachable");
+                return super.addLikes(deltas);
+            }
+        };
+        LikeCounter counter = new LikeCounter(statsDAO, 500);
+        counter.like(1);
+
+        Assert.assertEquals(0, counter.runOnce());
+        Assert.assertEquals(1L, counter.stats().get("failures"));
+        Assert.assertEquals(1, counter.count(1));
+
+        fail[0] = false;
+        Assert.assertEquals(1, counter.runOnce());
+        Assert.assertEquals(1, statsDAO.getLikes(1));
+        counter.close();
+    }
+}
@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.MappedLogMessageDAO;
+import Model.Message;
+
+public class MappedLogMessageDAOTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Path directory;
+    MappedLogMessageDAO dao;
+
+    /**
+     * Before every test, open an empty log with tiny segments so rolling and compaction are exercised.
+     * Every account ID except 3 is treated as existing.
+     */
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.getRoot().toPath();
+        dao = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        dao.close();
+    }
+
+    private MappedLogMessageDAO open() throws IOException {
+        return new MappedLogMessageDAO(directory, 4, id -> id != 3);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Inserted, updated and deleted messages are visible through every read method.
+     */
+    @Test
+    public void insertUpdateDelete() {
+        Message first = dao.insertMessage(new Message(1, "hello", 1669947792));
+        Message second = dao.insertMessage(new Message(2, "other", 1669947793));
+        Assert.assertEquals(new Message(1, 1, "hello", 1669947792), first);
+        Assert.assertEquals(new Message(2, 2, "other", 1669947793), second);
+
+        Assert.assertEquals(new Message(1, 1, "updated", 1669947792), dao.updateMessage(1, "updated"));
+        Assert.assertEquals(new Message(1, 1, "updated", 1669947792), dao.getMessageId(1));
+
+        Assert.assertEquals(second, dao.deleteMessageById(2));
+        Assert.assertNull(dao.getMessageId(2));
+        Assert.assertNull(dao.deleteMessageById(2));
+        Assert.assertNull(dao.updateMessage(2, "gone"));
+
+        Assert.assertEquals(List.of(new Message(1, 1, "updated", 1669947792)), dao.getAllMessages());
+        Assert.assertTrue(dao.getMessagesByAccountId(2).isEmpty());
+    }
+
+    /**
+     * Messages from an account that does not exist are rejected.
+     */
+    @Test
+    public void insertUnknownAccount() {
+        Assert.assertNull(dao.insertMessage(new Message(3, "hello", 1669947792)));
+        Assert.assertTrue(dao.getAllMessages().isEmpty());
+    }
+
+    /**
+     * Closing and reopening the log rebuilds the same state, and IDs keep counting up.
+     */
+    @Test
+    public void recoverAfterRestart() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            dao.insertMessage(new Message(1, "message " + i, 1669947792 + i));
+        }
+        dao.updateMessage(3, "changed");
+        dao.deleteMessageById(5);
+        List<Message> before = dao.getAllMessages();
+        dao.close();
+
+        dao = open();
+        Assert.assertEquals(before, dao.getAllMessages());
+        Assert.assertEquals(before, dao.getMessagesByAccountId(1));
+        Assert.assertEquals(11, dao.insertMessage(new Message(1, "next", 1669947800)).getMessage_id());
+    }
+
+    /**
+     * A record torn by a crash (type byte set, bad checksum) is dropped on recovery and overwritten.
+     */
+    @Test
+    public void recoverFromTornWrite() throws IOException {
+        dao.insertMessage(new Message(1, "kept", 1669947792));
+        dao.close();
+
+        // Second record slot of the first segment: 64 byte header + one 1024 byte record
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles().get(0).toFile(), "rw")) {
+            file.seek(64 + 1024);
+            file.write(1);
+            file.writeInt(12345);
+        }
+
+        dao = open();
+        Assert.assertEquals(List.of(new Message(1, 1, "kept", 1669947792)), dao.getAllMessages());
+        Assert.assertEquals(2, dao.insertMessage(new Message(1, "after", 1669947793)).getMessage_id());
+        Assert.assertEquals(2, dao.getAllMessages().size());
+    }
+
+    /**
+     * Compaction drops old versions and tombstones into files no larger than a segment,
+     * and the result survives a restart.
+     */
+    @Test
+    public void compactAndRecover() throws IOException {
+        for (int i = 0; i < 12; i++) {
+            dao.insertMessage(new Message(1, "message " + i, 1669947792 + i));
+        }
+        for (int i = 1; i <= 6; i++) {
+            dao.deleteMessageById(i);
+        }
+        dao.updateMessage(7, "changed");
+        List<Message> before = dao.getAllMessages();
+
+        // Rolling may already have started a background compaction, so only the end state is checked
+        dao.compact();
+        Assert.assertEquals(before, dao.getAllMessages());
+        Assert.assertEquals(0, dao.compact());
+        for (Path file : segmentFiles()) {
+            Assert.assertTrue(file + " is larger than a segment", Files.size(file) <= 64 + 4 * 1024);
+        }
+
+        dao.close();
+        dao = open();
+        Assert.assertEquals(before, dao.getAllMessages());
+        Assert.assertEquals(13, dao.insertMessage(new Message(1, "next", 1669947800)).getMessage_id());
+    }
+
+    /**
+     * Only the segment holding an old version is rewritten; segments of live records stay as they are.
+     */
+    @Test
+    public void compactOnlySegmentsWithDeadRecords() throws IOException {
+        for (int i = 0; i < 12; i++) {
+            dao.insertMessage(new Message(1, "message " + i, 1669947792 + i));
+        }
+        // Fills a fourth segment, which stays active, with new versions of message 12
+        for (int i = 0; i < 4; i++) {
+            dao.updateMessage(12, "changed " + i);
+        }
+        List<Path> files = segmentFiles();
+        Assert.assertEquals(4, files.size());
+        byte[] first = Files.readAllBytes(files.get(0));
+        byte[] second = Files.readAllBytes(files.get(1));
+
+        Assert.assertEquals(1, dao.compact());
+        Assert.assertEquals(files, segmentFiles());
+        Assert.assertArrayEquals(first, Files.readAllBytes(files.get(0)));
+        Assert.assertArrayEquals(second, Files.readAllBytes(files.get(1)));
+        Assert.assertEquals(64 + 3 * 1024, Files.size(files.get(2)));
+        Assert.assertEquals(0, dao.compact());
+
+        List<Message> before = dao.getAllMessages();
+        Assert.assertEquals(new Message(12, 1, "changed 3", 1669947803), dao.getMessageId(12));
+        dao.close();
+        dao = open();
+        Assert.assertEquals(before, dao.getAllMessages());
+    }
+
+    /**
+     * Messages inserted while compaction runs are all kept, in memory and after a restart.
+     */
+    @Test
+    public void insertsDuringCompaction() throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        List<Future<Message>> inserts = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String text = "message " + i;
+            inserts.add(writers.submit(() -> dao.insertMessage(new Message(1, text, 1669947792))));
+        }
+        while (!inserts.get(inserts.size() - 1).isDone()) {
+            dao.compact();
+        }
+        writers.shutdown();
+
+        List<Message> created = new ArrayList<>();
+        for (Future<Message> insert : inserts) {
+            created.add(insert.get());
+        }
+        for (Message m : created) {
+            Assert.assertEquals(m, dao.getMessageId(m.getMessage_id()));
+        }
+        dao.close();
+        dao = open();
+        Assert.assertEquals(created.size(), dao.getAllMessages().size());
+    }
+}
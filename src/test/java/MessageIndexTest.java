@@ -0,0 +1,107 @@
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageIndex;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
+
+public class MessageIndexTest {
+    MessageDAO messageDAO;
+    MessageService messageService;
+
+    /**
+     * Before every test, reset the database and build a service that reads through the message index.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        messageDAO = new MessageDAO();
+        messageService = new MessageService(messageDAO, true);
+    }
+
+    @After
+    public void tearDown() {
+        messageService.close();
+    }
+
+    /**
+     * Insert, update and delete through the service
+     *
+     * Expected: the index answers each read with the table's current state, without a query.
+     */
+    @Test
+    public void writesKeepTheIndexInSync() {
+        Message first = messageService.createMessage(new Message(1, "first", 1669947792));
+        Message second = messageService.createMessage(new Message(1, "second", 1669947793));
+        Assert.assertEquals(first, messageService.getCachedMessageById(first.getMessage_id()));
+        Assert.assertEquals(List.of(messageDAO.getMessageId(1), first, second), messageService.getMessagesByAccountId(1));
+
+        Message updated = messageService.updateMessageText(first.getMessage_id(), "edited");
+        Assert.assertEquals(updated, messageService.getCachedMessageById(first.getMessage_id()));
+        Assert.assertEquals(messageDAO.getMessageId(first.getMessage_id()), messageService.getCachedMessageById(first.getMessage_id()));
+
+        messageService.deleteMessageById(second.getMessage_id());
+        Assert.assertNull(messageService.getCachedMessageById(second.getMessage_id()));
+        Assert.assertEquals(List.of(messageDAO.getMessageId(1), updated), messageService.getMessagesByAccountId(1));
+    }
+
+    /**
+     * An update in a unit of work that is rolled back
+     *
+     * Expected: the index keeps the committed text.
+     */
+    @Test
+    public void rolledBackWriteLeavesTheIndexAlone() {
+        Message created = messageService.createMessage(new Message(1, "committed", 1669947792));
+        try (UnitOfWork unit = UnitOfWork.begin()) {
+            Assert.assertNotNull(messageService.updateMessageText(created.getMessage_id(), "rolled back"));
+        }
+        Assert.assertEquals(created, messageService.getCachedMessageById(created.getMessage_id()));
+        Assert.assertEquals(created, messageDAO.getMessageId(created.getMessage_id()));
+    }
+
+    /**
+     * Rows inserted, updated and deleted straight through the DAO, then reloadIndex
+     *
+     * Expected: the index misses them until the reload, and matches the table after it.
+     */
+    @Test
+    public void reloadPicksUpWritesThatBypassedTheService() {
+        Message kept = messageService.createMessage(new Message(1, "kept", 1669947792));
+        Message removed = messageService.createMessage(new Message(1, "removed", 1669947793));
+        Message inserted = messageDAO.insertMessage(new Message(1, "inserted", 1669947794));
+        messageDAO.updateMessage(kept.getMessage_id(), "edited");
+        messageDAO.deleteMessageById(removed.getMessage_id());
+        Assert.assertNull(messageService.getCachedMessageById(inserted.getMessage_id()));
+        Assert.assertEquals(kept, messageService.getCachedMessageById(kept.getMessage_id()));
+
+        messageService.reloadIndex();
+        Assert.assertEquals(inserted, messageService.getCachedMessageById(inserted.getMessage_id()));
+        Assert.assertEquals("edited", messageService.getCachedMessageById(kept.getMessage_id()).getMessage_text());
+        Assert.assertNull(messageService.getCachedMessageById(removed.getMessage_id()));
+        Assert.assertEquals(messageDAO.getMessagesByAccountId(1), messageService.getMessagesByAccountId(1));
+    }
+
+    /**
+     * An update applied after the delete of the same message, as when the two race
+     *
+     * Expected: the message stays deleted.
+     */
+    @Test
+    public void lateUpdateDoesNotBringBackADeletedMessage() {
+        MessageIndex index = new MessageIndex();
+        Message message = new Message(7, 1, "text", 1669947792);
+        index.warm(List.of(message));
+        index.onDelete(message);
+        index.onUpdate(new Message(7, 1, "edited", 1669947792));
+        Assert.assertNull(index.get(7));
+        Assert.assertTrue(index.getByAccount(1).isEmpty());
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.MessageJsonCache;
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageJsonCacheTest {
+    ObjectMapper objectMapper;
+    MessageJsonCache cache;
+
+    /**
+     * Before every test, reset the database and build a cache with room for two messages.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        objectMapper = new ObjectMapper();
+        cache = new MessageJsonCache(objectMapper, 2);
+    }
+
+    /**
+     * The same message encoded twice, then an equal copy of it
+     *
+     * Expected: Jackson's bytes the first time, the very same array after that.
+     */
+    @Test
+    public void repeatedMessageIsAHit() throws IOException {
+        Message message = new Message(1, 1, "hello", 1669947792);
+        byte[] first = cache.toJson(message);
+        Assert.assertArrayEquals(objectMapper.writeValueAsBytes(message), first);
+        Assert.assertSame(first, cache.toJson(message));
+        Assert.assertSame(first, cache.toJson(new Message(1, 1, "hello", 1669947792)));
+        Assert.assertEquals(2, cache.hitCount());
+        Assert.assertEquals(1, cache.missCount());
+    }
+
+    /**
+     * A message changed behind the cache's back, then one invalidated after a change
+     *
+     * Expected: neither is answered with the old bytes.
+     */
+    @Test
+    public void changedMessageIsNeverServedStale() throws IOException {
+        cache.toJson(new Message(1, 1, "hello", 1669947792));
+        Message edited = new Message(1, 1, "edited", 1669947792);
+        Assert.assertArrayEquals(objectMapper.writeValueAsBytes(edited), cache.toJson(edited));
+
+        cache.invalidate(1);
+        Assert.assertEquals(0, cache.size());
+        Assert.assertArrayEquals(objectMapper.writeValueAsBytes(edited), cache.toJson(edited));
+        Assert.assertEquals(0, cache.hitCount());
+        Assert.assertEquals(3, cache.missCount());
+    }
+
+    /**
+     * Three messages in a cache that holds two, encoded as a list
+     *
+     * Expected: the list is the JSON array Jackson writes, and only two entries are kept.
+     */
+    @Test
+    public void evictsAtCapacity() throws IOException {
+        List<Message> messages = List.of(
+                new Message(1, 1, "one", 1669947792),
+                new Message(2, 1, "two", 1669947793),
+                new Message(3, 2, "three", 1669947794));
+        Assert.assertArrayEquals(objectMapper.writeValueAsBytes(messages), cache.toJson(messages));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("[]", new String(cache.toJson(List.of())));
+    }
+
+    /**
+     * GET localhost:8080/messages/1 twice, PATCH it, GET it again, then DELETE it
+     *
+     * Expected: the second GET is a hit, the PATCH and the DELETE drop the entry, and the
+     * GET after the PATCH returns the new text.
+     */
+    @Test
+    public void controllerInvalidatesOnUpdateAndDelete() throws IOException, InterruptedException {
+        SocialMediaController socialMediaController = new SocialMediaController();
+        Javalin app = socialMediaController.startAPI();
+        app.start(0);
+        HttpClient webClient = HttpClient.newHttpClient();
+        String base = "http://localhost:" + app.port();
+        try {
+            HttpRequest get = HttpRequest.newBuilder().uri(URI.create(base + "/messages/1")).build();
+            webClient.send(get, HttpResponse.BodyHandlers.ofString());
+            webClient.send(get, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(1, jsonCacheStat(webClient, base, "entries"));
+            Assert.assertEquals(1, jsonCacheStat(webClient, base, "hits"));
+
+            HttpRequest patch = HttpRequest.newBuilder()
+                    .uri(URI.create(base + "/messages/1"))
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            Assert.assertEquals(200, webClient.send(patch, HttpResponse.BodyHandlers.ofString()).statusCode());
+            Assert.assertEquals(0, jsonCacheStat(webClient, base, "entries"));
+            Message read = objectMapper.readValue(webClient.send(get, HttpResponse.BodyHandlers.ofString()).body(), Message.class);
+            Assert.assertEquals("updated message", read.getMessage_text());
+
+            HttpRequest delete = HttpRequest.newBuilder().uri(URI.create(base + "/messages/1")).DELETE().build();
+            Assert.assertEquals(200, webClient.send(delete, HttpResponse.BodyHandlers.ofString()).statusCode());
+            Assert.assertEquals(0, jsonCacheStat(webClient, base, "entries"));
+            Assert.assertTrue(webClient.send(get, HttpResponse.BodyHandlers.ofString()).body().isEmpty());
+        } finally {
+            app.stop();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private long jsonCacheStat(HttpClient webClient, String base, String name) throws IOException, InterruptedException {
+        HttpRequest metrics = HttpRequest.newBuilder().uri(URI.create(base + "/admin/metrics")).build();
+        Map<String, Object> body = objectMapper.readValue(webClient.send(metrics, HttpResponse.BodyHandlers.ofString()).body(),
+                new TypeReference<Map<String, Object>>(){});
+        return ((Number) ((Map<String, Object>) body.get("jsonByteCache")).get(name)).longValue();
+    }
+}
@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.h2.tools.Server;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.MessageChangePoller;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Two API instances in one JVM sharing a database through an H2 TCP server, the way
+ * several instances run behind a load balancer. Writes go to one node and reads to the
+ * other, and the time until the reading node reflects a write is the staleness window.
+ */
+public class MultiNodeInvalidationTest {
+    // Generous for a loaded CI machine, the poller runs every 100 ms
+    private static final long MAX_STALENESS_MILLIS = 2_000;
+
+    Server server;
+    Javalin nodeA;
+    Javalin nodeB;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, start an H2 server with a fresh database on it and two apps using it.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        // The memory and mmap engines keep messages per process, only h2 can be shared
+        Assume.assumeTrue(System.getProperty("messageStore", "h2").equals("h2"));
+        server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+        ConnectionUtil.resetTestDatabase("jdbc:h2:tcp://localhost:" + server.getPort() + "/mem:"
+                + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        nodeA = new SocialMediaController().startAPI().start(0);
+        nodeB = new SocialMediaController().startAPI().start(0);
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @After
+    public void tearDown() {
+        if (nodeA != null) nodeA.stop();
+        if (nodeB != null) nodeB.stop();
+        if (server != null) server.stop();
+    }
+
+    private HttpResponse<String> send(Javalin node, String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + node.port() + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * @return Milliseconds from start until GET path on node returns expected.
+     */
+    private long waitFor(Javalin node, String path, String expected, long start) throws IOException, InterruptedException {
+        while (true) {
+            String body = send(node, "GET", path, null).body();
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            if (body.equals(expected)) return elapsed;
+            Assert.assertTrue("still stale after " + elapsed + " ms: " + body, elapsed < MAX_STALENESS_MILLIS);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Insert, update and delete on node A, each read back from node B's in-process index
+     *
+     * Expected: node B serves every change within the staleness bound.
+     */
+    @Test
+    public void writesOnOneNodeReachTheOther() throws IOException, InterruptedException {
+        List<Long> staleness = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            long start = System.nanoTime();
+            HttpResponse<String> created = send(nodeA, "POST", "/messages",
+                    "{\"posted_by\":1, \"message_text\": \"message " + i + "\", \"time_posted_epoch\": 1669947792}");
+            Assert.assertEquals(200, created.statusCode());
+            Message message = objectMapper.readValue(created.body(), Message.class);
+            String path = "/messages/" + message.getMessage_id();
+            staleness.add(waitFor(nodeB, path, created.body(), start));
+
+            start = System.nanoTime();
+            HttpResponse<String> updated = send(nodeA, "PATCH", path, "{\"message_text\": \"edited " + i + "\"}");
+            Assert.assertEquals(200, updated.statusCode());
+            staleness.add(waitFor(nodeB, path, updated.body(), start));
+
+            start = System.nanoTime();
+            Assert.assertEquals(200, send(nodeA, "DELETE", path, null).statusCode());
+            staleness.add(waitFor(nodeB, path, "", start));
+        }
+
+        Collections.sort(staleness);
+        System.out.println("staleness over " + staleness.size() + " writes: p50 "
+                + staleness.get(staleness.size() / 2) + " ms, p99 "
+                + staleness.get(staleness.size() * 99 / 100) + " ms, max "
+                + staleness.get(staleness.size() - 1) + " ms");
+    }
+
+    /**
+     * A change whose transaction commits after the poller passed its sequence number, e.g. a
+     * slow request under a unit of work
+     *
+     * Expected: the later change is applied at once, the late one on the next poll.
+     */
+    @Test
+    public void lateCommitIsStillApplied() throws SQLException {
+        List<Integer> applied = new ArrayList<>();
+        MessageChangePoller poller = new MessageChangePoller(1, change -> applied.add(change.messageId), 100, 0, 60_000, 300_000);
+        String sql = "INSERT INTO message_change (message_id, posted_by, time_posted_epoch, changed_at) VALUES (?, 1, 1669947792, ?)";
+
+        try (Connection slow = ConnectionUtil.getConnection();
+             Connection fast = ConnectionUtil.getConnection();
+             PreparedStatement slowInsert = slow.prepareStatement(sql);
+             PreparedStatement fastInsert = fast.prepareStatement(sql)) {
+            slow.setAutoCommit(false);
+            slowInsert.setInt(1, 101);
+            slowInsert.setLong(2, System.currentTimeMillis());
+            slowInsert.executeUpdate();
+            fastInsert.setInt(1, 102);
+            fastInsert.setLong(2, System.currentTimeMillis());
+            fastInsert.executeUpdate();
+
+            // No gap timeout, the uncommitted sequence number is passed at once
+            poller.runOnce();
+            Assert.assertEquals(List.of(102), applied);
+
+            slow.commit();
+            poller.runOnce();
+            Assert.assertEquals(List.of(102, 101), applied);
+            Assert.assertEquals(1L, poller.stats().get("lateChanges"));
+        } finally {
+            poller.close();
+        }
+    }
+
+    /**
+     * A poll that fails, e.g. while the database is unreachable
+     *
+     * Expected: the failure is counted and the change is applied by the next poll.
+     */
+    @Test
+    public void pollerSurvivesAFailedPoll() throws SQLException {
+        List<Integer> applied = new ArrayList<>();
+        boolean[] fail = { true };
+        MessageChangePoller poller = new MessageChangePoller(1, change -> {
+            if (fail[0]) throw new IllegalStateException("database unreachable");
+            applied.add(change.messageId);
+        }, 100, 0, 60_000, 300_000);
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement insert = connection.prepareStatement("INSERT INTO message_change "
+                     + "(message_id, posted_by, time_posted_epoch, changed_at) VALUES (103, 1, 1669947792, ?)")) {
+            insert.setLong(1, System.currentTimeMillis());
+            insert.executeUpdate();
+
+            Assert.assertEquals(0, poller.runOnce());
+            Assert.assertEquals(1L, poller.stats().get("failures"));
+
+            fail[0] = false;
+            Assert.assertEquals(1, poller.runOnce());
+            Assert.assertEquals(List.of(103), applied);
+        } finally {
+            poller.close();
+        }
+    }
+}
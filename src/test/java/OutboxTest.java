@@ -0,0 +1,225 @@
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import DAO.MessageDAO;
+import DAO.MessageOutboxDAO;
+import Model.Message;
+import Service.MessageService;
+import Service.NdjsonFileSink;
+import Service.OutboxSink;
+import Service.OutboxTailer;
+import Service.QueueSink;
+import Service.WebhookSink;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class OutboxTest {
+    MessageService messageService;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, reset the database and turn on the outbox for message writes.
+     */
+    @Before
+    public void setUp() {
+        System.setProperty("outbox", "true");
+        ConnectionUtil.resetInMemoryTestDatabase();
+        messageService = new MessageService(new MessageDAO());
+        objectMapper = new ObjectMapper();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("outbox");
+    }
+
+    private OutboxTailer tailer(OutboxSink sink) {
+        return new OutboxTailer(1, sink, 100, 1_000, 60_000, 1_000, 3_600_000);
+    }
+
+    /**
+     * Insert, update and delete one message, tailed into a queue with room for two events
+     *
+     * Expected: two events, then the third once the queue is drained, in write order;
+     * a restarted tailer resumes after the saved offset.
+     */
+    @Test
+    public void eventsArePublishedInOrderAsTheQueueDrains() {
+        Message created = messageService.createMessage(new Message(1, "hello", 1669947792));
+        messageService.updateMessageText(created.getMessage_id(), "edited");
+        messageService.deleteMessageById(created.getMessage_id());
+
+        QueueSink sink = new QueueSink(2, 1);
+        OutboxTailer tailer = tailer(sink);
+        Assert.assertEquals(2, tailer.runOnce());
+        List<MessageOutboxDAO.Event> events = new ArrayList<>();
+        sink.queue().drainTo(events);
+        Assert.assertEquals(1, tailer.runOnce());
+        sink.queue().drainTo(events);
+
+        Assert.assertEquals(3, events.size());
+        Assert.assertEquals(MessageOutboxDAO.CREATED, events.get(0).event);
+        Assert.assertEquals(MessageOutboxDAO.UPDATED, events.get(1).event);
+        Assert.assertEquals("edited", events.get(1).messageText);
+        Assert.assertEquals(MessageOutboxDAO.DELETED, events.get(2).event);
+        for (int i = 0; i < events.size(); i++) {
+            Assert.assertEquals(created.getMessage_id(), events.get(i).messageId);
+            if (i > 0) Assert.assertTrue(events.get(i).seq > events.get(i - 1).seq);
+        }
+
+        OutboxTailer restarted = tailer(new QueueSink(10, 1));
+        Assert.assertEquals(0, restarted.runOnce());
+    }
+
+    /**
+     * An outbox row whose transaction commits after the tailer passed its gap, with a
+     * restart in between
+     *
+     * Expected: the saved offset stays below the gap, so the restarted tailer publishes
+     * the late event and then the one after it again, in sequence order.
+     */
+    @Test
+    public void passedGapSurvivesARestart() throws SQLException {
+        String sql = "INSERT INTO message_outbox (event, message_id, posted_by, message_text, time_posted_epoch, created_at) "
+                + "VALUES (?, ?, 1, ?, 1669947792, ?)";
+        try (Connection slow = ConnectionUtil.getConnection();
+             Connection fast = ConnectionUtil.getConnection();
+             PreparedStatement slowInsert = slow.prepareStatement(sql);
+             PreparedStatement fastInsert = fast.prepareStatement(sql)) {
+            slow.setAutoCommit(false);
+            for (PreparedStatement insert : List.of(slowInsert, fastInsert)) {
+                insert.setString(1, MessageOutboxDAO.CREATED);
+                insert.setInt(2, insert == slowInsert ? 1 : 2);
+                insert.setString(3, insert == slowInsert ? "slow" : "fast");
+                insert.setLong(4, System.currentTimeMillis());
+                insert.executeUpdate();
+            }
+
+            // No gap timeout, the uncommitted sequence number is passed at once
+            QueueSink sink = new QueueSink(10, 1);
+            OutboxTailer tailer = new OutboxTailer(1, sink, 100, 0, 60_000, 1_000, 3_600_000);
+            Assert.assertEquals(1, tailer.runOnce());
+            MessageOutboxDAO.Event fastEvent = sink.queue().poll();
+            Assert.assertEquals("fast", fastEvent.messageText);
+            Assert.assertEquals(fastEvent.seq - 2, new MessageOutboxDAO(0).getOffset(sink.name()));
+
+            slow.commit();
+            QueueSink restartedSink = new QueueSink(10, 1);
+            Assert.assertEquals(2, new OutboxTailer(1, restartedSink, 100, 0, 60_000, 1_000, 3_600_000).runOnce());
+            Assert.assertEquals("slow", restartedSink.queue().poll().messageText);
+            Assert.assertEquals("fast", restartedSink.queue().poll().messageText);
+            Assert.assertEquals(fastEvent.seq, new MessageOutboxDAO(0).getOffset(sink.name()));
+        }
+    }
+
+    /**
+     * A sink that throws an unchecked exception on its first publish
+     *
+     * Expected: the run counts a failure and backs off instead of ending, and the same
+     * events are published once the backoff is over.
+     */
+    @Test
+    public void sinkRuntimeExceptionBacksOff() throws InterruptedException {
+        messageService.createMessage(new Message(1, "hello", 1669947792));
+        AtomicInteger calls = new AtomicInteger();
+        QueueSink queue = new QueueSink(10, 1);
+        OutboxSink sink = new OutboxSink() {
+            @Override
+            public String name() {
+                return "flaky";
+            }
+
+            @Override
+            public int publish(List<MessageOutboxDAO.Event> events) {
+                if (calls.incrementAndGet() == 1) throw new IllegalStateException("sink down");
+                return queue.publish(events);
+            }
+        };
+        OutboxTailer tailer = tailer(sink);
+        Assert.assertEquals(0, tailer.runOnce());
+        Assert.assertEquals(1L, tailer.stats().get("failures"));
+        Assert.assertEquals(0, tailer.runOnce());
+        Assert.assertEquals(1, calls.get());
+
+        Thread.sleep(150);
+        Assert.assertEquals(1, tailer.runOnce());
+        Assert.assertEquals("hello", queue.queue().poll().messageText);
+    }
+
+    /**
+     * Events POSTed to a local webhook stub that answers 503 once
+     *
+     * Expected: nothing is published while the stub is overloaded, then one NDJSON line per event.
+     */
+    @Test
+    public void webhookGetsNdjsonAfterBackpressure() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        List<String> bodies = new ArrayList<>();
+        Javalin stub = Javalin.create().post("/events", ctx -> {
+            if (calls.incrementAndGet() == 1) {
+                ctx.status(503);
+            } else {
+                bodies.add(ctx.body());
+            }
+        }).start(0);
+        try {
+            messageService.createMessage(new Message(1, "first", 1669947792));
+            messageService.createMessage(new Message(1, "second", 1669947793));
+
+            OutboxTailer tailer = tailer(new WebhookSink(
+                    URI.create("http://localhost:" + stub.port() + "/events"), 5_000));
+            Assert.assertEquals(0, tailer.runOnce());
+            Assert.assertEquals(2, tailer.runOnce());
+
+            String[] lines = bodies.get(0).split("\n");
+            Assert.assertEquals(2, lines.length);
+            JsonNode first = objectMapper.readTree(lines[0]);
+            Assert.assertEquals("created", first.get("event").asText());
+            Assert.assertEquals("first", first.get("message_text").asText());
+            Assert.assertEquals("second", objectMapper.readTree(lines[1]).get("message_text").asText());
+        } finally {
+            stub.stop();
+        }
+    }
+
+    /**
+     * Events appended to an NDJSON file
+     *
+     * Expected: one line per event, each a JSON object naming the message.
+     */
+    @Test
+    public void fileSinkAppendsOneLinePerEvent() throws IOException {
+        Path file = Files.createTempFile("outbox", ".ndjson");
+        try {
+            Message created = messageService.createMessage(new Message(1, "hello", 1669947792));
+            messageService.deleteMessageById(created.getMessage_id());
+
+            NdjsonFileSink sink = new NdjsonFileSink(file);
+            Assert.assertEquals(2, tailer(sink).runOnce());
+            sink.close();
+
+            List<String> lines = Files.readAllLines(file);
+            Assert.assertEquals(2, lines.size());
+            Assert.assertEquals("deleted", objectMapper.readTree(lines.get(1)).get("event").asText());
+            Assert.assertEquals(created.getMessage_id(), objectMapper.readTree(lines.get(1)).get("message_id").asInt());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RateLimitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    int port;
+
+    /**
+     * Before every test, reset the database and restart the Javalin app with a limit of
+     * 2 message posts (then 1 per minute) per account and 1 login per IP.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("rateLimit.postMessage", "0.0167:2");
+        System.setProperty("rateLimit.login", "0.0167:1");
+        ConnectionUtil.resetInMemoryTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(0);
+        port = app.port();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("rateLimit.postMessage");
+        System.clearProperty("rateLimit.login");
+    }
+
+    private HttpResponse<String> postMessage(int postedBy) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending a third POST localhost:8080/messages for the same account within the burst
+     *
+     * Expected Response:
+     *  Status Code: 429
+     *  Retry-After: seconds until the next permit
+     */
+    @Test
+    public void postMessageOverLimit() throws IOException, InterruptedException {
+        Assert.assertEquals(200, postMessage(1).statusCode());
+        Assert.assertEquals(200, postMessage(1).statusCode());
+
+        HttpResponse<String> limited = postMessage(1);
+        Assert.assertEquals(429, limited.statusCode());
+        long retryAfter = Long.parseLong(limited.headers().firstValue("Retry-After").orElseThrow());
+        Assert.assertTrue(retryAfter >= 1 && retryAfter <= 60);
+
+        // Other accounts have their own bucket
+        Assert.assertEquals(400, postMessage(3).statusCode());
+    }
+
+    /**
+     * Sending a second POST localhost:8080/login from the same IP
+     *
+     * Expected Response:
+     *  Status Code: 429
+     */
+    @Test
+    public void loginOverLimit() throws IOException, InterruptedException {
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser1\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+
+        Assert.assertEquals(200, webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpResponse<String> limited = webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(429, limited.statusCode());
+        Assert.assertTrue(limited.headers().firstValue("Retry-After").isPresent());
+    }
+}
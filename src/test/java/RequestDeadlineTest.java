@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import DAO.MessageFields;
+import Util.ConnectionUtil;
+import Util.Deadline;
+import Util.DeadlineExceededException;
+import io.javalin.Javalin;
+
+public class RequestDeadlineTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    int port;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(0);
+        port = app.port();
+    }
+
+    @After
+    public void tearDown() {
+        Deadline.clear();
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path, String timeout) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + path))
+                .header("X-Request-Timeout", timeout)
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 with an X-Request-Timeout header
+     *
+     * Expected Response:
+     *  200 for a usable timeout, 400 for one that is not a positive number of milliseconds
+     */
+    @Test
+    public void timeoutHeaderIsValidated() throws IOException, InterruptedException {
+        Assert.assertEquals(200, get("/messages/1", "1000").statusCode());
+        Assert.assertEquals(400, get("/messages/1", "0").statusCode());
+        Assert.assertEquals(400, get("/messages/1", "soon").statusCode());
+    }
+
+    /**
+     * Reading messages on a thread whose deadline has passed
+     *
+     * Expected: the DAO throws DeadlineExceededException instead of querying, and reads normally once cleared.
+     */
+    @Test
+    public void expiredDeadlineAbandonsQuery() {
+        MessageDAO dao = new MessageDAO();
+        Deadline.start(0);
+        try {
+            dao.getAllMessages(MessageFields.ALL);
+            Assert.fail("Expected DeadlineExceededException");
+        } catch (DeadlineExceededException expected) {
+            // Abandoned before running
+        }
+        Deadline.clear();
+        Assert.assertEquals(1, dao.getAllMessages(MessageFields.ALL).size());
+    }
+
+    /**
+     * Running a query that outlives a one second deadline
+     *
+     * Expected: H2 cancels it through the query timeout and the error maps to DeadlineExceededException.
+     */
+    @Test(timeout = 10_000)
+    public void slowQueryIsCanceled() throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        PreparedStatement ps = connection.prepareStatement("SELECT SUM(X) FROM SYSTEM_RANGE(1, 100000000000)");
+        Deadline.start(1_000);
+        try {
+            Deadline.apply(ps);
+            ps.executeQuery();
+            Assert.fail("Expected the query to be canceled");
+        } catch (SQLException e) {
+            try {
+                Deadline.rethrowIfExpired(e);
+                Assert.fail("Expected DeadlineExceededException, got " + e);
+            } catch (DeadlineExceededException expected) {
+                // Canceled by the timeout
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ public class RetrieveAllMessagesForUserTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    int port;
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
@@ -32,13 +33,13 @@ public class RetrieveAllMessagesForUserTest {
      */
     @Before
     public void setUp() throws InterruptedException {
-        ConnectionUtil.resetTestDatabase();
+        ConnectionUtil.resetInMemoryTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        app.start(0);
+        port = app.port();
     }
 
     @After
@@ -56,7 +57,7 @@ public class RetrieveAllMessagesForUserTest {
     @Test
     public void getAllMessagesFromUserMessageExists() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .uri(URI.create("http://localhost:" + port + "/accounts/1/messages"))
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -79,7 +80,7 @@ public class RetrieveAllMessagesForUserTest {
     @Test
     public void getAllMessagesFromUserNoMessagesFound() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/accounts/2/messages"))
+                .uri(URI.create("http://localhost:" + port + "/accounts/2/messages"))
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -27,6 +27,7 @@ public class RetrieveAllMessagesTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    int port;
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
@@ -35,13 +36,13 @@ public class RetrieveAllMessagesTest {
      */
     @Before
     public void setUp() throws InterruptedException {
-        ConnectionUtil.resetTestDatabase();
+        ConnectionUtil.resetInMemoryTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        app.start(0);
+        port = app.port();
     }
 
     @After
@@ -59,7 +60,7 @@ public class RetrieveAllMessagesTest {
     @Test
     public void getAllMessagesMessagesAvailable() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages"))
+                .uri(URI.create("http://localhost:" + port + "/messages"))
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -86,7 +87,7 @@ public class RetrieveAllMessagesTest {
         removeInitialMessage();
 
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages"))
+                .uri(URI.create("http://localhost:" + port + "/messages"))
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
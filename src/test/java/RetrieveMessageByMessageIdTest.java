@@ -21,6 +21,7 @@ public class RetrieveMessageByMessageIdTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    int port;
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
@@ -29,13 +30,13 @@ public class RetrieveMessageByMessageIdTest {
      */
     @Before
     public void setUp() throws InterruptedException {
-        ConnectionUtil.resetTestDatabase();
+        ConnectionUtil.resetInMemoryTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        app.start(0);
+        port = app.port();
     }
 
     @After
@@ -54,7 +55,7 @@ public class RetrieveMessageByMessageIdTest {
     @Test
     public void getMessageGivenMessageIdMessageFound() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/1"))
+                .uri(URI.create("http://localhost:" + port + "/messages/1"))
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -77,7 +78,7 @@ public class RetrieveMessageByMessageIdTest {
     @Test
     public void getMessageGivenMessageIdMessageNotFound() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/100"))
+                .uri(URI.create("http://localhost:" + port + "/messages/100"))
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
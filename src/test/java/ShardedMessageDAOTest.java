@@ -0,0 +1,157 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.ShardMap;
+import DAO.ShardRebalancer;
+import DAO.ShardedMessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+public class ShardedMessageDAOTest {
+    AccountDAO accountDAO;
+    ShardedMessageDAO dao;
+    List<Message> inserted;
+
+    /**
+     * Before every test, reset the database, spread messages from 20 accounts over 3 shards.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        accountDAO = new AccountDAO();
+        for (int i = 2; i <= 20; i++) {
+            accountDAO.insertAccount(new Account("user" + i, "password"));
+        }
+        dao = new ShardedMessageDAO(ShardMap.load(3), accountDAO::accountExists);
+
+        inserted = new ArrayList<>();
+        inserted.add(new Message(1, 1, "test message 1", 1669947792));
+        for (int account = 1; account <= 20; account++) {
+            for (int i = 0; i < 3; i++) {
+                inserted.add(dao.insertMessage(new Message(account, "message " + i, 1669947792 + i)));
+            }
+        }
+        inserted.sort(Comparator.comparingInt(Message::getMessage_id));
+    }
+
+    @After
+    public void tearDown() {
+        dao.close();
+    }
+
+    /**
+     * Every account's messages are on one shard, IDs are unique and tagged with that shard,
+     * and getAllMessages merges every shard in ID order. The map is only read once.
+     */
+    @Test
+    public void routesByAccount() {
+        ShardMap shardMap = ShardMap.load(3);
+        Assert.assertSame(shardMap, ShardMap.load(3));
+        for (Message m : inserted) {
+            Assert.assertNotNull(m);
+            if (m.getMessage_id() != 1) {
+                Assert.assertEquals(shardMap.shardFor(m.getPosted_by()), ShardMap.shardOfId(m.getMessage_id()));
+            }
+        }
+        Assert.assertEquals(inserted.size(), inserted.stream().map(Message::getMessage_id).distinct().count());
+        Assert.assertEquals(3, inserted.stream().map(m -> ShardMap.shardOfId(m.getMessage_id())).distinct().count());
+
+        Assert.assertEquals(inserted, dao.getAllMessages());
+        Assert.assertEquals(
+                inserted.stream().filter(m -> m.getPosted_by() == 7).collect(Collectors.toList()),
+                dao.getMessagesByAccountId(7));
+    }
+
+    /**
+     * Lookups, updates and deletes by ID find the right shard, and unknown accounts are rejected.
+     */
+    @Test
+    public void byIdOperations() {
+        Message target = inserted.get(inserted.size() - 1);
+        Assert.assertEquals(target, dao.getMessageId(target.getMessage_id()));
+
+        Message updated = dao.updateMessage(target.getMessage_id(), "changed");
+        Assert.assertEquals("changed", updated.getMessage_text());
+        Assert.assertEquals(updated, dao.deleteMessageById(target.getMessage_id()));
+        Assert.assertNull(dao.getMessageId(target.getMessage_id()));
+
+        Assert.assertNull(dao.insertMessage(new Message(99, "no such account", 1669947792)));
+    }
+
+    /**
+     * Splitting a shard moves some accounts to a new shard without losing or renumbering messages.
+     */
+    @Test
+    public void splitShard() {
+        int newShard = ShardRebalancer.split(1);
+        Assert.assertEquals(3, newShard);
+
+        ShardMap shardMap = ShardMap.load(3);
+        Assert.assertEquals(4, shardMap.shardCount());
+        ShardedMessageDAO split = new ShardedMessageDAO(shardMap, accountDAO::accountExists);
+
+        Assert.assertEquals(inserted, split.getAllMessages());
+        for (Message m : inserted) {
+            Assert.assertEquals(m, split.getMessageId(m.getMessage_id()));
+        }
+
+        // Accounts moved to the new shard get new IDs from its range
+        int movedAccount = 1;
+        while (shardMap.shardFor(movedAccount) != newShard) movedAccount++;
+        Message created = split.insertMessage(new Message(movedAccount, "after split", 1669947800));
+        Assert.assertEquals(newShard, ShardMap.shardOfId(created.getMessage_id()));
+        Assert.assertEquals(4, split.getMessagesByAccountId(movedAccount).size());
+        split.close();
+    }
+
+    /**
+     * Cleanup deletes the rows a shard keeps for buckets that were reassigned, and only those.
+     */
+    @Test
+    public void cleanupDeletesRowsOfReassignedBuckets() {
+        ShardMap before = ShardMap.load(3);
+        List<Integer> buckets = before.bucketsOf(1);
+        ShardMap after = before.withBuckets(buckets.subList(buckets.size() / 2, buckets.size()), 2);
+
+        long stale = inserted.stream()
+                .filter(m -> ShardMap.shardOfId(m.getMessage_id()) == 1 && after.shardFor(m.getPosted_by()) != 1)
+                .count();
+        Assert.assertTrue(stale > 0);
+        Assert.assertEquals(stale, ShardRebalancer.cleanup(1));
+        Assert.assertEquals(0, ShardRebalancer.cleanup(1));
+        for (Message m : inserted) {
+            if (ShardMap.shardOfId(m.getMessage_id()) == 1 && after.shardFor(m.getPosted_by()) == 1) {
+                Assert.assertEquals(m, dao.getMessageId(m.getMessage_id()));
+            }
+        }
+    }
+
+    /**
+     * A shard that has used up its ID range rejects inserts instead of taking the next shard's IDs.
+     */
+    @Test
+    public void fullShardRejectsInserts() throws SQLException {
+        ShardMap shardMap = ShardMap.load(3);
+        int account = 1;
+        while (shardMap.shardFor(account) != 2) account++;
+        try (Connection connection = ConnectionUtil.getConnection(2);
+             Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE message ALTER COLUMN message_id RESTART WITH " + ShardMap.idLimitOf(2));
+        }
+
+        Assert.assertNull(dao.insertMessage(new Message(account, "out of IDs", 1669947800)));
+        Assert.assertEquals(inserted, dao.getAllMessages());
+    }
+}
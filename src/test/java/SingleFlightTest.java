@@ -0,0 +1,138 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.Deadline;
+import Util.DeadlineExceededException;
+import Util.SingleFlight;
+
+public class SingleFlightTest {
+
+    /**
+     * Ten concurrent loads of the same key while the first is still running
+     *
+     * Expected: the loader runs once, every caller gets its result, nine calls are counted as collapsed.
+     */
+    @Test
+    public void concurrentLoadsShareOneQuery() throws Exception {
+        SingleFlight<Integer, String> flight = new SingleFlight<>();
+        AtomicInteger queries = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(10);
+
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(pool.submit(() -> flight.load(1, () -> {
+                queries.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "message 1";
+            })));
+            // Wait until the leader is inside the loader before starting the followers
+            while (queries.get() == 0) Thread.sleep(1);
+            for (int i = 0; i < 9; i++) {
+                results.add(pool.submit(() -> flight.load(1, () -> {
+                    queries.incrementAndGet();
+                    return "should not run";
+                })));
+            }
+            while (flight.collapsedCount() < 9) Thread.sleep(1);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                Assert.assertEquals("message 1", result.get(5, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(1, queries.get());
+            Assert.assertEquals(1, flight.loadCount());
+            Assert.assertEquals(9, flight.collapsedCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * A load after the previous one finished runs again, and failures reach the caller.
+     */
+    @Test
+    public void finishedLoadsAreNotCached() {
+        SingleFlight<Integer, String> flight = new SingleFlight<>();
+        Assert.assertEquals("first", flight.load(1, () -> "first"));
+        Assert.assertEquals("second", flight.load(1, () -> "second"));
+
+        try {
+            flight.load(1, () -> {
+                throw new IllegalStateException("db down");
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("db down", e.getMessage());
+        }
+        Assert.assertEquals("third", flight.load(1, () -> "third"));
+        Assert.assertEquals(0, flight.collapsedCount());
+    }
+
+    /**
+     * A follower with a 50 ms deadline joins a load that takes longer, then a follower
+     * without a deadline joins a leader that fails on its own deadline
+     *
+     * Expected: the first follower gives up after its own deadline rather than the leader's,
+     * the second loads again instead of rethrowing the leader's DeadlineExceededException.
+     */
+    @Test
+    public void followersKeepTheirOwnDeadline() throws Exception {
+        SingleFlight<Integer, String> flight = new SingleFlight<>();
+        CountDownLatch leading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<String> leader = pool.submit(() -> flight.load(1, () -> {
+                leading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new DeadlineExceededException();
+            }));
+            leading.await();
+
+            Deadline.start(50);
+            try {
+                flight.load(1, () -> "should not run");
+                Assert.fail();
+            } catch (DeadlineExceededException e) {
+                // Expected, the leader is still running
+            } finally {
+                Deadline.clear();
+            }
+
+            Future<String> follower = pool.submit(() -> flight.load(1, () -> "loaded again"));
+            while (flight.collapsedCount() < 2) Thread.sleep(1);
+            release.countDown();
+
+            Assert.assertEquals("loaded again", follower.get(5, TimeUnit.SECONDS));
+            try {
+                leader.get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof DeadlineExceededException);
+            }
+            Assert.assertEquals(2, flight.loadCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessagePurger;
+import Util.ConnectionUtil;
+
+public class SoftDeleteTest {
+    MessageDAO messageDAO;
+
+    /**
+     * Before every test, reset the database.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        messageDAO = new MessageDAO();
+    }
+
+    private int physicalRows() throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM message")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Deleting message 1 marks the row instead of removing it
+     *
+     * Expected: the delete returns the message once, reads and updates no longer see it, the row is still stored.
+     */
+    @Test
+    public void deleteLeavesTombstone() throws SQLException {
+        Message deleted = messageDAO.deleteMessageById(1);
+
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), deleted);
+        Assert.assertNull(messageDAO.deleteMessageById(1));
+        Assert.assertNull(messageDAO.getMessageId(1));
+        Assert.assertNull(messageDAO.updateMessage(1, "updated"));
+        Assert.assertTrue(messageDAO.getAllMessages().isEmpty());
+        Assert.assertTrue(messageDAO.getMessagesByAccountId(1).isEmpty());
+        Assert.assertEquals(1, physicalRows());
+    }
+
+    /**
+     * Purging 7 tombstones in batches of 3, while another message stays live
+     *
+     * Expected: a busy run is skipped, a quiet run removes all 7 in 3 batches and keeps the live message.
+     */
+    @Test
+    public void purgerRemovesTombstonesWhenQuiet() throws SQLException {
+        for (int i = 0; i < 6; i++) {
+            Message m = messageDAO.insertMessage(new Message(1, "message " + i, 1669947792));
+            messageDAO.deleteMessageById(m.getMessage_id());
+        }
+        messageDAO.deleteMessageById(1);
+        messageDAO.insertMessage(new Message(1, "kept", 1669947792));
+
+        // Purge as of a moment strictly after every delete, so deleted_at < cutoff holds on any clock
+        long afterDeletes = System.currentTimeMillis() + 1;
+        AtomicLong operations = new AtomicLong(1_000);
+        MessagePurger purger = new MessagePurger(messageDAO, operations::get, 0, 3, 10, 0, 100, () -> afterDeletes);
+        Assert.assertEquals(0, purger.runOnce());
+        Assert.assertEquals(8, physicalRows());
+
+        Assert.assertEquals(7, purger.runOnce());
+        Assert.assertEquals(1, physicalRows());
+        Assert.assertEquals(1, messageDAO.getAllMessages().size());
+        Assert.assertEquals(3L, purger.stats().get("batches"));
+        Assert.assertEquals(1L, purger.stats().get("skippedBusy"));
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import DAO.MessageFields;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SparseFieldsetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    int port;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(0);
+        port = app.port();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String pathAndQuery) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + pathAndQuery))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages, /messages/1 and /accounts/1/messages with ?fields=
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: only the requested properties, in Message order
+     */
+    @Test
+    public void getMessagesWithFields() throws IOException, InterruptedException {
+        HttpResponse<String> all = get("/messages?fields=time_posted_epoch,message_id");
+        HttpResponse<String> one = get("/messages/1?fields=message_text");
+        HttpResponse<String> byAccount = get("/accounts/1/messages?fields=message_id,posted_by");
+
+        Assert.assertEquals(200, all.statusCode());
+        Assert.assertEquals("[{\"message_id\":1,\"time_posted_epoch\":1669947792}]", all.body());
+        Assert.assertEquals("{\"message_text\":\"test message 1\"}", one.body());
+        Assert.assertEquals("[{\"message_id\":1,\"posted_by\":1}]", byAccount.body());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages with an unknown or empty field
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void unknownFieldIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?fields=message_id,password").statusCode());
+        Assert.assertEquals(400, get("/messages/1?fields=").statusCode());
+        Assert.assertEquals(400, get("/accounts/1/messages?fields=likes,shares").statusCode());
+    }
+
+    /**
+     * Reading all messages with only message_id selected
+     *
+     * Expected: the other fields are never read and keep their defaults.
+     */
+    @Test
+    public void daoSelectsOnlyRequestedColumns() {
+        List<Message> messages = new MessageDAO().getAllMessages(MessageFields.parse("message_id"));
+
+        Assert.assertEquals(1, messages.size());
+        Assert.assertEquals(1, messages.get(0).getMessage_id());
+        Assert.assertEquals(0, messages.get(0).getPosted_by());
+        Assert.assertNull(messages.get(0).getMessage_text());
+        Assert.assertEquals(0, messages.get(0).getTime_posted_epoch());
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class TimeRangeQueryTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    int port;
+
+    /**
+     * Before every test, reset the database with 10 more messages from two accounts at times 100..104
+     * (two per time), and restart the Javalin app with a recent window of only 4 messages, so
+     * older pages come from the database and newer ones from the window.
+     */
+    @Before
+    public void setUp() {
+        System.setProperty("recentWindowSize", "4");
+        ConnectionUtil.resetInMemoryTestDatabase();
+        new AccountDAO().insertAccount(new Account("testuser2", "password"));
+        MessageDAO messageDAO = new MessageDAO();
+        for (int i = 0; i < 10; i++) {
+            messageDAO.insertMessage(new Message(1 + i % 2, "message " + i, 104 - i / 2));
+        }
+
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(0);
+        port = app.port();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("recentWindowSize");
+    }
+
+    private HttpResponse<String> get(String pathAndQuery) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + pathAndQuery))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> messages(HttpResponse<String> response) throws IOException {
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    /**
+     * Sending GET localhost:8080/messages?since=101&until=103
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the 4 messages at times 101 and 102, by time then message_id, without a next cursor
+     */
+    @Test
+    public void getMessagesInRange() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages?since=101&until=103");
+
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> page = messages(response);
+        Assert.assertEquals(4, page.size());
+        Assert.assertEquals(new Message(8, 1, "message 6", 101), page.get(0));
+        Assert.assertEquals(new Message(9, 2, "message 7", 101), page.get(1));
+        Assert.assertEquals(new Message(6, 1, "message 4", 102), page.get(2));
+        Assert.assertEquals(new Message(7, 2, "message 5", 102), page.get(3));
+        Assert.assertFalse(response.headers().firstValue("X-Next-Cursor").isPresent());
+    }
+
+    /**
+     * Paging through GET localhost:8080/messages?since=100&until=105&limit=3 with X-Next-Cursor
+     *
+     * Expected Response:
+     *  Every message from times 100..104 exactly once, in order, the last page without a cursor
+     */
+    @Test
+    public void pageWithCursor() throws IOException, InterruptedException {
+        List<Message> all = new ArrayList<>();
+        String query = "/messages?since=100&until=105&limit=3";
+        int pages = 0;
+        while (true) {
+            HttpResponse<String> response = get(query);
+            Assert.assertEquals(200, response.statusCode());
+            all.addAll(messages(response));
+            pages++;
+            String cursor = response.headers().firstValue("X-Next-Cursor").orElse(null);
+            if (cursor == null) break;
+            query = "/messages?since=100&until=105&limit=3&cursor=" + cursor;
+        }
+
+        Assert.assertEquals(4, pages);
+        Assert.assertEquals(10, all.size());
+        for (int i = 1; i < all.size(); i++) {
+            Message previous = all.get(i - 1);
+            Message current = all.get(i);
+            Assert.assertTrue(previous.getTime_posted_epoch() < current.getTime_posted_epoch()
+                    || (previous.getTime_posted_epoch() == current.getTime_posted_epoch()
+                    && previous.getMessage_id() < current.getMessage_id()));
+        }
+        // Newest messages come last
+        Assert.assertEquals(new Message(3, 2, "message 1", 104), all.get(9));
+    }
+
+    /**
+     * Sending GET localhost:8080/accounts/2/messages?since=102
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: account 2's messages at times 102, 103 and 104
+     */
+    @Test
+    public void getAccountMessagesInRange() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/accounts/2/messages?since=102");
+
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> page = messages(response);
+        Assert.assertEquals(3, page.size());
+        Assert.assertEquals(new Message(7, 2, "message 5", 102), page.get(0));
+        Assert.assertEquals(new Message(5, 2, "message 3", 103), page.get(1));
+        Assert.assertEquals(new Message(3, 2, "message 1", 104), page.get(2));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages with a malformed since, limit or cursor
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void malformedRange() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?since=yesterday").statusCode());
+        Assert.assertEquals(400, get("/messages?limit=0").statusCode());
+        Assert.assertEquals(400, get("/accounts/1/messages?cursor=12").statusCode());
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.Tracing;
+import io.javalin.Javalin;
+
+public class TracingTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    int port;
+    double sampleRate;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     */
+    @Before
+    public void setUp() {
+        sampleRate = Tracing.sampleRate();
+        ConnectionUtil.resetInMemoryTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(0);
+        port = app.port();
+    }
+
+    @After
+    public void tearDown() {
+        Tracing.setSampleRate(sampleRate);
+        app.stop();
+    }
+
+    private HttpResponse<String> postMessage(String traceparent) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1, \"message_text\": \"traced message\", \"time_posted_epoch\": 1669947793}"))
+                .header("Content-Type", "application/json");
+        if (traceparent != null) request.header("traceparent", traceparent);
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Exported spans of one trace by name, waiting for the exporter thread to catch up.
+     */
+    private Map<String, JsonNode> spansOf(String traceId, int expected) throws IOException, InterruptedException {
+        HttpRequest traces = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/admin/traces"))
+                .build();
+        Map<String, JsonNode> spans = new HashMap<>();
+        for (int attempt = 0; attempt < 100 && spans.size() < expected; attempt++) {
+            Thread.sleep(20);
+            spans.clear();
+            JsonNode body = objectMapper.readTree(webClient.send(traces, HttpResponse.BodyHandlers.ofString()).body());
+            for (JsonNode span : body.at("/resourceSpans/0/scopeSpans/0/spans")) {
+                if (span.get("traceId").asText().equals(traceId)) spans.put(span.get("name").asText(), span);
+            }
+        }
+        return spans;
+    }
+
+    private static String attribute(JsonNode span, String key) {
+        for (JsonNode attribute : span.get("attributes")) {
+            if (attribute.get("key").asText().equals(key)) return attribute.at("/value/stringValue").asText();
+        }
+        return null;
+    }
+
+    /**
+     * Sending POST localhost:8080/register with every request sampled
+     *
+     * Expected: one trace of controller, service and statement spans, each the parent of the next,
+     * the statement tagged with its fingerprint, and the trace id echoed in a traceparent header.
+     */
+    @Test
+    public void registerIsTraced() throws IOException, InterruptedException {
+        Tracing.setSampleRate(1.0);
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"traced\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        String traceId = response.headers().firstValue("traceparent").orElseThrow().substring(3, 35);
+
+        Map<String, JsonNode> spans = spansOf(traceId, 4);
+        JsonNode root = spans.get("POST /register");
+        JsonNode service = spans.get("AccountService.register");
+        JsonNode insert = spans.get("SQL INSERT");
+        Assert.assertNotNull(spans.keySet().toString(), root);
+        Assert.assertNotNull(spans.keySet().toString(), service);
+        Assert.assertNotNull(spans.keySet().toString(), insert);
+
+        Assert.assertFalse(root.has("parentSpanId"));
+        Assert.assertEquals("200", attribute(root, "http.status_code"));
+        Assert.assertEquals(root.get("spanId").asText(), service.get("parentSpanId").asText());
+        Assert.assertEquals(service.get("spanId").asText(), insert.get("parentSpanId").asText());
+        Assert.assertTrue(attribute(insert, "db.statement").startsWith("INSERT INTO"));
+    }
+
+    /**
+     * Sending POST localhost:8080/messages with sampling off, with and without a sampled traceparent
+     *
+     * Expected: no trace of our own, but the caller's sampled trace is continued.
+     */
+    @Test
+    public void incomingTraceparentIsFollowed() throws IOException, InterruptedException {
+        Tracing.setSampleRate(0);
+        Assert.assertFalse(postMessage(null).headers().firstValue("traceparent").isPresent());
+
+        String traceId = "4bf92f3577b34da6a3ce929d0e0e4736";
+        HttpResponse<String> response = postMessage("00-" + traceId + "-00f067aa0ba902b7-01");
+        Assert.assertEquals(traceId, response.headers().firstValue("traceparent").orElseThrow().substring(3, 35));
+        Assert.assertEquals("00f067aa0ba902b7", spansOf(traceId, 3).get("POST /messages").get("parentSpanId").asText());
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.CountMinSketch;
+import Util.SlidingTopK;
+import Util.TopK;
+import io.javalin.Javalin;
+
+public class TrendingTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    int port;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(0);
+        port = app.port();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * 100,000 events over 50,000 keys, of which keys 1 to 5 take 2,000, 1,900, ... each
+     *
+     * Expected: the five heavy hitters ranked first in order, counts never below the true ones,
+     * and a sketch of 4 x 1024 counters per bucket whatever the number of keys.
+     */
+    @Test
+    public void heavyHittersAreFoundAmongNoise() {
+        AtomicLong clock = new AtomicLong();
+        SlidingTopK window = new SlidingTopK(1_000, 10, 1024, 4, 20, clock::get);
+        Random random = new Random(42);
+        for (int key = 1; key <= 5; key++) {
+            for (int i = 0; i < 2_100 - key * 100; i++) window.record(key);
+        }
+        for (int i = 0; i < 90_000; i++) {
+            window.record(100 + random.nextInt(50_000));
+        }
+
+        List<SlidingTopK.Entry> top = window.top(5);
+        Assert.assertEquals(5, top.size());
+        for (int rank = 0; rank < 5; rank++) {
+            Assert.assertEquals(rank + 1, top.get(rank).key);
+            Assert.assertTrue(top.get(rank).count >= 2_000 - rank * 100);
+        }
+        Assert.assertTrue(window.maxSizeBytes() < 10 * (4 * 1024 * 8 + 20 * 100));
+    }
+
+    /**
+     * Key 1 counted in the first bucket, key 2 in the third, then the clock moved past each
+     *
+     * Expected: both while the window covers them, only key 2 once the first bucket slid out, then none.
+     */
+    @Test
+    public void oldBucketsSlideOutOfTheWindow() {
+        AtomicLong clock = new AtomicLong();
+        SlidingTopK window = new SlidingTopK(1_000, 3, 256, 4, 10, clock::get);
+        for (int i = 0; i < 3; i++) window.record(1);
+        clock.set(2_500);
+        window.record(2);
+
+        List<SlidingTopK.Entry> top = window.top(10);
+        Assert.assertEquals(2, top.size());
+        Assert.assertEquals(1, top.get(0).key);
+        Assert.assertEquals(3, top.get(0).count);
+
+        clock.set(3_000);
+        top = window.top(10);
+        Assert.assertEquals(1, top.size());
+        Assert.assertEquals(2, top.get(0).key);
+
+        // The next event in key 1's old slot replaces its bucket
+        window.record(3);
+        Assert.assertEquals(2, window.top(10).size());
+
+        clock.set(6_000);
+        Assert.assertEquals(0, window.top(10).size());
+    }
+
+    /**
+     * The size reported for a window of three buckets
+     *
+     * Expected: three times what one bucket's sketch and heap take once built.
+     */
+    @Test
+    public void maxSizeMatchesBuiltBuckets() {
+        SlidingTopK window = new SlidingTopK(1_000, 3, 1_000, 4, 10, System::currentTimeMillis);
+        Assert.assertEquals(3 * (new CountMinSketch(1_000, 4).sizeBytes() + new TopK(10).sizeBytes()), window.maxSizeBytes());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 five times, liking it once, and posting three messages as account 1
+     *
+     * Expected Response:
+     *  Message 1 with count 6 from GET /trending/messages, account 1 with count 3 from
+     *  GET /trending/accounts?window=5m, and 400 for an unknown window or a limit out of range
+     */
+    @Test
+    public void trendingMessagesAndAccounts() throws IOException, InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(200, send("GET", "/messages/1", null).statusCode());
+        }
+        Assert.assertEquals(200, send("POST", "/messages/1/likes", null).statusCode());
+        for (int i = 0; i < 3; i++) {
+            String body = "{\"posted_by\":1,\"message_text\":\"trending " + i + "\",\"time_posted_epoch\":1669947792}";
+            Assert.assertEquals(200, send("POST", "/messages", body).statusCode());
+        }
+
+        JsonNode messages = objectMapper.readTree(send("GET", "/trending/messages", null).body());
+        Assert.assertEquals(1, messages.size());
+        Assert.assertEquals(1, messages.get(0).get("message_id").asInt());
+        Assert.assertEquals("test message 1", messages.get(0).get("message_text").asText());
+        Assert.assertEquals(6, messages.get(0).get("count").asLong());
+
+        JsonNode accounts = objectMapper.readTree(send("GET", "/trending/accounts?window=5m&limit=1", null).body());
+        Assert.assertEquals(1, accounts.size());
+        Assert.assertEquals(1, accounts.get(0).get("account_id").asInt());
+        Assert.assertEquals(3, accounts.get(0).get("count").asLong());
+
+        Assert.assertEquals(400, send("GET", "/trending/messages?window=2h", null).statusCode());
+        Assert.assertEquals(400, send("GET", "/trending/accounts?limit=0", null).statusCode());
+        Assert.assertEquals(400, send("GET", "/trending/accounts?limit=1000", null).statusCode());
+    }
+
+    /**
+     * Sending GET localhost:8080/trending/messages and /trending/accounts with -Dtrending=false
+     *
+     * Expected Response:
+     *  Status Code: 404 for both, with or without a limit
+     */
+    @Test
+    public void trendingOffIsNotFound() throws IOException, InterruptedException {
+        app.stop();
+        System.setProperty("trending", "false");
+        try {
+            app = new SocialMediaController().startAPI();
+            app.start(0);
+            port = app.port();
+            Assert.assertEquals(404, send("GET", "/trending/messages", null).statusCode());
+            Assert.assertEquals(404, send("GET", "/trending/accounts?limit=5", null).statusCode());
+        } finally {
+            System.clearProperty("trending");
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
+
+public class UnitOfWorkTest {
+    MessageDAO messageDAO;
+    MessageService messageService;
+
+    /**
+     * Before every test, reset the database and create a service without caches, so every read reaches the DAO.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        messageDAO = new MessageDAO();
+        messageService = new MessageService(messageDAO);
+    }
+
+    // Read on a thread of its own, so outside any unit of work
+    private Message readElsewhere(int id) throws InterruptedException {
+        Message[] read = new Message[1];
+        Thread reader = new Thread(() -> read[0] = messageDAO.getMessageId(id));
+        reader.start();
+        reader.join();
+        return read[0];
+    }
+
+    /**
+     * An update of message 1 in a unit of work, committed
+     *
+     * Expected: the unit reads its own write back while other connections still see the old text,
+     * and afterCommit actions run only once the commit is done.
+     */
+    @Test
+    public void writesAreSharedInTheUnitAndVisibleAfterCommit() throws Exception {
+        AtomicInteger committed = new AtomicInteger();
+        try (UnitOfWork unit = UnitOfWork.begin()) {
+            Message updated = messageService.updateMessageText(1, "in a unit of work");
+            Assert.assertEquals("in a unit of work", updated.getMessage_text());
+            Assert.assertEquals("in a unit of work", messageDAO.getMessageId(1).getMessage_text());
+            Assert.assertEquals("test message 1", readElsewhere(1).getMessage_text());
+
+            UnitOfWork.afterCommit(committed::incrementAndGet);
+            Assert.assertEquals(0, committed.get());
+            unit.commit();
+            Assert.assertEquals(1, committed.get());
+        }
+        Assert.assertEquals("in a unit of work", readElsewhere(1).getMessage_text());
+    }
+
+    /**
+     * A message posted and message 1 deleted in a unit of work that is closed without a commit
+     *
+     * Expected: both writes undone, afterCommit actions dropped, and the next unit can begin.
+     */
+    @Test
+    public void closingWithoutCommitRollsBack() throws Exception {
+        AtomicInteger committed = new AtomicInteger();
+        int created;
+        try (UnitOfWork unit = UnitOfWork.begin()) {
+            created = messageService.createMessage(new Message(1, "never committed", 1669947792)).getMessage_id();
+            Assert.assertNotNull(messageService.deleteMessageById(1));
+            UnitOfWork.afterCommit(committed::incrementAndGet);
+        }
+        Assert.assertNull(readElsewhere(created));
+        Assert.assertNotNull(readElsewhere(1));
+        Assert.assertEquals(0, committed.get());
+        Assert.assertNull(UnitOfWork.current());
+
+        // Without a unit, every call commits on its own and afterCommit runs at once
+        UnitOfWork.afterCommit(committed::incrementAndGet);
+        Assert.assertEquals(1, committed.get());
+    }
+}
@@ -21,6 +21,7 @@ public class UpdateMessageTextTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    int port;
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
@@ -29,13 +30,13 @@ public class UpdateMessageTextTest {
      */
     @Before
     public void setUp() throws InterruptedException {
-        ConnectionUtil.resetTestDatabase();
+        ConnectionUtil.resetInMemoryTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        app.start(0);
+        port = app.port();
     }
 
     @After
@@ -54,7 +55,7 @@ public class UpdateMessageTextTest {
     @Test
     public void updateMessageSuccessful() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/1"))
+                .uri(URI.create("http://localhost:" + port + "/messages/1"))
                 .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
                         "\"message_text\": \"updated message\" }"))
                 .header("Content-Type", "application/json")
@@ -82,7 +83,7 @@ public class UpdateMessageTextTest {
     @Test
     public void updateMessageMessageNotFound() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/2"))
+                .uri(URI.create("http://localhost:" + port + "/messages/2"))
                 .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
                         "\"message_text\": \"updated message\" }"))
                 .header("Content-Type", "application/json")
@@ -105,7 +106,7 @@ public class UpdateMessageTextTest {
     @Test
     public void updateMessageMessageStringEmpty() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/1"))
+                .uri(URI.create("http://localhost:" + port + "/messages/1"))
                 .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
                         "\"message_text\": \"\" }"))
                 .header("Content-Type", "application/json")
@@ -128,7 +129,7 @@ public class UpdateMessageTextTest {
     @Test
     public void updateMessageMessageTooLong() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/1"))
+                .uri(URI.create("http://localhost:" + port + "/messages/1"))
                 .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
                         "\"message_text\": \"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\" }"))
                 .header("Content-Type", "application/json")
@@ -22,6 +22,7 @@ public class UserLoginTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    int port;
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
@@ -30,13 +31,13 @@ public class UserLoginTest {
      */
     @Before
     public void setUp() throws InterruptedException {
-        ConnectionUtil.resetTestDatabase();
+        ConnectionUtil.resetInMemoryTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        app.start(0);
+        port = app.port();
     }
 
     @After
@@ -54,7 +55,7 @@ public class UserLoginTest {
     @Test
     public void loginSuccessful() throws IOException, InterruptedException {
         HttpRequest postRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/login"))
+                .uri(URI.create("http://localhost:" + port + "/login"))
                 .POST(HttpRequest.BodyPublishers.ofString("{" +
                         "\"username\": \"testuser1\", " +
                         "\"password\": \"password\" }"))
@@ -81,7 +82,7 @@ public class UserLoginTest {
     @Test
     public void loginInvalidUsername() throws IOException, InterruptedException {
         HttpRequest postRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/login"))
+                .uri(URI.create("http://localhost:" + port + "/login"))
                 .POST(HttpRequest.BodyPublishers.ofString("{" +
                         "\"username\": \"testuser404\", " +
                         "\"password\": \"password\" }"))
@@ -106,7 +107,7 @@ public class UserLoginTest {
     @Test
     public void loginInvalidPassword() throws IOException, InterruptedException {
         HttpRequest postRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/login"))
+                .uri(URI.create("http://localhost:" + port + "/login"))
                 .POST(HttpRequest.BodyPublishers.ofString("{" +
                         "\"username\": \"testuser1\", " +
                         "\"password\": \"pass123\" }"))
@@ -21,6 +21,7 @@ public class UserRegistrationTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    int port;
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
@@ -29,13 +30,13 @@ public class UserRegistrationTest {
      */
     @Before
     public void setUp() throws InterruptedException {
-        ConnectionUtil.resetTestDatabase();
+        ConnectionUtil.resetInMemoryTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        app.start(0);
+        port = app.port();
     }
 
     @After
@@ -53,7 +54,7 @@ public class UserRegistrationTest {
     @Test
     public void registerUserSuccessful() throws IOException, InterruptedException {
         HttpRequest postRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/register"))
+                .uri(URI.create("http://localhost:" + port + "/register"))
                 .POST(HttpRequest.BodyPublishers.ofString("{" +
                         "\"username\": \"user\", " +
                         "\"password\": \"password\" }"))
@@ -79,7 +80,7 @@ public class UserRegistrationTest {
     @Test
     public void registerUserDuplicateUsername() throws IOException, InterruptedException {
         HttpRequest postRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/register"))
+                .uri(URI.create("http://localhost:" + port + "/register"))
                 .POST(HttpRequest.BodyPublishers.ofString("{" +
                         "\"username\": \"user\", " +
                         "\"password\": \"password\" }"))
@@ -105,7 +106,7 @@ public class UserRegistrationTest {
     @Test
     public void registerUserUsernameBlank() throws IOException, InterruptedException {
         HttpRequest postRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/register"))
+                .uri(URI.create("http://localhost:" + port + "/register"))
                 .POST(HttpRequest.BodyPublishers.ofString("{" +
                         "\"username\": \"\", " +
                         "\"password\": \"password\" }"))
@@ -129,7 +130,7 @@ public class UserRegistrationTest {
     @Test
     public void registeUserPasswordLengthLessThanFour() throws IOException, InterruptedException {
         HttpRequest postRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/register"))
+                .uri(URI.create("http://localhost:" + port + "/register"))
                 .POST(HttpRequest.BodyPublishers.ofString("{" +
                         "\"username\": \"username\", " +
                         "\"password\": \"pas\" }"))
@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import Controller.SocialMediaController;
+import Controller.WireFormat;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class WireFormatTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    int port;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetInMemoryTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(0);
+        port = app.port();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<byte[]> get(String path, String accept) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + path))
+                .header("Accept", accept)
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages and /messages/1 with Accept: application/x-jackson-smile and application/cbor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the same messages as the JSON endpoint, in the binary format asked for
+     */
+    @Test
+    public void getMessagesAsSmileAndCbor() throws IOException, InterruptedException {
+        Message expected = new Message(1, 1, "test message 1", 1669947792);
+        for (WireFormat format : new WireFormat[] { WireFormat.SMILE, WireFormat.CBOR }) {
+            HttpResponse<byte[]> all = get("/messages", format.contentType + ", application/json;q=0.5");
+            HttpResponse<byte[]> one = get("/messages/1", format.contentType);
+
+            Assert.assertEquals(200, all.statusCode());
+            Assert.assertEquals(format.contentType, all.headers().firstValue("Content-Type").orElse(null));
+            Assert.assertEquals("Accept", all.headers().firstValue("Vary").orElse(null));
+            List<Message> messages = format.mapper.readValue(all.body(), new TypeReference<List<Message>>(){});
+            Assert.assertEquals(List.of(expected), messages);
+            Assert.assertEquals(expected, format.mapper.readValue(one.body(), Message.class));
+
+            HttpResponse<byte[]> sparse = get("/messages/1?fields=message_id", format.contentType);
+            Map<String, Object> fields = format.mapper.readValue(sparse.body(), new TypeReference<Map<String, Object>>(){});
+            Assert.assertEquals(Map.of("message_id", 1), fields);
+        }
+
+        // Unsupported or missing Accept falls back to JSON
+        HttpResponse<byte[]> json = get("/messages/1", "text/html, */*");
+        Assert.assertEquals(expected, WireFormat.JSON.mapper.readValue(json.body(), Message.class));
+    }
+
+    /**
+     * Sending POST localhost:8080/messages with a CBOR body and Accept: application/cbor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the created message as CBOR
+     */
+    @Test
+    public void postMessageAsCbor() throws IOException, InterruptedException {
+        byte[] body = WireFormat.CBOR.mapper.writeValueAsBytes(new Message(1, "hello cbor", 1669947793));
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .header("Content-Type", WireFormat.CBOR.contentType)
+                .header("Accept", WireFormat.CBOR.contentType)
+                .build();
+        HttpResponse<byte[]> response = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        Assert.assertEquals(200, response.statusCode());
+        Message created = WireFormat.CBOR.mapper.readValue(response.body(), Message.class);
+        Assert.assertEquals(new Message(2, 1, "hello cbor", 1669947793), created);
+    }
+}